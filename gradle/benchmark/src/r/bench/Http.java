@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal blocking HTTP client used by the load generator and stub backends.
+ * <p>
+ * Response body is always read fully, so JDK could reuse keep-alive connections. Redirects are not followed,
+ * so cookies set by the redirecting response are kept by the caller.
+ */
+public final class Http {
+  private Http() {
+  }
+
+  /**
+   * Response status and body.
+   */
+  public static final class Response {
+    public final int status;
+    public final String body;
+
+    Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+
+  public static Response get(URI uri) throws IOException {
+    return get(uri, null);
+  }
+
+  /**
+   * Sends GET request with cookies of the client session.
+   *
+   * @param uri request URI
+   * @param cookies cookies sent with the request and updated with {@code Set-Cookie} of the response, may be {@code null}
+   * @return response
+   * @throws IOException if request failed
+   */
+  public static Response get(URI uri, Map<String, String> cookies) throws IOException {
+    return get(uri, cookies, Collections.emptyMap());
+  }
+
+  /**
+   * Sends GET request with cookies of the client session and additional headers.
+   *
+   * @param uri request URI
+   * @param cookies cookies sent with the request and updated with {@code Set-Cookie} of the response, may be {@code null}
+   * @param headers headers sent with the request
+   * @return response
+   * @throws IOException if request failed
+   */
+  public static Response get(URI uri, Map<String, String> cookies, Map<String, String> headers) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+    connection.setRequestMethod("GET");
+    connection.setInstanceFollowRedirects(false);
+    headers.forEach(connection::setRequestProperty);
+    if (cookies != null && !cookies.isEmpty()) {
+      StringBuilder header = new StringBuilder();
+      cookies.forEach((name, value) -> header.append(header.length() > 0 ? "; " : "").append(name).append('=').append(value));
+      connection.setRequestProperty("Cookie", header.toString());
+    }
+    int status = connection.getResponseCode();
+    if (cookies != null) {
+      connection.getHeaderFields().forEach((name, values) -> {
+        // header names are case insensitive, keys of the map are not
+        if ("Set-Cookie".equalsIgnoreCase(name)) {
+          updateCookies(values, cookies);
+        }
+      });
+    }
+    InputStream stream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+    if (stream == null) {
+      return new Response(status, "");
+    }
+    try (InputStream in = stream) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new Response(status, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+  }
+
+  private static void updateCookies(List<String> setCookies, Map<String, String> cookies) {
+    for (String setCookie : setCookies) {
+      int valueEnd = setCookie.indexOf(';');
+      String cookie = valueEnd < 0 ? setCookie : setCookie.substring(0, valueEnd);
+      int separator = cookie.indexOf('=');
+      if (separator <= 0) {
+        continue;
+      }
+      String name = cookie.substring(0, separator).trim();
+      String value = cookie.substring(separator + 1).trim();
+      // expired cookie is removed from the client session
+      if (value.isEmpty() || setCookie.toLowerCase().contains("max-age=0")) {
+        cookies.remove(name);
+      } else {
+        cookies.put(name, value);
+      }
+    }
+  }
+}
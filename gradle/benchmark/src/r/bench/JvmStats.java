@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * GC activity and allocation of the application threads between two snapshots.
+ * <p>
+ * Allocation is counted for threads alive at the end of the run, without threads of the load generator. Event loop
+ * threads live as long as the application, so their allocation is complete. Allocation of blocking threads that
+ * terminated during the run is not counted, JFR recording of the scenario has the full picture.
+ */
+final class JvmStats {
+  private final Map<String, long[]> collectors;
+  private final long allocatedBytes;
+
+  private JvmStats(Map<String, long[]> collectors, long allocatedBytes) {
+    this.collectors = collectors;
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  /**
+   * @return snapshot of the current counters
+   */
+  static Snapshot snapshot() {
+    return new Snapshot(collectors(), threadAllocation());
+  }
+
+  /**
+   * @return collection count and time in milliseconds by collector name
+   */
+  Map<String, long[]> getCollectors() {
+    return collectors;
+  }
+
+  long getCollections() {
+    return collectors.values().stream().mapToLong(c -> c[0]).sum();
+  }
+
+  long getCollectionMillis() {
+    return collectors.values().stream().mapToLong(c -> c[1]).sum();
+  }
+
+  /**
+   * @return bytes allocated by application threads, {@code -1} if not supported by the JVM
+   */
+  long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  private static Map<String, long[]> collectors() {
+    Map<String, long[]> collectors = new LinkedHashMap<>();
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      collectors.put(gc.getName(), new long[]{gc.getCollectionCount(), gc.getCollectionTime()});
+    }
+    return collectors;
+  }
+
+  private static Map<Long, Long> threadAllocation() {
+    Map<Long, Long> allocation = new HashMap<>();
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean allocationThreads = (com.sun.management.ThreadMXBean) threads;
+    if (!allocationThreads.isThreadAllocatedMemorySupported() || !allocationThreads.isThreadAllocatedMemoryEnabled()) {
+      return null;
+    }
+    long[] ids = threads.getAllThreadIds();
+    ThreadInfo[] infos = threads.getThreadInfo(ids);
+    long[] bytes = allocationThreads.getThreadAllocatedBytes(ids);
+    for (int i = 0; i < ids.length; i++) {
+      if (infos[i] != null && bytes[i] >= 0 && !infos[i].getThreadName().equals(LoadGenerator.CLIENT_THREAD_NAME)) {
+        allocation.put(ids[i], bytes[i]);
+      }
+    }
+    return allocation;
+  }
+
+  /**
+   * Counters at the start of the run.
+   */
+  static final class Snapshot {
+    private final Map<String, long[]> collectors;
+    private final Map<Long, Long> allocation;
+
+    private Snapshot(Map<String, long[]> collectors, Map<Long, Long> allocation) {
+      this.collectors = collectors;
+      this.allocation = allocation;
+    }
+
+    /**
+     * @return difference between this snapshot and the current counters
+     */
+    JvmStats since() {
+      Map<String, long[]> delta = new LinkedHashMap<>();
+      collectors().forEach((name, current) -> {
+        long[] start = collectors.getOrDefault(name, new long[2]);
+        delta.put(name, new long[]{current[0] - start[0], current[1] - start[1]});
+      });
+      Map<Long, Long> current = threadAllocation();
+      long allocated = -1;
+      if (allocation != null && current != null) {
+        allocated = 0;
+        for (Map.Entry<Long, Long> thread : current.entrySet()) {
+          allocated += thread.getValue() - allocation.getOrDefault(thread.getKey(), 0L);
+        }
+      }
+      return new JvmStats(delta, allocated);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open loop load generator.
+ * <p>
+ * Iterations of the workload are started at planned times, regardless of responses of the previous iterations.
+ * Latency of the first request is measured from the planned start time, so stalls of the application are not hidden
+ * by the load generator (coordinated omission). Following requests of the iteration are measured from their send time.
+ */
+final class LoadGenerator {
+  static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+  static final String CLIENT_THREAD_NAME = "load-client";
+
+  private LoadGenerator() {
+  }
+
+  /**
+   * Runs iterations of the workload with constant {@code rate} for the given time.
+   *
+   * @param address application address
+   * @param workload steps of the iteration
+   * @param rate iterations per second
+   * @param seconds time of the run
+   * @return measured latencies and counters
+   * @throws InterruptedException if interrupted while waiting for responses
+   */
+  static ScenarioResult run(URI address, Workload workload, int rate, int seconds) throws InterruptedException {
+    List<Workload.Step> steps = workload.getSteps();
+    ScenarioResult result = new ScenarioResult(steps);
+    ExecutorService clients = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, CLIENT_THREAD_NAME);
+      thread.setDaemon(true);
+      return thread;
+    });
+    long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    long iterations = (long) rate * seconds;
+    long start = System.nanoTime();
+    for (long i = 0; i < iterations; i++) {
+      long planned = start + i * intervalNanos;
+      long delay = planned - System.nanoTime();
+      if (delay > 0) {
+        LockSupport.parkNanos(delay);
+      }
+      clients.execute(() -> iteration(address, steps, workload.getHeaders(), planned, result));
+    }
+    clients.shutdown();
+    // responses slower than the highest trackable latency are not waited for
+    clients.awaitTermination(seconds + TimeUnit.NANOSECONDS.toSeconds(HIGHEST_TRACKABLE_NANOS), TimeUnit.SECONDS);
+    result.setElapsedNanos(System.nanoTime() - start);
+    return result;
+  }
+
+  private static void iteration(URI address, List<Workload.Step> steps, Map<String, String> headers, long plannedNanos,
+                                ScenarioResult result) {
+    Map<String, String> cookies = new HashMap<>();
+    long sendNanos = plannedNanos;
+    for (int i = 0; i < steps.size(); i++) {
+      int status;
+      try {
+        status = Http.get(address.resolve(steps.get(i).getPath()), cookies, headers).status;
+      } catch (Exception ex) {
+        status = -1;
+      }
+      long now = System.nanoTime();
+      result.getSteps().get(i).record(status, now - sendNanos);
+      sendNanos = now;
+    }
+    result.iterationCompleted();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JFR recording and async-profiler allocation profile of the measured part of the scenario.
+ * <ul>
+ *   <li>JFR is controlled with diagnostic commands of the running JVM, as {@code jcmd JFR.start} does, with
+ *   {@code profile} settings, which include allocation samples. On JDK 8 JVM has to be started with
+ *   {@code -XX:+UnlockCommercialFeatures -XX:+FlightRecorder}.</li>
+ *   <li>async-profiler is used if {@code one.profiler.AsyncProfiler} is on the classpath and its native library
+ *   is given with {@code bench.asyncProfilerLib}. Allocation profile is written in collapsed stacks format,
+ *   ready for flame graphs.</li>
+ * </ul>
+ * Profiling failure does not fail the run, scenario is measured without it.
+ */
+final class Profiler {
+  private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+  private static final String[] SIGNATURE = {String[].class.getName()};
+
+  private final String name;
+  private final File jfrFile;
+  private final File allocationFile;
+  private final Object asyncProfiler;
+  private boolean jfrStarted;
+  private boolean asyncProfilerStarted;
+
+  private Profiler(String name, File dir, boolean jfr) {
+    this.name = name;
+    this.jfrFile = jfr ? new File(dir, name + ".jfr") : null;
+    this.allocationFile = new File(dir, name + "-alloc.collapsed");
+    this.asyncProfiler = asyncProfiler();
+  }
+
+  /**
+   * Starts profiling of the scenario.
+   *
+   * @param name scenario name
+   * @param dir directory of recordings
+   * @param jfr {@code true} if JFR recording should be started
+   * @return started profiler
+   */
+  static Profiler start(String name, File dir, boolean jfr) {
+    Profiler profiler = new Profiler(name, dir, jfr);
+    dir.mkdirs();
+    if (profiler.jfrFile != null) {
+      profiler.jfrStarted = profiler.jfr("jfrStart",
+        "name=" + name, "settings=profile", "filename=" + profiler.jfrFile.getAbsolutePath());
+    }
+    if (profiler.asyncProfiler != null) {
+      profiler.asyncProfilerStarted = profiler.execute("start,event=alloc") != null;
+    }
+    return profiler;
+  }
+
+  /**
+   * Stops profiling and writes recordings.
+   *
+   * @return written recordings
+   */
+  List<File> stop() {
+    List<File> recordings = new ArrayList<>();
+    if (jfrStarted && jfr("jfrStop", "name=" + name, "filename=" + jfrFile.getAbsolutePath())) {
+      recordings.add(jfrFile);
+    }
+    if (asyncProfilerStarted && execute("stop,file=" + allocationFile.getAbsolutePath() + ",collapsed") != null) {
+      recordings.add(allocationFile);
+    }
+    return recordings;
+  }
+
+  private boolean jfr(String command, String... args) {
+    try {
+      ManagementFactory.getPlatformMBeanServer()
+        .invoke(new ObjectName(DIAGNOSTIC_COMMAND), command, new Object[]{args}, SIGNATURE);
+      return true;
+    } catch (Exception ex) {
+      System.err.println("JFR " + command + " failed for " + name + ": " + ex);
+      return false;
+    }
+  }
+
+  private String execute(String command) {
+    try {
+      Method execute = asyncProfiler.getClass().getMethod("execute", String.class);
+      return String.valueOf(execute.invoke(asyncProfiler, command));
+    } catch (Exception ex) {
+      System.err.println("async-profiler " + command + " failed for " + name + ": " + ex);
+      return null;
+    }
+  }
+
+  private static Object asyncProfiler() {
+    String library = System.getProperty("bench.asyncProfilerLib");
+    if (library == null) {
+      return null;
+    }
+    try {
+      return Class.forName("one.profiler.AsyncProfiler").getMethod("getInstance", String.class).invoke(null, library);
+    } catch (Exception ex) {
+      System.err.println("async-profiler is not available: " + ex);
+      return null;
+    }
+  }
+}
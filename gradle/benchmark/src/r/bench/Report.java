@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * JSON report of the scenario runs, the same structure for every module, so runs of different releases are compared
+ * with simple diff or any JSON tool.
+ * <pre>{@code
+ *   {"module": "...", "version": "...", "timestamp": "...", "java": "...", "rate": 20, "duration": 30,
+ *    "scenarios": [{"name": "...", "iterations": 600, "throughput": 20.0,
+ *      "gc": {"collections": 2, "timeMs": 12, "collectors": {...}}, "allocatedBytes": 123456, "recordings": [...],
+ *      "steps": [{"name": "...", "ok": 600, "rejected": 0, "failed": 0, "throughput": 20.0,
+ *        "latencyMs": {"p50": 1.2, "p90": 2.0, "p99": 5.1, "p99.9": 8.3, "max": 9.0}}]}]}
+ * }</pre>
+ */
+final class Report {
+  private final StringBuilder json = new StringBuilder();
+  private boolean firstScenario = true;
+
+  Report(String module, String version, String timestamp, int rate, int duration) {
+    json.append("{\n")
+      .append("  \"module\": ").append(string(module)).append(",\n")
+      .append("  \"version\": ").append(string(version)).append(",\n")
+      .append("  \"timestamp\": ").append(string(timestamp)).append(",\n")
+      .append("  \"java\": ").append(string(System.getProperty("java.vm.name") + " " + System.getProperty("java.version"))).append(",\n")
+      .append("  \"rate\": ").append(rate).append(",\n")
+      .append("  \"duration\": ").append(duration).append(",\n")
+      .append("  \"scenarios\": [");
+  }
+
+  void add(String name, ScenarioResult result, List<File> recordings) {
+    JvmStats jvm = result.getJvmStats();
+    json.append(firstScenario ? "\n" : ",\n")
+      .append("    {\"name\": ").append(string(name))
+      .append(", \"iterations\": ").append(result.getIterations())
+      .append(", \"throughput\": ").append(number(result.getIterations() / result.getSeconds()))
+      .append(",\n     \"gc\": {\"collections\": ").append(jvm.getCollections())
+      .append(", \"timeMs\": ").append(jvm.getCollectionMillis())
+      .append(", \"collectors\": {");
+    boolean first = true;
+    for (Map.Entry<String, long[]> collector : jvm.getCollectors().entrySet()) {
+      json.append(first ? "" : ", ").append(string(collector.getKey()))
+        .append(": {\"collections\": ").append(collector.getValue()[0])
+        .append(", \"timeMs\": ").append(collector.getValue()[1]).append('}');
+      first = false;
+    }
+    json.append("}},\n     \"allocatedBytes\": ").append(jvm.getAllocatedBytes())
+      .append(", \"recordings\": [");
+    for (int i = 0; i < recordings.size(); i++) {
+      File recording = recordings.get(i);
+      // relative to the report
+      json.append(i > 0 ? ", " : "").append(string(recording.getParentFile().getName() + "/" + recording.getName()));
+    }
+    json.append("],\n     \"steps\": [");
+    for (int i = 0; i < result.getSteps().size(); i++) {
+      ScenarioResult.StepResult step = result.getSteps().get(i);
+      json.append(i > 0 ? ",\n" : "\n")
+        .append("       {\"name\": ").append(string(step.getName()))
+        .append(", \"ok\": ").append(step.getOk())
+        .append(", \"rejected\": ").append(step.getRejected())
+        .append(", \"failed\": ").append(step.getFailed())
+        .append(", \"throughput\": ").append(number(step.getOk() / result.getSeconds()))
+        .append(",\n        \"latencyMs\": {\"p50\": ").append(number(step.getLatencyMillis(50)))
+        .append(", \"p90\": ").append(number(step.getLatencyMillis(90)))
+        .append(", \"p99\": ").append(number(step.getLatencyMillis(99)))
+        .append(", \"p99.9\": ").append(number(step.getLatencyMillis(99.9)))
+        .append(", \"max\": ").append(number(step.getMaxLatencyMillis())).append("}}");
+    }
+    json.append("]}");
+    firstScenario = false;
+  }
+
+  void write(File file) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), (json + "\n  ]\n}\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Prints human readable summary of the scenario.
+   */
+  static void print(PrintStream out, String name, int rate, ScenarioResult result) {
+    JvmStats jvm = result.getJvmStats();
+    out.printf("%s @ %d it/s: throughput=%.1f it/s gc=%d (%d ms) allocated=%.1f MB%n",
+      name, rate, result.getIterations() / result.getSeconds(), jvm.getCollections(), jvm.getCollectionMillis(),
+      jvm.getAllocatedBytes() / 1e6);
+    for (ScenarioResult.StepResult step : result.getSteps()) {
+      out.printf("  %s: ok=%d rejected=%d failed=%d latency [ms] p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+        step.getName(), step.getOk(), step.getRejected(), step.getFailed(),
+        step.getLatencyMillis(50), step.getLatencyMillis(90), step.getLatencyMillis(99), step.getLatencyMillis(99.9),
+        step.getMaxLatencyMillis());
+    }
+  }
+
+  private static String number(double value) {
+    return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  private static String string(String value) {
+    StringBuilder escaped = new StringBuilder("\"");
+    for (char c : String.valueOf(value).toCharArray()) {
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.append('"').toString();
+  }
+}
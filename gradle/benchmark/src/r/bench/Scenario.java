@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import java.net.URI;
+
+/**
+ * Application started by the scenario runner with the scripted workload.
+ * <p>
+ * Scenarios of the module are listed in {@code META-INF/services/r.bench.Scenario} of its benchmark resources
+ * and need a no-arg constructor. Application is started on an ephemeral port, i.e. with {@code EmbeddedApp}.
+ * <pre>{@code
+ *   public class PatternsScenario implements Scenario {
+ *     public URI start() {
+ *       app = EmbeddedApp.of(server -> ...);
+ *       return app.getAddress();
+ *     }
+ *     public Workload getWorkload() {
+ *       return Workload.of().get("parallel", "api/parallel");
+ *     }
+ *     ...
+ *   }
+ * }</pre>
+ */
+public interface Scenario extends AutoCloseable {
+  /**
+   * @return name of the scenario, stable between releases, so reports could be compared
+   */
+  String getName();
+
+  /**
+   * Starts the application.
+   *
+   * @return address of the started application
+   * @throws Exception if application could not be started
+   */
+  URI start() throws Exception;
+
+  /**
+   * @return steps of the single iteration
+   */
+  Workload getWorkload();
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters of the single scenario run, with JVM statistics of the measured time.
+ */
+final class ScenarioResult {
+  private final List<StepResult> steps = new ArrayList<>();
+  private final AtomicLong iterations = new AtomicLong();
+  private long elapsedNanos;
+  private JvmStats jvmStats;
+
+  ScenarioResult(List<Workload.Step> steps) {
+    for (Workload.Step step : steps) {
+      this.steps.add(new StepResult(step.getName()));
+    }
+  }
+
+  List<StepResult> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+  void iterationCompleted() {
+    iterations.incrementAndGet();
+  }
+
+  long getIterations() {
+    return iterations.get();
+  }
+
+  double getSeconds() {
+    return elapsedNanos / 1e9;
+  }
+
+  void setElapsedNanos(long elapsedNanos) {
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  JvmStats getJvmStats() {
+    return jvmStats;
+  }
+
+  void setJvmStats(JvmStats jvmStats) {
+    this.jvmStats = jvmStats;
+  }
+
+  /**
+   * Latency histogram and counters of the single step of the workload.
+   */
+  static final class StepResult {
+    private final String name;
+    private final Histogram latency = new ConcurrentHistogram(LoadGenerator.HIGHEST_TRACKABLE_NANOS, 3);
+    private final AtomicLong ok = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    StepResult(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @param status response status, negative if request failed without response
+     * @param latencyNanos latency of the request
+     */
+    void record(int status, long latencyNanos) {
+      if (status == 503) {
+        rejected.incrementAndGet();
+      } else if (status < 0 || status >= 400) {
+        failed.incrementAndGet();
+      } else {
+        ok.incrementAndGet();
+      }
+      latency.recordValue(Math.min(latencyNanos, LoadGenerator.HIGHEST_TRACKABLE_NANOS));
+    }
+
+    String getName() {
+      return name;
+    }
+
+    long getOk() {
+      return ok.get();
+    }
+
+    long getRejected() {
+      return rejected.get();
+    }
+
+    long getFailed() {
+      return failed.get();
+    }
+
+    /**
+     * @param percentile percentile, i.e. 99.9
+     * @return latency in milliseconds
+     */
+    double getLatencyMillis(double percentile) {
+      return latency.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    double getMaxLatencyMillis() {
+      return latency.getMaxValue() / 1e6;
+    }
+  }
+}
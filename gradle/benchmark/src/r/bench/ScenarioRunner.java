@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import java.io.File;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Runs scenarios of the module and writes JSON {@link Report}.
+ * <p>
+ * Every {@link Scenario} found with {@link ServiceLoader} is started, warmed up, and measured with the open loop
+ * {@link LoadGenerator}. Measured part is recorded with JFR and, if available, async-profiler (see {@link Profiler}).
+ * Report and recordings are written to {@code bench.reportDir}, named by module and start time.
+ * <p>
+ * Configuration is given as system properties:
+ * <ul>
+ *   <li>{@code bench.scenarios} - comma separated names of scenarios to run, default: all</li>
+ *   <li>{@code bench.rate} - iterations per second, default: {@value #DEFAULT_RATE}</li>
+ *   <li>{@code bench.duration} - measurement time in seconds, default: {@value #DEFAULT_DURATION}</li>
+ *   <li>{@code bench.warmup} - warm up time in seconds, not measured, default: {@value #DEFAULT_WARMUP}</li>
+ *   <li>{@code bench.jfr} - {@code false} disables JFR recordings, default: {@code true}</li>
+ * </ul>
+ */
+public class ScenarioRunner {
+  public static final int DEFAULT_RATE = 20;
+  public static final int DEFAULT_DURATION = 30;
+  public static final int DEFAULT_WARMUP = 5;
+
+  public static void main(String... args) throws Exception {
+    String module = System.getProperty("bench.module", "app");
+    String version = System.getProperty("bench.version", "unspecified");
+    File reportDir = new File(System.getProperty("bench.reportDir", "build/bench"));
+    String filter = System.getProperty("bench.scenarios");
+    List<String> names = filter == null ? null : Arrays.asList(filter.split(","));
+    int rate = Integer.getInteger("bench.rate", DEFAULT_RATE);
+    int duration = Integer.getInteger("bench.duration", DEFAULT_DURATION);
+    int warmup = Integer.getInteger("bench.warmup", DEFAULT_WARMUP);
+    boolean jfr = !"false".equals(System.getProperty("bench.jfr"));
+
+    LocalDateTime now = LocalDateTime.now();
+    String runName = module + "-" + now.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+    File recordingsDir = new File(reportDir, runName);
+    Report report = new Report(module, version, now.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), rate, duration);
+
+    for (Scenario scenario : ServiceLoader.load(Scenario.class)) {
+      if (names != null && !names.contains(scenario.getName())) {
+        continue;
+      }
+      try (Scenario app = scenario) {
+        URI address = app.start();
+        LoadGenerator.run(address, app.getWorkload(), rate, warmup);
+        System.gc();
+
+        JvmStats.Snapshot snapshot = JvmStats.snapshot();
+        Profiler profiler = Profiler.start(app.getName(), recordingsDir, jfr);
+        ScenarioResult result = LoadGenerator.run(address, app.getWorkload(), rate, duration);
+        List<File> recordings = profiler.stop();
+        result.setJvmStats(snapshot.since());
+
+        Report.print(System.out, app.getName(), rate, result);
+        report.add(app.getName(), result, recordings);
+      }
+    }
+
+    File reportFile = new File(reportDir, runName + ".json");
+    report.write(reportFile);
+    System.out.println("Report: " + reportFile.getAbsolutePath());
+  }
+}
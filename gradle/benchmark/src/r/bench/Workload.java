@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scripted workload: requests of the single iteration, sent one after another with the same cookies.
+ * <p>
+ * Every iteration starts with the new client session, so i.e. login, session update and read are measured together.
+ * <pre>{@code
+ *   Workload.of()
+ *     .get("set", "s/set/attr/value")
+ *     .get("get", "s/get/attr")
+ * }</pre>
+ */
+public final class Workload {
+  private final List<Step> steps = new ArrayList<>();
+  private final Map<String, String> headers = new LinkedHashMap<>();
+
+  private Workload() {
+  }
+
+  public static Workload of() {
+    return new Workload();
+  }
+
+  /**
+   * Adds GET request.
+   *
+   * @param name name of the step in the report
+   * @param path path and query, relative to the application address
+   * @return this workload
+   */
+  public Workload get(String name, String path) {
+    steps.add(new Step(name, path));
+    return this;
+  }
+
+  /**
+   * Adds header sent with every request of the workload, i.e. {@code Cache-Control: no-store} to bypass response caches.
+   *
+   * @param name header name
+   * @param value header value
+   * @return this workload
+   */
+  public Workload header(String name, String value) {
+    headers.put(name, value);
+    return this;
+  }
+
+  public List<Step> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+
+  /**
+   * Single request of the iteration.
+   */
+  public static final class Step {
+    private final String name;
+    private final String path;
+
+    Step(String name, String path) {
+      this.name = name;
+      this.path = path;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getPath() {
+      return path;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.cache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Status, headers and body of the rendered response, kept by {@link ResponseCache}.
+ */
+final class CachedResponse {
+  private final int status;
+  private final List<Map.Entry<String, String>> headers;
+  private final byte[] body;
+  private final long storedAt;
+  private final long expiresAt;
+
+  CachedResponse(int status, List<Map.Entry<String, String>> headers, byte[] body, long storedAt, long ttlNanos) {
+    this.status = status;
+    this.headers = headers;
+    this.body = body;
+    this.storedAt = storedAt;
+    this.expiresAt = storedAt + ttlNanos;
+  }
+
+  int getStatus() {
+    return status;
+  }
+
+  List<Map.Entry<String, String>> getHeaders() {
+    return headers;
+  }
+
+  byte[] getBody() {
+    return body;
+  }
+
+  boolean isFresh(long now) {
+    return now - expiresAt < 0;
+  }
+
+  long getAgeSeconds(long now) {
+    return (now - storedAt) / 1_000_000_000L;
+  }
+
+  /**
+   * @return approximate size in bytes, weight of the entry in the cache
+   */
+  int weight() {
+    int weight = body.length + 64;
+    for (Map.Entry<String, String> header : headers) {
+      weight += header.getKey().length() + header.getValue().length();
+    }
+    return weight;
+  }
+}
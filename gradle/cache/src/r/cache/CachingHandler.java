@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.cache;
+
+import io.netty.channel.ChannelPipeline;
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import ratpack.http.MutableHeaders;
+import ratpack.http.Request;
+import ratpack.http.Response;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Serves GET requests of an idempotent route from {@link ResponseCache}, and coalesces identical requests in flight.
+ * <ul>
+ *   <li>fresh cached response is sent without calling the decorated handler, with {@code Age} header</li>
+ *   <li>the first request of the key is handled by the decorated handler, its response is captured and cached</li>
+ *   <li>identical requests arriving meanwhile wait for the response of the first one, if it turns out not cacheable,
+ *   or it does not come in {@link ResponseCache.Builder#followTimeout(java.time.Duration) follow timeout}, they are handled by
+ *   the decorated handler</li>
+ * </ul>
+ * Only requests accepted by the {@code cacheable} predicate are cached and coalesced, others, i.e. requests that start
+ * background work, are passed to the decorated handler. Requests with {@code Cache-Control: no-cache} (or
+ * {@code max-age=0}, {@code Pragma: no-cache}) are handled and their response refreshes the cache.
+ * {@code Cache-Control: no-store} requests bypass the cache.
+ * <p>
+ * The decorated handler marks responses that may be cached explicitly, i.e. {@code Cache-Control: public, s-maxage=1}.
+ * Responses with {@code no-store}, {@code no-cache} or {@code private} are not cached, {@code max-age} and
+ * {@code s-maxage} shorten the TTL.
+ * <pre>{@code
+ *   chain.get("api/:name", new CachingHandler(cache, ExecHandler::isIdempotent, new ExecHandler(Duration.ofSeconds(1))))
+ * }</pre>
+ */
+public class CachingHandler implements Handler {
+  private final ResponseCache cache;
+  private final Predicate<? super Context> cacheable;
+  private final Handler handler;
+
+  /**
+   * @param cache cache of the route
+   * @param handler decorated handler, all its GET requests are idempotent
+   */
+  public CachingHandler(ResponseCache cache, Handler handler) {
+    this(cache, ctx -> true, handler);
+  }
+
+  /**
+   * @param cache cache of the route
+   * @param cacheable accepts idempotent GET requests of the route
+   * @param handler decorated handler
+   */
+  public CachingHandler(ResponseCache cache, Predicate<? super Context> cacheable, Handler handler) {
+    this.cache = cache;
+    this.cacheable = cacheable;
+    this.handler = handler;
+  }
+
+  @Override
+  public void handle(Context ctx) throws Exception {
+    Request request = ctx.getRequest();
+    if (!request.getMethod().isGet() || !cacheable.test(ctx)) {
+      ctx.insert(handler);
+      return;
+    }
+    String cacheControl = lowerCase(request.getHeaders().get("Cache-Control"));
+    if (cacheControl.contains("no-store")) {
+      cache.bypassed();
+      ctx.insert(handler);
+      return;
+    }
+    String key = cache.key(request);
+    boolean revalidate = cacheControl.contains("no-cache") || cacheControl.contains("max-age=0")
+      || lowerCase(request.getHeaders().get("Pragma")).contains("no-cache");
+    if (revalidate) {
+      lead(ctx, key, new ResponseCache.InFlight());
+      return;
+    }
+    long now = System.nanoTime();
+    CachedResponse cached = cache.get(key, now);
+    if (cached != null) {
+      cache.hit();
+      send(ctx, cached, now);
+      return;
+    }
+    ResponseCache.InFlight flight = new ResponseCache.InFlight();
+    ResponseCache.InFlight leading = cache.join(key, flight);
+    if (leading == null) {
+      lead(ctx, key, flight);
+    } else {
+      follow(ctx, leading);
+    }
+  }
+
+  private void lead(Context ctx, String key, ResponseCache.InFlight flight) throws Exception {
+    cache.missed();
+    ChannelPipeline pipeline = ctx.getDirectChannelAccess().getChannel().pipeline();
+    ResponseCapture capture = new ResponseCapture(pipeline, cache.getMaxEntryBytes(), cache.getTtlNanos(),
+      response -> cache.complete(key, flight, response));
+    pipeline.addLast(capture);
+    ctx.onClose(outcome -> capture.close());
+    ctx.insert(handler);
+  }
+
+  private void follow(Context ctx, ResponseCache.InFlight leading) {
+    cache.coalesced();
+    ctx.<Optional<CachedResponse>>promise(fulfiller -> leading.await(fulfiller,
+      ctx.getExecution().getController().getExecutor(), cache.getFollowTimeoutNanos(), cache::timedOut)
+    ).then(response -> {
+      if (response.isPresent()) {
+        send(ctx, response.get(), System.nanoTime());
+      } else {
+        ctx.insert(handler);
+      }
+    });
+  }
+
+  private static void send(Context ctx, CachedResponse cached, long now) {
+    Response response = ctx.getResponse();
+    MutableHeaders headers = response.getHeaders();
+    Set<String> replaced = new HashSet<>();
+    for (Map.Entry<String, String> header : cached.getHeaders()) {
+      // the first value replaces header set by preceding handlers, the next ones are added
+      if (replaced.add(header.getKey().toLowerCase(Locale.ENGLISH))) {
+        headers.set(header.getKey(), header.getValue());
+      } else {
+        headers.add(header.getKey(), header.getValue());
+      }
+    }
+    headers.set("Age", Long.toString(cached.getAgeSeconds(now)));
+    response.status(cached.getStatus()).send(cached.getBody());
+  }
+
+  private static String lowerCase(String value) {
+    return value == null ? "" : value.toLowerCase(Locale.ENGLISH);
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import r.metrics.Counter;
+import r.metrics.MetricRegistry;
+import ratpack.exec.Fulfiller;
+import ratpack.http.Request;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendered responses of a route, kept for a short TTL, and requests of the route in flight.
+ * <p>
+ * Cache is bounded by the total size of bodies and headers, the least recently used responses are evicted first.
+ * Responses are keyed by request URI, with query, and values of {@link Builder#vary(String...) vary} headers.
+ * <p>
+ * Usage is recorded in {@link MetricRegistry#global()}: {@code http_cache_requests_total} by {@code result}
+ * (hit, miss, coalesced, bypass, timeout), {@code http_cache_bytes} and {@code http_cache_entries}.
+ * <pre>{@code
+ *   ResponseCache cache = ResponseCache.builder("api")
+ *     .ttl(Duration.ofSeconds(1))
+ *     .maxBytes(16 * 1024 * 1024)
+ *     .build();
+ *   chain.get("api/:name", new CachingHandler(cache, handler));
+ * }</pre>
+ *
+ * @see CachingHandler
+ */
+public final class ResponseCache {
+  private final long ttlNanos;
+  private final long followTimeoutNanos;
+  private final int maxEntryBytes;
+  private final List<String> vary;
+  private final Cache<String, CachedResponse> responses;
+  private final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong bytes = new AtomicLong();
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter coalesced;
+  private final Counter bypassed;
+  private final Counter timedOut;
+
+  private ResponseCache(Builder builder) {
+    this.ttlNanos = builder.ttl.toNanos();
+    this.followTimeoutNanos = builder.followTimeout.toNanos();
+    this.maxEntryBytes = builder.maxEntryBytes;
+    this.vary = builder.vary;
+    this.responses = CacheBuilder.newBuilder()
+      .maximumWeight(builder.maxBytes)
+      .expireAfterWrite(ttlNanos, TimeUnit.NANOSECONDS)
+      .weigher((String key, CachedResponse response) -> response.weight())
+      .removalListener((RemovalNotification<String, CachedResponse> removed) -> bytes.addAndGet(-removed.getValue().weight()))
+      .build();
+    MetricRegistry metrics = MetricRegistry.global();
+    String help = "Requests of cached routes by result";
+    hits = metrics.counter("http_cache_requests_total", help, "cache", builder.name, "result", "hit");
+    misses = metrics.counter("http_cache_requests_total", help, "cache", builder.name, "result", "miss");
+    coalesced = metrics.counter("http_cache_requests_total", help, "cache", builder.name, "result", "coalesced");
+    bypassed = metrics.counter("http_cache_requests_total", help, "cache", builder.name, "result", "bypass");
+    timedOut = metrics.counter("http_cache_requests_total", help, "cache", builder.name, "result", "timeout");
+    metrics.gauge("http_cache_bytes", "Size of cached responses", bytes::get, "cache", builder.name);
+    metrics.gauge("http_cache_entries", "Number of cached responses", responses::size, "cache", builder.name);
+  }
+
+  /**
+   * @param name name of the cache in metrics
+   * @return builder of the cache
+   */
+  public static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  /**
+   * @return size of cached responses in bytes
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  public void invalidateAll() {
+    responses.invalidateAll();
+  }
+
+  String key(Request request) {
+    if (vary.isEmpty()) {
+      return request.getUri();
+    }
+    StringBuilder key = new StringBuilder(request.getUri());
+    for (String header : vary) {
+      String value = request.getHeaders().get(header);
+      key.append('\n').append(value == null ? "" : value);
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return fresh response or {@code null}
+   */
+  CachedResponse get(String key, long now) {
+    CachedResponse response = responses.getIfPresent(key);
+    return response != null && response.isFresh(now) ? response : null;
+  }
+
+  /**
+   * @return request of the same key already in flight, or {@code null} if the given one was registered
+   */
+  InFlight join(String key, InFlight flight) {
+    return inFlight.putIfAbsent(key, flight);
+  }
+
+  /**
+   * Stores response of the leading request, if it was cacheable, and passes it to the coalesced ones.
+   */
+  void complete(String key, InFlight flight, CachedResponse response) {
+    if (response != null && response.weight() <= maxEntryBytes) {
+      bytes.addAndGet(response.weight());
+      responses.put(key, response);
+    }
+    // stored before it is removed, so the next request finds either the response or the request in flight
+    inFlight.remove(key, flight);
+    flight.complete(response);
+  }
+
+  long getTtlNanos() {
+    return ttlNanos;
+  }
+
+  long getFollowTimeoutNanos() {
+    return followTimeoutNanos;
+  }
+
+  int getMaxEntryBytes() {
+    return maxEntryBytes;
+  }
+
+  void hit() {
+    hits.inc();
+  }
+
+  void missed() {
+    misses.inc();
+  }
+
+  void coalesced() {
+    coalesced.inc();
+  }
+
+  void bypassed() {
+    bypassed.inc();
+  }
+
+  void timedOut() {
+    timedOut.inc();
+  }
+
+  /**
+   * Request being handled, with requests waiting for its response.
+   */
+  static final class InFlight {
+    // guarded by this
+    private List<Fulfiller<Optional<CachedResponse>>> waiting = new ArrayList<>();
+    private Optional<CachedResponse> response;
+
+    /**
+     * Waits for the response of the leading request at most {@code timeoutNanos}, then fulfills with empty response,
+     * so the waiting request is handled on its own.
+     */
+    void await(Fulfiller<Optional<CachedResponse>> fulfiller, ScheduledExecutorService scheduler, long timeoutNanos,
+               Runnable onTimeout) {
+      Optional<CachedResponse> completed;
+      synchronized (this) {
+        completed = response;
+        if (completed == null) {
+          waiting.add(fulfiller);
+          scheduler.schedule(() -> {
+            if (stopWaiting(fulfiller)) {
+              onTimeout.run();
+              fulfiller.success(Optional.empty());
+            }
+          }, timeoutNanos, TimeUnit.NANOSECONDS);
+          return;
+        }
+      }
+      fulfiller.success(completed);
+    }
+
+    private synchronized boolean stopWaiting(Fulfiller<Optional<CachedResponse>> fulfiller) {
+      return waiting.remove(fulfiller);
+    }
+
+    private void complete(CachedResponse completed) {
+      List<Fulfiller<Optional<CachedResponse>>> fulfillers;
+      synchronized (this) {
+        response = Optional.ofNullable(completed);
+        fulfillers = waiting;
+        waiting = Collections.emptyList();
+      }
+      for (Fulfiller<Optional<CachedResponse>> fulfiller : fulfillers) {
+        fulfiller.success(response);
+      }
+    }
+  }
+
+  public static final class Builder {
+    private final String name;
+    private Duration ttl = Duration.ofSeconds(1);
+    private Duration followTimeout = Duration.ofSeconds(5);
+    private long maxBytes = 16 * 1024 * 1024;
+    private int maxEntryBytes = 256 * 1024;
+    private List<String> vary = Collections.singletonList("Accept");
+
+    private Builder(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @param ttl time responses are served from the cache, shortened by {@code max-age} of the response, default 1 s
+     * @return this builder
+     */
+    public Builder ttl(Duration ttl) {
+      this.ttl = ttl;
+      return this;
+    }
+
+    /**
+     * @param followTimeout time identical requests wait for the response of the first one before they are handled
+     * on their own, i.e. when the first one hangs, default 5 s
+     * @return this builder
+     */
+    public Builder followTimeout(Duration followTimeout) {
+      this.followTimeout = followTimeout;
+      return this;
+    }
+
+    /**
+     * @param maxBytes max total size of cached responses, default 16 MB
+     * @return this builder
+     */
+    public Builder maxBytes(long maxBytes) {
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * @param maxEntryBytes bigger responses are not cached, default 256 KB
+     * @return this builder
+     */
+    public Builder maxEntryBytes(int maxEntryBytes) {
+      this.maxEntryBytes = maxEntryBytes;
+      return this;
+    }
+
+    /**
+     * @param headers request headers the response depends on, default {@code Accept}
+     * @return this builder
+     */
+    public Builder vary(String... headers) {
+      this.vary = Collections.unmodifiableList(Arrays.asList(headers));
+      return this;
+    }
+
+    public ResponseCache build() {
+      return new ResponseCache(this);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Copies the response of a single request as it is written to the channel.
+ * <p>
+ * Ratpack renders into the channel and does not expose the sent body, so the capture is added to the end of the
+ * pipeline for the time of the request. It sees response before compression and chunked encoding. Capture gives up,
+ * and passes {@code null} to the listener, when response is not cacheable: not {@code 200 OK}, with {@code Set-Cookie},
+ * {@code no-store}, {@code no-cache} or {@code private}, not written as buffers (i.e. file region) or bigger than the limit.
+ * It removes itself from the pipeline with the last content, before the next request of the connection.
+ */
+final class ResponseCapture extends ChannelOutboundHandlerAdapter {
+  // hop by hop and per response headers, not replayed
+  private static final List<String> SKIPPED_HEADERS = Collections.unmodifiableList(Arrays.asList(
+    "connection", "keep-alive", "transfer-encoding", "content-length", "date", "age"));
+
+  private final ChannelPipeline pipeline;
+  private final int maxBytes;
+  private final long ttlNanos;
+  private final Consumer<CachedResponse> listener;
+
+  // accessed on the channel's event loop only
+  private int status;
+  private long responseTtlNanos;
+  private List<Map.Entry<String, String>> headers;
+  private ByteArrayOutputStream body;
+  private boolean done;
+
+  ResponseCapture(ChannelPipeline pipeline, int maxBytes, long ttlNanos, Consumer<CachedResponse> listener) {
+    this.pipeline = pipeline;
+    this.maxBytes = maxBytes;
+    this.ttlNanos = ttlNanos;
+    this.listener = listener;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    boolean last = false;
+    if (!done) {
+      // copied before it is written, the buffer is released by the encoder
+      last = capture(msg);
+    }
+    ctx.write(msg, promise);
+    if (last) {
+      complete();
+    }
+  }
+
+  /**
+   * Called when the request is closed, response that was not captured completely is not cached.
+   */
+  void close() {
+    if (!done) {
+      abort();
+    }
+    if (pipeline.context(this) != null) {
+      pipeline.remove(this);
+    }
+  }
+
+  private boolean capture(Object msg) {
+    boolean captured = true;
+    if (msg instanceof HttpResponse) {
+      captured = captureHeaders((HttpResponse) msg);
+    }
+    if (captured && msg instanceof HttpContent) {
+      captured = append(((HttpContent) msg).content());
+    } else if (captured && msg instanceof ByteBuf) {
+      captured = append((ByteBuf) msg);
+    } else if (captured && !(msg instanceof HttpResponse)) {
+      // i.e. file region or chunked input
+      captured = false;
+    }
+    if (!captured) {
+      if (!done) {
+        abort();
+      }
+      return false;
+    }
+    return msg instanceof LastHttpContent;
+  }
+
+  private boolean captureHeaders(HttpResponse response) {
+    status = response.getStatus().code();
+    if (status != 200) {
+      abort();
+      return false;
+    }
+    responseTtlNanos = ttlNanos;
+    headers = new ArrayList<>();
+    for (Map.Entry<String, String> header : response.headers()) {
+      String name = header.getKey().toLowerCase(Locale.ENGLISH);
+      if (name.equals("set-cookie")) {
+        abort();
+        return false;
+      }
+      if (name.equals("cache-control") && !allowsStore(header.getValue())) {
+        abort();
+        return false;
+      }
+      if (!SKIPPED_HEADERS.contains(name)) {
+        headers.add(new AbstractMap.SimpleImmutableEntry<>(header.getKey(), header.getValue()));
+      }
+    }
+    body = new ByteArrayOutputStream();
+    return true;
+  }
+
+  /**
+   * @return {@code false} if response must not be stored or must be revalidated before every use,
+   * shortens TTL to {@code s-maxage} or {@code max-age}
+   */
+  private boolean allowsStore(String cacheControl) {
+    long maxAge = -1;
+    long sharedMaxAge = -1;
+    for (String directive : cacheControl.toLowerCase(Locale.ENGLISH).split(",")) {
+      String value = directive.trim();
+      if (value.equals("no-store") || value.startsWith("no-cache") || value.startsWith("private")) {
+        return false;
+      }
+      if (value.startsWith("max-age=")) {
+        maxAge = seconds(value.substring("max-age=".length()));
+      } else if (value.startsWith("s-maxage=")) {
+        sharedMaxAge = seconds(value.substring("s-maxage=".length()));
+      }
+    }
+    long maxAgeSeconds = sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+    if (maxAgeSeconds >= 0) {
+      responseTtlNanos = Math.min(responseTtlNanos, maxAgeSeconds * 1_000_000_000L);
+    }
+    return responseTtlNanos > 0;
+  }
+
+  private static long seconds(String value) {
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private boolean append(ByteBuf content) {
+    if (done || body == null) {
+      return false;
+    }
+    int length = content.readableBytes();
+    if (body.size() + length > maxBytes) {
+      abort();
+      return false;
+    }
+    if (length > 0) {
+      byte[] bytes = new byte[length];
+      content.getBytes(content.readerIndex(), bytes);
+      body.write(bytes, 0, length);
+    }
+    return true;
+  }
+
+  private void complete() {
+    done = true;
+    pipeline.remove(this);
+    listener.accept(new CachedResponse(status, Collections.unmodifiableList(headers), body.toByteArray(),
+      System.nanoTime(), responseTtlNanos));
+  }
+
+  private void abort() {
+    done = true;
+    headers = null;
+    body = null;
+    listener.accept(null);
+  }
+}
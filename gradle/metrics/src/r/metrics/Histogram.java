@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets, exported in seconds.
+ * <p>
+ * Every bucket is a striped counter, so recording is lock free and does not allocate. Buckets are not cumulative
+ * when recorded, they are summed up when scraped.
+ */
+public final class Histogram implements Metric {
+  /**
+   * Default bucket bounds from 0.5 ms to 10 s.
+   */
+  static final double[] LATENCY_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+  private final String[] le;
+  private final long[] boundNanos;
+  // the last one counts values above the highest bound
+  private final LongAdder[] buckets;
+  private final LongAdder sumNanos = new LongAdder();
+
+  Histogram(double[] bounds) {
+    this.le = new String[bounds.length + 1];
+    this.boundNanos = new long[bounds.length];
+    this.buckets = new LongAdder[bounds.length + 1];
+    for (int i = 0; i < bounds.length; i++) {
+      if (i > 0 && bounds[i] <= bounds[i - 1]) {
+        throw new IllegalArgumentException("Bucket bounds have to be increasing");
+      }
+      boundNanos[i] = (long) (bounds[i] * TimeUnit.SECONDS.toNanos(1));
+      le[i] = "le=\"" + BigDecimal.valueOf(bounds[i]).stripTrailingZeros().toPlainString() + "\"";
+    }
+    le[bounds.length] = "le=\"+Inf\"";
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * @param nanos recorded duration
+   */
+  public void record(long nanos) {
+    int bucket = 0;
+    while (bucket < boundNanos.length && nanos > boundNanos[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    sumNanos.add(nanos);
+  }
+
+  /**
+   * Records time elapsed since {@code startNanos}.
+   *
+   * @param startNanos start time from {@link System#nanoTime()}
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  @Override
+  public void write(StringBuilder out, String name, String labels) {
+    String separator = labels.isEmpty() ? "" : ",";
+    long cumulative = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      cumulative += buckets[i].sum();
+      Metric.writeSample(out, name + "_bucket", labels + separator + le[i], Long.toString(cumulative));
+    }
+    Metric.writeSample(out, name + "_sum", labels, Double.toString(sumNanos.sum() / 1e9));
+    Metric.writeSample(out, name + "_count", labels, Long.toString(cumulative));
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.metrics;
+
+/**
+ * Metric of the {@link MetricRegistry}, written in Prometheus text format.
+ */
+interface Metric {
+  /**
+   * @param out scrape output
+   * @param name metric name
+   * @param labels rendered labels without braces, may be empty
+   */
+  void write(StringBuilder out, String name, String labels);
+
+  static void writeSample(StringBuilder out, String name, String labels, String value) {
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(value).append('\n');
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.metrics;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * In-process metrics of the application, scraped in Prometheus text format by {@link MetricsHandler}.
+ * <p>
+ * Metrics are identified by name and labels, given as name and value pairs. The same metric is returned for the same
+ * name and labels, so components may look it up once and keep it in a field. Recording does not lock and does not
+ * allocate, lookups do, so they should stay out of hot paths.
+ * <pre>{@code
+ *   private static final Histogram DECODE = MetricRegistry.global()
+ *     .histogram("session_decode_seconds", "Session cookie decoding time");
+ *
+ *   long start = System.nanoTime();
+ *   ...
+ *   DECODE.recordSince(start);
+ * }</pre>
+ * Components of the example applications record into the {@link #global()} registry, so it is enough to add
+ * {@link MetricsHandler} to the handler chain.
+ */
+public final class MetricRegistry {
+  private static final MetricRegistry GLOBAL = new MetricRegistry();
+
+  private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+  /**
+   * @return registry shared by the whole application
+   */
+  public static MetricRegistry global() {
+    return GLOBAL;
+  }
+
+  public Counter counter(String name, String help, String... labels) {
+    return (Counter) family(name, help, "counter").children.computeIfAbsent(labels(labels), l -> new Counter());
+  }
+
+  public Histogram histogram(String name, String help, String... labels) {
+    return histogram(name, help, Histogram.LATENCY_BUCKETS, labels);
+  }
+
+  /**
+   * @param name metric name
+   * @param help description
+   * @param bounds increasing upper bounds of buckets in seconds
+   * @param labels label name and value pairs
+   * @return histogram
+   */
+  public Histogram histogram(String name, String help, double[] bounds, String... labels) {
+    return (Histogram) family(name, help, "histogram").children.computeIfAbsent(labels(labels), l -> new Histogram(bounds));
+  }
+
+  /**
+   * Registers gauge read when scraped. The first registered gauge of the name and labels is kept.
+   *
+   * @param name metric name
+   * @param help description
+   * @param value current value, called on scrape
+   * @param labels label name and value pairs
+   */
+  public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+    family(name, help, "gauge").children.putIfAbsent(labels(labels),
+      (out, n, l) -> Metric.writeSample(out, n, l, format(value.getAsDouble())));
+  }
+
+  /**
+   * Writes all metrics in Prometheus text exposition format, version 0.0.4.
+   *
+   * @param out scrape output
+   */
+  public void writeTo(StringBuilder out) {
+    families.forEach((name, family) -> {
+      out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+      out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+      family.children.forEach((labels, metric) -> metric.write(out, name, labels));
+    });
+  }
+
+  private Family family(String name, String help, String type) {
+    Family family = families.computeIfAbsent(name, n -> new Family(help.replace("\\", "\\\\").replace("\n", "\\n"), type));
+    if (!family.type.equals(type)) {
+      throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+    }
+    return family;
+  }
+
+  private static String labels(String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels have to be given as name and value pairs");
+    }
+    StringBuilder rendered = new StringBuilder();
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        rendered.append(',');
+      }
+      rendered.append(labels[i]).append("=\"")
+        .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+        .append('"');
+    }
+    return rendered.toString();
+  }
+
+  private static String format(double value) {
+    if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    }
+    return Double.toString(value);
+  }
+
+  private static final class Family {
+    private final String help;
+    private final String type;
+    // sorted, so scrapes are stable
+    private final ConcurrentMap<String, Metric> children = new ConcurrentSkipListMap<>();
+
+    private Family(String help, String type) {
+      this.help = help;
+      this.type = type;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.metrics;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import ratpack.exec.ExecController;
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records latency and status of every request by route and serves {@link MetricRegistry} at {@code /metrics}
+ * in Prometheus text format. Added as the first handler of the chain:
+ * <pre>{@code
+ *   chain.handler(new MetricsHandler())
+ * }</pre>
+ * Route is the path template given with {@link #route(String, Handler)}, so requests of all values of path tokens are
+ * recorded together:
+ * <pre>{@code
+ *   chain.get("api/:name", MetricsHandler.route("api/:name", new ExecHandler()))
+ * }</pre>
+ * Requests of other handlers are recorded by the request path. Paths above {@code maxRoutes} are recorded as route
+ * {@code other}, so path tokens do not grow the registry without bounds.
+ * <p>
+ * Pending tasks of event loops and number of Ratpack's blocking threads are registered as gauges with the first
+ * request.
+ */
+public class MetricsHandler implements Handler {
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final String OTHER = "other";
+  private static final String BLOCKING_THREAD_PREFIX = "ratpack-blocking";
+
+  private final MetricRegistry registry;
+  private final String path;
+  private final int maxRoutes;
+  private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Route> namedRoutes = new ConcurrentHashMap<>();
+  private final AtomicBoolean serverGauges = new AtomicBoolean();
+  private volatile Route other;
+
+  public MetricsHandler() {
+    this(MetricRegistry.global(), "metrics", 100);
+  }
+
+  /**
+   * @param registry scraped registry
+   * @param path path of the scrape endpoint
+   * @param maxRoutes max number of distinct routes
+   */
+  public MetricsHandler(MetricRegistry registry, String path, int maxRoutes) {
+    this.registry = registry;
+    this.path = path;
+    this.maxRoutes = maxRoutes;
+  }
+
+  @Override
+  public void handle(Context ctx) throws Exception {
+    if (serverGauges.compareAndSet(false, true)) {
+      registerServerGauges(ctx.get(ExecController.class));
+    }
+    String requestPath = ctx.getRequest().getPath();
+    if (path.equals(requestPath)) {
+      StringBuilder out = new StringBuilder(4096);
+      registry.writeTo(out);
+      ctx.getResponse().getHeaders().set("Cache-Control", "no-store");
+      ctx.getResponse().send(CONTENT_TYPE, out.toString());
+      return;
+    }
+    long start = System.nanoTime();
+    RouteName routeName = new RouteName();
+    ctx.getRequest().add(RouteName.class, routeName);
+    ctx.onClose(outcome -> {
+      String name = routeName.name;
+      Route route = name != null ? named(name) : route(requestPath);
+      route.record(outcome.getResponse().getStatus().getCode(), System.nanoTime() - start);
+    });
+    ctx.next();
+  }
+
+  /**
+   * Decorates {@code handler} so its requests are recorded as route {@code name} instead of the request path.
+   *
+   * @param name path template of the handler, i.e. {@code api/:name}
+   * @param handler decorated handler
+   * @return handler that names the route and inserts {@code handler}
+   */
+  public static Handler route(String name, Handler handler) {
+    return ctx -> {
+      ctx.getRequest().maybeGet(RouteName.class).ifPresent(routeName -> routeName.name = name);
+      ctx.insert(handler);
+    };
+  }
+
+  private Route named(String name) {
+    // names are given by the application, so they do not count to max routes
+    return namedRoutes.computeIfAbsent(name, n -> new Route(registry, "/" + n));
+  }
+
+  private Route route(String requestPath) {
+    Route route = routes.get(requestPath);
+    if (route != null) {
+      return route;
+    }
+    if (routes.size() < maxRoutes) {
+      return routes.computeIfAbsent(requestPath, p -> new Route(registry, "/" + p));
+    }
+    if (other == null) {
+      // racing threads get the same metrics from the registry
+      other = new Route(registry, OTHER);
+    }
+    return other;
+  }
+
+  private void registerServerGauges(ExecController execController) {
+    registry.gauge("ratpack_event_loop_pending_tasks", "Tasks waiting in queues of all event loops", () -> {
+      long pending = 0;
+      for (EventExecutor executor : execController.getEventLoopGroup()) {
+        if (executor instanceof SingleThreadEventExecutor) {
+          pending += ((SingleThreadEventExecutor) executor).pendingTasks();
+        }
+      }
+      return pending;
+    });
+    registry.gauge("ratpack_event_loop_max_pending_tasks", "Tasks waiting in the queue of the busiest event loop", () -> {
+      long max = 0;
+      for (EventExecutor executor : execController.getEventLoopGroup()) {
+        if (executor instanceof SingleThreadEventExecutor) {
+          max = Math.max(max, ((SingleThreadEventExecutor) executor).pendingTasks());
+        }
+      }
+      return max;
+    });
+    registry.gauge("ratpack_blocking_threads", "Threads of the blocking pool, busy and idle", MetricsHandler::blockingThreads);
+  }
+
+  private static double blockingThreads() {
+    ThreadGroup root = Thread.currentThread().getThreadGroup();
+    while (root.getParent() != null) {
+      root = root.getParent();
+    }
+    Thread[] threads = new Thread[root.activeCount() * 2];
+    int count = root.enumerate(threads, true);
+    int blocking = 0;
+    for (int i = 0; i < count; i++) {
+      if (threads[i].getName().startsWith(BLOCKING_THREAD_PREFIX)) {
+        blocking++;
+      }
+    }
+    return blocking;
+  }
+
+  /**
+   * Name of the route of the request, set by the handler decorated with {@link #route(String, Handler)}.
+   */
+  private static final class RouteName {
+    private volatile String name;
+  }
+
+  /**
+   * Metrics of the route, looked up once.
+   */
+  private static final class Route {
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final Histogram latency;
+    private final Counter[] requests = new Counter[STATUS_CLASSES.length];
+
+    private Route(MetricRegistry registry, String name) {
+      latency = registry.histogram("http_request_duration_seconds", "Time from the first handler to the sent response",
+        "route", name);
+      for (int i = 0; i < requests.length; i++) {
+        requests[i] = registry.counter("http_requests_total", "Requests by response status class",
+          "route", name, "status", STATUS_CLASSES[i]);
+      }
+    }
+
+    private void record(int status, long nanos) {
+      latency.record(nanos);
+      int statusClass = status / 100 - 1;
+      if (statusClass >= 0 && statusClass < requests.length) {
+        requests[statusClass].inc();
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package r.cs.bench;
+
+import r.bench.Scenario;
+import r.bench.Workload;
+import r.cs.Main;
+import ratpack.guice.Guice;
+import ratpack.test.embed.EmbeddedApp;
+
+import java.net.URI;
+
+/**
+ * Client-side session started with {@link Main} bindings and handlers.
+ * <p>
+ * Every iteration starts without session: small attribute is set and read, then 2 KB attribute is set and read,
+ * so the cookie grows. Read only requests do not send the cookie back, set requests seal the whole session again.
+ */
+public class CookieSessionScenario implements Scenario {
+  private EmbeddedApp app;
+
+  @Override
+  public String getName() {
+    return "cookieSession";
+  }
+
+  @Override
+  public URI start() {
+    app = EmbeddedApp.of(server -> server
+      .registry(Guice.registry(Main::bindings))
+      .handlers(Main::handlers)
+    );
+    return app.getAddress();
+  }
+
+  @Override
+  public Workload getWorkload() {
+    return Workload.of()
+      .get("setSmall", "s/set/user/jerry")
+      .get("getSmall", "s/get/user")
+      .get("setLarge", "m/set/large")
+      .get("getLarge", "m/get/large")
+      .get("getAll", "s");
+  }
+
+  @Override
+  public void close() {
+    if (app != null) {
+      app.close();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package r.cs.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import r.cs.session.SessionCrypto;
+import r.cs.session.SessionKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sealing and opening of session cookies with per thread JCA instances, compared to JCA lookup on every call.
+ * <p>
+ * Benchmarks run with 4 threads, like event loop threads of the server, so lookup contention is visible.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SessionCryptoBenchmark {
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  private static final SessionKey PREVIOUS = SessionKey.of("bbbbbbbbbbbbbbbb", "dddddddddddddddd", MAC_ALGORITHM);
+  private static final SessionKey CURRENT = SessionKey.of("aaaaaaaaaaaaaaaa", "cccccccccccccccc", MAC_ALGORITHM);
+
+  private final SecureRandom random = new SecureRandom();
+  private SessionCrypto crypto;
+  private String payload;
+  private String sealed;
+  private String sealedWithPrevious;
+
+  @Setup
+  public void setup() throws Exception {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      builder.append(i > 0 ? "&" : "").append("YXR0cg").append(i).append("=rO0ABXQAEHZhbHVlZWVlZWVlZWVlZWVl");
+    }
+    payload = builder.toString();
+    sealedWithPrevious = new SessionCrypto(MAC_ALGORITHM, PREVIOUS, null).seal(payload);
+    crypto = new SessionCrypto(MAC_ALGORITHM, CURRENT, PREVIOUS);
+    sealed = crypto.seal(payload);
+  }
+
+  @Benchmark
+  public String seal() throws Exception {
+    return crypto.seal(payload);
+  }
+
+  @Benchmark
+  public SessionCrypto.Opened open() {
+    return crypto.open(sealed);
+  }
+
+  @Benchmark
+  public SessionCrypto.Opened openWithPreviousKey() {
+    return crypto.open(sealedWithPrevious);
+  }
+
+  /**
+   * Baseline: the same work as {@link #seal()} with JCA lookup and key initialization on every call.
+   */
+  @Benchmark
+  public byte[] sealWithLookup() throws Exception {
+    byte[] iv = new byte[16];
+    random.nextBytes(iv);
+    Cipher cipher = Cipher.getInstance(SessionCrypto.CIPHER_TRANSFORMATION);
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(
+      "cccccccccccccccc".getBytes(StandardCharsets.UTF_8), SessionKey.ENCRYPTION_ALGORITHM), new IvParameterSpec(iv));
+    byte[] encrypted = cipher.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    Mac mac = Mac.getInstance(MAC_ALGORITHM);
+    mac.init(new SecretKeySpec("aaaaaaaaaaaaaaaa".getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+    return mac.doFinal(encrypted);
+  }
+}
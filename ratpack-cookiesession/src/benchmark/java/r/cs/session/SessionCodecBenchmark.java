@@ -0,0 +1,108 @@
+package r.cs.session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the session attribute into the sealed cookie and decoding it back, with {@link SessionCodec} and
+ * {@link SessionCrypto} configured as in the example: Java serialization, HMAC signature and AES encryption.
+ * <p>
+ * Payloads are 2 KB string set by {@code m/set/:attr} of the example, and a map of short strings, the same as
+ * {@code SessionSerializationBenchmark} of the pac4j example, which serializes them with Kryo.
+ * Cookie sizes are printed by {@link #main(String...)}:
+ * <pre>
+ *   ./gradlew benchmarkMain -Dbench.main=r.cs.session.SessionCodecBenchmark
+ * </pre>
+ * Run with {@code -prof gc} to get allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionCodecBenchmark {
+  private static final String ATTR = "value";
+
+  @Param({"string2k", "map"})
+  public String payload;
+
+  private SessionCodec codec;
+  private Object value;
+  private String cookie;
+
+  @Setup
+  public void setup() throws Exception {
+    codec = codec();
+    value = payload(payload);
+    cookie = encode();
+  }
+
+  /**
+   * Serializes the attribute and seals the cookie, as the session does when the attribute is modified.
+   */
+  @Benchmark
+  public String encode() throws Exception {
+    Map<String, ClientSession.Entry> entries = new LinkedHashMap<>();
+    entries.put(ATTR, ClientSession.Entry.encoded(codec.serialize(value)));
+    return codec.seal(entries);
+  }
+
+  /**
+   * Opens the cookie and deserializes the attribute, as the first {@link ClientSession#get(String)} does.
+   */
+  @Benchmark
+  public Object decode() throws Exception {
+    SessionCrypto.Opened opened = codec.open(cookie);
+    return codec.deserialize(codec.decode(opened.getPayload()).get(ATTR).getEncoded());
+  }
+
+  public static void main(String... args) throws Exception {
+    SessionCodec codec = codec();
+    for (String name : new String[]{"string2k", "map"}) {
+      Map<String, ClientSession.Entry> entries = new LinkedHashMap<>();
+      entries.put(ATTR, ClientSession.Entry.encoded(codec.serialize(payload(name))));
+      System.out.println(String.format("Cookie size of %s: %d", name, codec.seal(entries).length()));
+    }
+  }
+
+  private static SessionCodec codec() {
+    ClientSessionModule.Config config = new ClientSessionModule.Config();
+    config.setSecretKey("aaaaaaaaaaaaaaaa");
+    config.setEncryptionKey("cccccccccccccccc");
+    return new SessionCodec(config, new ClientSessionModule().provideSessionCrypto(config));
+  }
+
+  private static Object payload(String name) {
+    switch (name) {
+      case "string2k":
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+          value.append("ab");
+        }
+        return value.toString();
+      case "map":
+        HashMap<String, String> map = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+          map.put("attr" + i, "valueeeeeeeeeeeeeeeeeeeeee" + i);
+        }
+        return map;
+      default:
+        throw new IllegalArgumentException("Unknown payload: " + name);
+    }
+  }
+}
@@ -1,112 +1,142 @@
 package r.cs;
 
+import r.cs.session.ClientSession;
+import r.metrics.MetricsHandler;
+import r.cs.session.ClientSessionModule;
+import ratpack.guice.BindingsSpec;
 import ratpack.guice.Guice;
+import ratpack.handling.Chain;
 import ratpack.server.RatpackServer;
-import ratpack.session.clientside.ClientSideSessionsModule;
-import ratpack.session.store.SessionStorage;
 
+/**
+ * Client-side session example application.
+ * <p>
+ * Bindings and handlers are exposed, so the same application could be started by benchmark scenarios.
+ */
 public class Main {
   public static void main(String... args) throws Exception {
     RatpackServer.start(server -> server
-        .registry(Guice.registry(b -> b
-          .add(ClientSideSessionsModule.class, config -> {
-            config.setSecretKey("aaaaaaaaaaaaaaaa");
-            //config.setSessionName("my-session-value");
-            //config.setSecretToken("cookiesession");
-            //config.setMacAlgorithm("HmacMD5");
-          })
-        ))
-        .handlers(chain -> chain
-          .get(ctx -> {
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            ctx.render(sessionStorage.getOrDefault("value", "NOT SET"));
-          })
-          .get("s", ctx -> {
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            StringBuilder stringBuilder = new StringBuilder();
-            sessionStorage.forEach((attr, value) -> {
-              stringBuilder.append("ATTR: ")
-                .append(attr)
-                .append(" VALUE: ")
-                .append(value)
-                .append(" || ");
-            });
-            ctx.render(stringBuilder.toString());
-          })
-          .get("m/set/:attr", ctx -> {
-            // set large session size
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            String attr = ctx.getPathTokens().get("attr");
-            String value = "";
-            for (int i = 0; i < 1024; i++) {
-              value += "ab";
-            }
-            sessionStorage.put(attr, value);
-            ctx.render(value);
-          })
-          .get("m/get/:attr", ctx -> {
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            String attr = ctx.getPathTokens().get("attr");
-            ctx.render(sessionStorage.get(attr));
-          })
-          .get("s/set/:attr/:value", ctx -> {
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            String attr = ctx.getPathTokens().get("attr");
-            String value = ctx.getPathTokens().get("value");
-            if (attr == null || "".equals(attr) || value == null || "".equals(value)) {
-              ctx.render("ACTION IGNORED FOR: " + attr);
-            } else {
-              sessionStorage.put(attr, value);
-              ctx.render("ATTR " + attr + " SET TO: " + sessionStorage.get(attr));
-            }
-          })
-          .get("s/get/:attr", ctx -> {
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            String attr = ctx.getPathTokens().get("attr");
-            if (attr == null || "".equals(attr)) {
-              ctx.render("ATTR NOT FOUND: " + attr);
-            } else {
-              ctx.render("ATTR " + attr + " VALUE: " + sessionStorage.get(attr));
-            }
-          })
-          .get("s/clear/:attr", ctx -> {
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            String attr = ctx.getPathTokens().get("attr");
-            if (attr != null && !"".equals(attr)) {
-              sessionStorage.remove(attr);
-              ctx.render("REMOVED ATTR: " + attr);
-            } else {
-              ctx.render("ATTR NOT FOUND: " + attr);
-            }
-          })
-          .get("set/:attr/:value", ctx -> {
-            SessionStorage sessionStorage = ctx.getRequest().get(SessionStorage.class);
-            String attr = ctx.getPathTokens().get("attr");
-            String value = ctx.getPathTokens().get("value");
-            if (attr == null || "".equals(attr)) {
-              ctx.render("No attr defined");
-              return;
-            }
-            sessionStorage.forEach((k, v) -> {
-              System.out.println("SESSION KEY: " + k + " VALUE: " + v);
-            });
-            if (value == null || "".equals(value)) {
-              sessionStorage.remove(attr);
-              ctx.render("Attr: " + attr + " REMOVED");
-            } else {
-              if ("populate".equals(value)) {
-                for (int i = 0; i < 1; i++) {
-                  sessionStorage.put("attr" + i, "valueeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeee" + i);
-                }
-                ctx.render("Attributes populated");
-              } else {
-                String prevValue = (String) sessionStorage.getOrDefault(attr, "NOT SET");
-                sessionStorage.put(attr, value + "1234567890");
-                ctx.render("Attr " + attr + " SET TO: " + value + " FROM: " + prevValue);
-              }
-            }
-          })
-        )
+        .registry(Guice.registry(Main::bindings))
+        .handlers(Main::handlers)
     );
   }
+
+  /**
+   * Binds application components.
+   *
+   * @param b bindings spec
+   */
+  public static void bindings(BindingsSpec b) {
+    b
+      // session is decoded with the first access, attribute by attribute
+      .add(ClientSessionModule.class, config -> {
+        config.setSecretKey("aaaaaaaaaaaaaaaa");
+        config.setEncryptionKey("cccccccccccccccc");
+        // keys before rotation, cookies sealed with them are accepted and sealed again with the current keys
+        //config.setPreviousSecretKey("bbbbbbbbbbbbbbbb");
+        //config.setPreviousEncryptionKey("dddddddddddddddd");
+        //config.setSessionName("my-session-value");
+        //config.setMacAlgorithm("HmacMD5");
+      });
+  }
+
+  /**
+   * Defines application handlers.
+   *
+   * @param chain handler chain
+   */
+  public static void handlers(Chain chain) {
+    chain
+      // latency by route and session encoding times, scraped at /metrics
+      .handler(new MetricsHandler())
+      .get(ctx -> {
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        ctx.render(session.getOrDefault("value", "NOT SET"));
+      })
+      .get("s", ctx -> {
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        StringBuilder stringBuilder = new StringBuilder();
+        session.forEach((attr, value) -> {
+          stringBuilder.append("ATTR: ")
+            .append(attr)
+            .append(" VALUE: ")
+            .append(value)
+            .append(" || ");
+        });
+        ctx.render(stringBuilder.toString());
+      })
+      .get("m/set/:attr", MetricsHandler.route("m/set/:attr", ctx -> {
+        // set large session size
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        String attr = ctx.getPathTokens().get("attr");
+        String value = "";
+        for (int i = 0; i < 1024; i++) {
+          value += "ab";
+        }
+        session.put(attr, value);
+        ctx.render(value);
+      }))
+      .get("m/get/:attr", MetricsHandler.route("m/get/:attr", ctx -> {
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        String attr = ctx.getPathTokens().get("attr");
+        ctx.render(session.get(attr));
+      }))
+      .get("s/set/:attr/:value", MetricsHandler.route("s/set/:attr/:value", ctx -> {
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        String attr = ctx.getPathTokens().get("attr");
+        String value = ctx.getPathTokens().get("value");
+        if (attr == null || "".equals(attr) || value == null || "".equals(value)) {
+          ctx.render("ACTION IGNORED FOR: " + attr);
+        } else {
+          session.put(attr, value);
+          ctx.render("ATTR " + attr + " SET TO: " + session.get(attr));
+        }
+      }))
+      .get("s/get/:attr", MetricsHandler.route("s/get/:attr", ctx -> {
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        String attr = ctx.getPathTokens().get("attr");
+        if (attr == null || "".equals(attr)) {
+          ctx.render("ATTR NOT FOUND: " + attr);
+        } else {
+          ctx.render("ATTR " + attr + " VALUE: " + session.get(attr));
+        }
+      }))
+      .get("s/clear/:attr", MetricsHandler.route("s/clear/:attr", ctx -> {
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        String attr = ctx.getPathTokens().get("attr");
+        if (attr != null && !"".equals(attr)) {
+          session.remove(attr);
+          ctx.render("REMOVED ATTR: " + attr);
+        } else {
+          ctx.render("ATTR NOT FOUND: " + attr);
+        }
+      }))
+      .get("set/:attr/:value", MetricsHandler.route("set/:attr/:value", ctx -> {
+        ClientSession session = ctx.getRequest().get(ClientSession.class);
+        String attr = ctx.getPathTokens().get("attr");
+        String value = ctx.getPathTokens().get("value");
+        if (attr == null || "".equals(attr)) {
+          ctx.render("No attr defined");
+          return;
+        }
+        session.forEach((k, v) -> {
+          System.out.println("SESSION KEY: " + k + " VALUE: " + v);
+        });
+        if (value == null || "".equals(value)) {
+          session.remove(attr);
+          ctx.render("Attr: " + attr + " REMOVED");
+        } else {
+          if ("populate".equals(value)) {
+            for (int i = 0; i < 1; i++) {
+              session.put("attr" + i, "valueeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeeee" + i);
+            }
+            ctx.render("Attributes populated");
+          } else {
+            String prevValue = (String) session.getOrDefault(attr, "NOT SET");
+            session.put(attr, value + "1234567890");
+            ctx.render("Attr " + attr + " SET TO: " + value + " FROM: " + prevValue);
+          }
+        }
+      }));
+  }
 }
@@ -0,0 +1,236 @@
+package r.cs.session;
+
+import ratpack.http.Response;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Session stored in the cookie, decoded lazily.
+ * <p>
+ * Nothing is done until the first access: the cookie is not read nor verified by handlers that do not use the session.
+ * The first access verifies cookie's signature and splits it into attributes, still encoded. Every attribute is
+ * serialized separately, so {@link #get(String)} deserializes only the requested attribute.
+ * <p>
+ * Writes are tracked per attribute. Putting value equal to the current one, or removing attribute that does not exist,
+ * does not modify the session. Unmodified session is not serialized nor signed and no {@code Set-Cookie} header is sent,
+ * which is the case of read only requests. When session is modified, only modified attributes are serialized,
+ * others are written in their original encoded form.
+ * <p>
+ * Value changed in place, i.e. mutable collection, has to be marked with {@link #touch(String)}.
+ * <p>
+ * Instance is bound to the request and is not thread safe.
+ * <pre>{@code
+ *   ClientSession session = ctx.getRequest().get(ClientSession.class);
+ *   session.put("value", "foo");
+ * }</pre>
+ */
+public class ClientSession {
+  private final SessionCodec codec;
+  private final Supplier<String> cookie;
+  private Map<String, Entry> entries;
+  private final Set<String> dirty = new HashSet<>();
+  private boolean removed;
+  private boolean stale;
+
+  ClientSession(SessionCodec codec, Supplier<String> cookie) {
+    this.codec = codec;
+    this.cookie = cookie;
+  }
+
+  /**
+   * Gets attribute value, deserializing only this attribute.
+   *
+   * @param attr attribute name
+   * @return value or {@code null} if attribute does not exist
+   */
+  public Object get(String attr) {
+    Entry entry = entries().get(attr);
+    if (entry == null) {
+      return null;
+    }
+    if (!entry.decoded) {
+      try {
+        entry.value = codec.deserialize(entry.encoded);
+        entry.decoded = true;
+      } catch (Exception ex) {
+        // i.e. class of the value changed, attribute is dropped
+        entries.remove(attr);
+        dirty.remove(attr);
+        removed = true;
+        return null;
+      }
+    }
+    return entry.value;
+  }
+
+  public Object getOrDefault(String attr, Object defaultValue) {
+    Object value = get(attr);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Sets attribute value. Attribute is not modified if value is equal to the current one.
+   * <p>
+   * Value is serialized immediately, so session that would not fit in the cookie fails here and not when the response
+   * is sent. The session is left unchanged then.
+   *
+   * @param attr attribute name
+   * @param value serializable value
+   * @throws IllegalArgumentException if value is not {@link Serializable}
+   * @throws SessionTooLargeException if session cookie would be above max cookie size
+   */
+  public void put(String attr, Object value) {
+    if (!(value instanceof Serializable)) {
+      throw new IllegalArgumentException("Session value of " + attr + " is not serializable");
+    }
+    if (entries().containsKey(attr) && Objects.equals(get(attr), value)) {
+      return;
+    }
+    Entry entry;
+    try {
+      entry = Entry.of(value, codec.serialize(value));
+    } catch (Exception ex) {
+      throw new IllegalArgumentException("Session value of " + attr + " could not be serialized", ex);
+    }
+    Entry previous = entries.put(attr, entry);
+    boolean wasDirty = !dirty.add(attr);
+    try {
+      codec.checkSize(entries);
+    } catch (SessionTooLargeException ex) {
+      if (previous == null) {
+        entries.remove(attr);
+      } else {
+        entries.put(attr, previous);
+      }
+      if (!wasDirty) {
+        dirty.remove(attr);
+      }
+      throw ex;
+    }
+  }
+
+  public void remove(String attr) {
+    if (entries().remove(attr) != null) {
+      dirty.remove(attr);
+      removed = true;
+    }
+  }
+
+  /**
+   * Marks attribute as modified, so it is serialized again. Required if value was changed in place.
+   *
+   * @param attr attribute name
+   */
+  public void touch(String attr) {
+    Entry entry = entries().get(attr);
+    if (entry != null && get(attr) != null) {
+      entry.encoded = null;
+      dirty.add(attr);
+    }
+  }
+
+  /**
+   * @return names of attributes, no value is deserialized
+   */
+  public Set<String> keySet() {
+    return entries().keySet();
+  }
+
+  public boolean isEmpty() {
+    return entries().isEmpty();
+  }
+
+  /**
+   * Iterates over attributes, deserializing every value.
+   *
+   * @param action consumer of attribute name and value
+   */
+  public void forEach(BiConsumer<String, Object> action) {
+    for (String attr : entries().keySet().toArray(new String[entries.size()])) {
+      Object value = get(attr);
+      if (value != null) {
+        action.accept(attr, value);
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if any attribute was modified or removed, or cookie was sealed with the previous key
+   */
+  public boolean isModified() {
+    return removed || stale || !dirty.isEmpty();
+  }
+
+  /**
+   * Writes session cookie if session was modified, otherwise does nothing. Expires cookie if there are no attributes.
+   *
+   * @param response response to write cookie to
+   * @throws SessionTooLargeException if touched values made the cookie above max cookie size
+   * @throws Exception if value could not be serialized
+   */
+  void writeTo(Response response) throws Exception {
+    if (!isModified()) {
+      return;
+    }
+    if (entries.isEmpty()) {
+      codec.expireCookie(response);
+      return;
+    }
+    for (String attr : dirty) {
+      Entry entry = entries.get(attr);
+      // put values are serialized already, touched ones are serialized again
+      if (entry.encoded == null) {
+        entry.encoded = codec.serialize(entry.value);
+      }
+    }
+    codec.writeCookie(response, entries);
+    dirty.clear();
+    removed = false;
+    stale = false;
+  }
+
+  private Map<String, Entry> entries() {
+    if (entries == null) {
+      String value = cookie.get();
+      SessionCrypto.Opened opened = value == null ? null : codec.open(value);
+      entries = opened == null ? new LinkedHashMap<>() : codec.decode(opened.getPayload());
+      // cookie sealed with the previous key is sealed again with the current one
+      stale = opened != null && opened.isPreviousKey();
+    }
+    return entries;
+  }
+
+  /**
+   * Attribute value, encoded or deserialized.
+   */
+  static class Entry {
+    private String encoded;
+    private Object value;
+    private boolean decoded;
+
+    static Entry encoded(String encoded) {
+      Entry entry = new Entry();
+      entry.encoded = encoded;
+      return entry;
+    }
+
+    static Entry of(Object value, String encoded) {
+      Entry entry = new Entry();
+      entry.value = value;
+      entry.encoded = encoded;
+      entry.decoded = true;
+      return entry;
+    }
+
+    String getEncoded() {
+      return encoded;
+    }
+  }
+}
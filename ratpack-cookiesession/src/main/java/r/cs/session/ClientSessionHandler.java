@@ -0,0 +1,27 @@
+package r.cs.session;
+
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import ratpack.http.Request;
+
+/**
+ * Adds {@link ClientSession} to the request registry and writes it before the response is sent.
+ * <p>
+ * Session is not decoded here, it is decoded with the first access.
+ */
+class ClientSessionHandler implements Handler {
+  private final SessionCodec codec;
+
+  ClientSessionHandler(SessionCodec codec) {
+    this.codec = codec;
+  }
+
+  @Override
+  public void handle(Context ctx) throws Exception {
+    Request request = ctx.getRequest();
+    ClientSession session = new ClientSession(codec, () -> request.oneCookie(codec.getSessionName()));
+    request.add(ClientSession.class, session);
+    ctx.getResponse().beforeSend(session::writeTo);
+    ctx.next();
+  }
+}
@@ -0,0 +1,135 @@
+package r.cs.session;
+
+import com.google.inject.Provides;
+import ratpack.guice.ConfigurableModule;
+import ratpack.handling.HandlerDecorator;
+
+import javax.inject.Singleton;
+
+/**
+ * Provides lazily decoded {@link ClientSession} for every request.
+ * <pre>{@code
+ *   b.add(ClientSessionModule.class, config -> {
+ *     config.setSecretKey("aaaaaaaaaaaaaaaa");
+ *     config.setEncryptionKey("cccccccccccccccc");
+ *     // cookies sealed with the previous keys are still accepted and sealed again with the current ones
+ *     config.setPreviousSecretKey("bbbbbbbbbbbbbbbb");
+ *   });
+ *
+ *   ClientSession session = ctx.getRequest().get(ClientSession.class);
+ * }</pre>
+ */
+public class ClientSessionModule extends ConfigurableModule<ClientSessionModule.Config> {
+
+  @Override
+  protected void configure() {
+  }
+
+  @Provides
+  @Singleton
+  SessionCrypto provideSessionCrypto(Config config) {
+    SessionKey current = SessionKey.of(config.getSecretKey(), config.getEncryptionKey(), config.getMacAlgorithm());
+    SessionKey previous = config.getPreviousSecretKey() == null ? null
+      : SessionKey.of(config.getPreviousSecretKey(), config.getPreviousEncryptionKey(), config.getMacAlgorithm());
+    return new SessionCrypto(config.getMacAlgorithm(), current, previous);
+  }
+
+  @Provides
+  @Singleton
+  HandlerDecorator provideClientSessionDecorator(Config config, SessionCrypto crypto) {
+    return HandlerDecorator.prepend(new ClientSessionHandler(new SessionCodec(config, crypto)));
+  }
+
+  public static class Config {
+    private String sessionName = "ratpack_session";
+    private String secretKey;
+    private String encryptionKey;
+    private String previousSecretKey;
+    private String previousEncryptionKey;
+    private String macAlgorithm = "HmacSHA256";
+    private String path = "/";
+    private int maxCookieSize = 4096;
+
+    public String getSessionName() {
+      return sessionName;
+    }
+
+    public void setSessionName(String sessionName) {
+      this.sessionName = sessionName;
+    }
+
+    /**
+     * @return key of the cookie signature
+     */
+    public String getSecretKey() {
+      return secretKey;
+    }
+
+    public void setSecretKey(String secretKey) {
+      this.secretKey = secretKey;
+    }
+
+    /**
+     * @return AES key of the cookie encryption, {@code null} if cookie is only signed
+     */
+    public String getEncryptionKey() {
+      return encryptionKey;
+    }
+
+    public void setEncryptionKey(String encryptionKey) {
+      this.encryptionKey = encryptionKey;
+    }
+
+    /**
+     * @return signature key before the last rotation, {@code null} if there is none
+     */
+    public String getPreviousSecretKey() {
+      return previousSecretKey;
+    }
+
+    public void setPreviousSecretKey(String previousSecretKey) {
+      this.previousSecretKey = previousSecretKey;
+    }
+
+    /**
+     * @return encryption key before the last rotation, {@code null} if previous cookies were not encrypted
+     */
+    public String getPreviousEncryptionKey() {
+      return previousEncryptionKey;
+    }
+
+    public void setPreviousEncryptionKey(String previousEncryptionKey) {
+      this.previousEncryptionKey = previousEncryptionKey;
+    }
+
+    public String getMacAlgorithm() {
+      return macAlgorithm;
+    }
+
+    public void setMacAlgorithm(String macAlgorithm) {
+      this.macAlgorithm = macAlgorithm;
+    }
+
+    /**
+     * @return path of the session cookie, default {@code /}
+     */
+    public String getPath() {
+      return path;
+    }
+
+    public void setPath(String path) {
+      this.path = path;
+    }
+
+    /**
+     * @return max size of the session cookie, name and value, default {@code 4096} that browsers accept
+     */
+    public int getMaxCookieSize() {
+      return maxCookieSize;
+    }
+
+    public void setMaxCookieSize(int maxCookieSize) {
+      this.maxCookieSize = maxCookieSize;
+    }
+  }
+}
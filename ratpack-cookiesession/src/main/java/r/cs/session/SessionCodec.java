@@ -0,0 +1,206 @@
+package r.cs.session;
+
+import io.netty.handler.codec.http.Cookie;
+import r.metrics.Counter;
+import r.metrics.Histogram;
+import r.metrics.MetricRegistry;
+import ratpack.http.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes session attributes into the cookie value.
+ * <p>
+ * Payload is {@code name=value&name=value}. Names and Java serialized values are URL safe Base64 encoded,
+ * so attributes are split without decoding values. Payload is signed, and optionally encrypted, by {@link SessionCrypto}.
+ * <p>
+ * Times of the cookie and of attribute values are recorded as {@code session_decode_seconds} and
+ * {@code session_encode_seconds}, labelled with {@code step}.
+ * <p>
+ * Browsers silently drop cookies above {@link ClientSessionModule.Config#getMaxCookieSize() max cookie size}, so the session
+ * update would be lost. Such cookie is not sent, {@link SessionTooLargeException} fails the request and it is counted
+ * as {@code session_oversize_total}.
+ */
+class SessionCodec {
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+  private static final char ENTRY_SEPARATOR = '&';
+  private static final char VALUE_SEPARATOR = '=';
+  private static final Histogram DECODE_COOKIE = decodeTime("cookie");
+  private static final Histogram DECODE_VALUE = decodeTime("value");
+  private static final Histogram ENCODE_COOKIE = encodeTime("cookie");
+  private static final Histogram ENCODE_VALUE = encodeTime("value");
+  private static final Counter OVERSIZE = MetricRegistry.global().counter("session_oversize_total",
+    "Session updates rejected because the cookie would be above max cookie size");
+
+  private final ClientSessionModule.Config config;
+  private final SessionCrypto crypto;
+
+  SessionCodec(ClientSessionModule.Config config, SessionCrypto crypto) {
+    this.config = config;
+    this.crypto = crypto;
+  }
+
+  String getSessionName() {
+    return config.getSessionName();
+  }
+
+  /**
+   * Verifies and decrypts the cookie.
+   *
+   * @param cookie cookie value
+   * @return opened payload, {@code null} if cookie is not valid
+   */
+  SessionCrypto.Opened open(String cookie) {
+    long start = System.nanoTime();
+    try {
+      return crypto.open(cookie);
+    } finally {
+      DECODE_COOKIE.recordSince(start);
+    }
+  }
+
+  /**
+   * Splits payload into encoded attributes. Values are not deserialized.
+   *
+   * @param payload verified payload
+   * @return encoded attributes, empty if payload is corrupted
+   */
+  Map<String, ClientSession.Entry> decode(String payload) {
+    Map<String, ClientSession.Entry> entries = new LinkedHashMap<>();
+    try {
+      int start = 0;
+      while (start < payload.length()) {
+        int end = payload.indexOf(ENTRY_SEPARATOR, start);
+        end = end < 0 ? payload.length() : end;
+        int valueAt = payload.indexOf(VALUE_SEPARATOR, start);
+        if (valueAt > start && valueAt < end) {
+          String attr = new String(DECODER.decode(payload.substring(start, valueAt)), StandardCharsets.UTF_8);
+          entries.put(attr, ClientSession.Entry.encoded(payload.substring(valueAt + 1, end)));
+        }
+        start = end + 1;
+      }
+      return entries;
+    } catch (Exception ex) {
+      // corrupted cookie is the same as no session
+      return new LinkedHashMap<>();
+    }
+  }
+
+  String serialize(Object value) throws Exception {
+    long start = System.nanoTime();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(value);
+    }
+    String encoded = ENCODER.encodeToString(bytes.toByteArray());
+    ENCODE_VALUE.recordSince(start);
+    return encoded;
+  }
+
+  Object deserialize(String encoded) throws Exception {
+    long start = System.nanoTime();
+    try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(DECODER.decode(encoded)))) {
+      return input.readObject();
+    } finally {
+      DECODE_VALUE.recordSince(start);
+    }
+  }
+
+  /**
+   * Seals encoded attributes and sets the session cookie.
+   *
+   * @param response response
+   * @param entries attributes, all of them encoded
+   * @throws SessionTooLargeException if cookie is above max cookie size
+   * @throws Exception if cookie could not be sealed
+   */
+  void writeCookie(Response response, Map<String, ClientSession.Entry> entries) throws Exception {
+    String sealed = seal(entries);
+    checkSize(sealed.length());
+    Cookie cookie = response.cookie(config.getSessionName(), sealed);
+    cookie.setPath(config.getPath());
+    cookie.setHttpOnly(true);
+  }
+
+  /**
+   * Verifies size of the cookie of encoded attributes without sealing it. Attributes that are not encoded, i.e. touched
+   * ones, are not counted, they are verified when the cookie is written.
+   *
+   * @param entries attributes
+   * @throws SessionTooLargeException if cookie is above max cookie size
+   */
+  void checkSize(Map<String, ClientSession.Entry> entries) {
+    int payload = 0;
+    for (Map.Entry<String, ClientSession.Entry> entry : entries.entrySet()) {
+      String encoded = entry.getValue().getEncoded();
+      if (encoded != null) {
+        payload += (payload > 0 ? 1 : 0) + base64Length(entry.getKey().getBytes(StandardCharsets.UTF_8).length) + 1
+          + encoded.length();
+      }
+    }
+    try {
+      checkSize(crypto.sealedLength(payload));
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException("Session cookie could not be sealed", ex);
+    }
+  }
+
+  private void checkSize(int sealedLength) {
+    int size = config.getSessionName().length() + 1 + sealedLength;
+    if (size > config.getMaxCookieSize()) {
+      OVERSIZE.inc();
+      throw new SessionTooLargeException(size, config.getMaxCookieSize());
+    }
+  }
+
+  private static int base64Length(int bytes) {
+    // without padding
+    return (bytes * 4 + 2) / 3;
+  }
+
+  /**
+   * Joins encoded attributes into the payload and seals it.
+   *
+   * @param entries attributes, all of them encoded
+   * @return cookie value
+   * @throws Exception if cookie could not be sealed
+   */
+  String seal(Map<String, ClientSession.Entry> entries) throws Exception {
+    long start = System.nanoTime();
+    StringBuilder payload = new StringBuilder();
+    for (Map.Entry<String, ClientSession.Entry> entry : entries.entrySet()) {
+      if (payload.length() > 0) {
+        payload.append(ENTRY_SEPARATOR);
+      }
+      payload.append(ENCODER.encodeToString(entry.getKey().getBytes(StandardCharsets.UTF_8)))
+        .append(VALUE_SEPARATOR)
+        .append(entry.getValue().getEncoded());
+    }
+    String sealed = crypto.seal(payload.toString());
+    ENCODE_COOKIE.recordSince(start);
+    return sealed;
+  }
+
+  void expireCookie(Response response) {
+    response.expireCookie(config.getSessionName()).setPath(config.getPath());
+  }
+
+  private static Histogram decodeTime(String step) {
+    return MetricRegistry.global().histogram("session_decode_seconds", "Session cookie verification and value deserialization",
+      "step", step);
+  }
+
+  private static Histogram encodeTime(String step) {
+    return MetricRegistry.global().histogram("session_encode_seconds", "Session value serialization and cookie sealing",
+      "step", step);
+  }
+}
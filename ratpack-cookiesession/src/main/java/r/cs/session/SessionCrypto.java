@@ -0,0 +1,226 @@
+package r.cs.session;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Signs and encrypts session cookies.
+ * <p>
+ * {@link Mac#getInstance(String)} and {@link Cipher#getInstance(String)} look up JCA providers under a lock, so
+ * instances are created once per thread, in practice per event loop thread, and kept in {@link FastThreadLocal}.
+ * Macs are initialized with their keys once and reused, {@link Mac#doFinal(byte[])} resets them.
+ * Cipher is initialized with a random IV for every encryption.
+ * <p>
+ * Cookie is {@code body.signature} where body is plain payload, or Base64 of {@code iv + AES/CBC(payload)}
+ * if encryption key is set (encrypt-then-MAC). Signature is HMAC of the body.
+ * <p>
+ * Keys are rotated with {@link #rotate(SessionKey)}. Cookies are sealed with the current key and opened with
+ * the current or the previous key, so sessions survive one rotation.
+ */
+public class SessionCrypto {
+  public static final String CIPHER_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+  private static final char SIGNATURE_SEPARATOR = '.';
+  private static final int IV_SIZE = 16;
+  private static final int AES_BLOCK_SIZE = 16;
+
+  private final String macAlgorithm;
+  private volatile Keys keys;
+
+  private final FastThreadLocal<Engines> engines = new FastThreadLocal<Engines>() {
+    @Override
+    protected Engines initialValue() throws Exception {
+      return new Engines(keys);
+    }
+  };
+
+  /**
+   * Creates crypto with the current and the previous key.
+   *
+   * @param macAlgorithm signature algorithm, the same for all keys
+   * @param current key used to seal and open cookies
+   * @param previous key used to open cookies during rotation, {@code null} if there is none
+   */
+  public SessionCrypto(String macAlgorithm, SessionKey current, SessionKey previous) {
+    this.macAlgorithm = macAlgorithm;
+    this.keys = new Keys(current, previous);
+  }
+
+  /**
+   * Makes the given key current, the current key becomes the previous one.
+   *
+   * @param key new session key
+   */
+  public synchronized void rotate(SessionKey key) {
+    keys = new Keys(key, keys.current);
+  }
+
+  /**
+   * Encrypts, if encryption key is set, and signs the payload.
+   *
+   * @param payload ASCII payload
+   * @return cookie value
+   * @throws GeneralSecurityException if payload could not be encrypted or signed
+   */
+  public String seal(String payload) throws GeneralSecurityException {
+    Engines engines = engines();
+    byte[] plain = payload.getBytes(StandardCharsets.US_ASCII);
+    String body = payload;
+    if (engines.keys.current.isEncrypted()) {
+      byte[] iv = new byte[IV_SIZE];
+      engines.random.nextBytes(iv);
+      engines.cipher.init(Cipher.ENCRYPT_MODE, engines.keys.current.getEncryptionKey(), new IvParameterSpec(iv));
+      byte[] sealed = new byte[IV_SIZE + engines.cipher.getOutputSize(plain.length)];
+      System.arraycopy(iv, 0, sealed, 0, IV_SIZE);
+      int length = engines.cipher.doFinal(plain, 0, plain.length, sealed, IV_SIZE);
+      body = ENCODER.encodeToString(IV_SIZE + length == sealed.length ? sealed : Arrays.copyOf(sealed, IV_SIZE + length));
+    }
+    byte[] signature = engines.currentMac.doFinal(body.getBytes(StandardCharsets.US_ASCII));
+    return body + SIGNATURE_SEPARATOR + ENCODER.encodeToString(signature);
+  }
+
+  /**
+   * Computes length of the cookie without sealing it.
+   *
+   * @param payloadLength length of ASCII payload
+   * @return length of the cookie value returned by {@link #seal(String)}
+   * @throws GeneralSecurityException if signature could not be initialized
+   */
+  public int sealedLength(int payloadLength) throws GeneralSecurityException {
+    Engines engines = engines();
+    int body = payloadLength;
+    if (engines.keys.current.isEncrypted()) {
+      // PKCS5 padding adds 1 to 16 bytes
+      body = base64Length(IV_SIZE + (payloadLength / AES_BLOCK_SIZE + 1) * AES_BLOCK_SIZE);
+    }
+    return body + 1 + base64Length(engines.currentMac.getMacLength());
+  }
+
+  private static int base64Length(int bytes) {
+    // without padding
+    return (bytes * 4 + 2) / 3;
+  }
+
+  /**
+   * Verifies and decrypts the cookie.
+   *
+   * @param cookie cookie value
+   * @return opened payload or {@code null} if cookie is not valid for any key
+   */
+  public Opened open(String cookie) {
+    int signatureAt = cookie.lastIndexOf(SIGNATURE_SEPARATOR);
+    if (signatureAt < 0) {
+      return null;
+    }
+    try {
+      Engines engines = engines();
+      byte[] body = cookie.substring(0, signatureAt).getBytes(StandardCharsets.US_ASCII);
+      byte[] signature = DECODER.decode(cookie.substring(signatureAt + 1));
+      if (MessageDigest.isEqual(signature, engines.currentMac.doFinal(body))) {
+        return new Opened(decrypt(engines, engines.keys.current, body), false);
+      }
+      if (engines.previousMac != null && MessageDigest.isEqual(signature, engines.previousMac.doFinal(body))) {
+        return new Opened(decrypt(engines, engines.keys.previous, body), true);
+      }
+      return null;
+    } catch (IllegalArgumentException | GeneralSecurityException ex) {
+      // not Base64 or not decryptable, the same as not signed
+      return null;
+    }
+  }
+
+  private static String decrypt(Engines engines, SessionKey key, byte[] body) throws GeneralSecurityException {
+    if (!key.isEncrypted()) {
+      return new String(body, StandardCharsets.US_ASCII);
+    }
+    byte[] sealed = DECODER.decode(body);
+    if (sealed.length <= IV_SIZE) {
+      throw new GeneralSecurityException("Session cookie is too short");
+    }
+    engines.cipher.init(Cipher.DECRYPT_MODE, key.getEncryptionKey(), new IvParameterSpec(sealed, 0, IV_SIZE));
+    return new String(engines.cipher.doFinal(sealed, IV_SIZE, sealed.length - IV_SIZE), StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * @return engines of the current thread, initialized with the current keys
+   */
+  private Engines engines() throws GeneralSecurityException {
+    Engines current = engines.get();
+    Keys keys = this.keys;
+    if (current.keys != keys) {
+      // keys were rotated
+      current = new Engines(keys);
+      engines.set(current);
+    }
+    return current;
+  }
+
+  /**
+   * Result of opening the cookie.
+   */
+  public static class Opened {
+    private final String payload;
+    private final boolean previousKey;
+
+    private Opened(String payload, boolean previousKey) {
+      this.payload = payload;
+      this.previousKey = previousKey;
+    }
+
+    public String getPayload() {
+      return payload;
+    }
+
+    /**
+     * @return {@code true} if cookie was sealed with the previous key and should be sealed again with the current one
+     */
+    public boolean isPreviousKey() {
+      return previousKey;
+    }
+  }
+
+  private static class Keys {
+    private final SessionKey current;
+    private final SessionKey previous;
+
+    private Keys(SessionKey current, SessionKey previous) {
+      this.current = current;
+      this.previous = previous;
+    }
+  }
+
+  /**
+   * JCA instances of a single thread.
+   */
+  private class Engines {
+    private final Keys keys;
+    private final Mac currentMac;
+    private final Mac previousMac;
+    private final Cipher cipher;
+    private final SecureRandom random = new SecureRandom();
+
+    private Engines(Keys keys) throws GeneralSecurityException {
+      this.keys = keys;
+      this.currentMac = mac(keys.current);
+      this.previousMac = keys.previous == null ? null : mac(keys.previous);
+      this.cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+    }
+
+    private Mac mac(SessionKey key) throws GeneralSecurityException {
+      Mac mac = Mac.getInstance(macAlgorithm);
+      mac.init(key.getMacKey());
+      return mac;
+    }
+  }
+}
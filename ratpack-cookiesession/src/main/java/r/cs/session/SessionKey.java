@@ -0,0 +1,50 @@
+package r.cs.session;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Generation of session keys: signing key and optional encryption key.
+ * <p>
+ * Keys are rotated together, cookie signed with the key of the given generation is decrypted with its encryption key.
+ */
+public class SessionKey {
+  public static final String ENCRYPTION_ALGORITHM = "AES";
+
+  private final SecretKeySpec macKey;
+  private final SecretKeySpec encryptionKey;
+
+  private SessionKey(SecretKeySpec macKey, SecretKeySpec encryptionKey) {
+    this.macKey = macKey;
+    this.encryptionKey = encryptionKey;
+  }
+
+  /**
+   * Creates session key.
+   *
+   * @param secretKey key of the cookie signature
+   * @param encryptionKey AES key of 16, 24 or 32 bytes, {@code null} if cookie is not encrypted
+   * @param macAlgorithm signature algorithm, i.e. {@code HmacSHA256}
+   * @return session key
+   */
+  public static SessionKey of(String secretKey, String encryptionKey, String macAlgorithm) {
+    Objects.requireNonNull(secretKey, "Session secret key is required");
+    return new SessionKey(
+      new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), macAlgorithm),
+      encryptionKey == null ? null : new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), ENCRYPTION_ALGORITHM)
+    );
+  }
+
+  SecretKeySpec getMacKey() {
+    return macKey;
+  }
+
+  SecretKeySpec getEncryptionKey() {
+    return encryptionKey;
+  }
+
+  boolean isEncrypted() {
+    return encryptionKey != null;
+  }
+}
@@ -0,0 +1,28 @@
+package r.cs.session;
+
+/**
+ * Thrown when the session cookie would be above {@link ClientSessionModule.Config#getMaxCookieSize() max cookie size}.
+ * <p>
+ * Browsers silently drop such cookies, so the update would be lost. The request fails instead.
+ */
+public class SessionTooLargeException extends IllegalStateException {
+  private final int size;
+  private final int maxSize;
+
+  SessionTooLargeException(int size, int maxSize) {
+    super("Session cookie of " + size + " bytes is above max size " + maxSize);
+    this.size = size;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return size of the cookie, name and value
+   */
+  public int getSize() {
+    return size;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+}
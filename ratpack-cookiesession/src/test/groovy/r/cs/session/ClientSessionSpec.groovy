@@ -0,0 +1,116 @@
+package r.cs.session
+
+import io.netty.handler.codec.http.Cookie
+import io.netty.handler.codec.http.DefaultCookie
+import ratpack.http.Response
+import spock.lang.Specification
+
+import java.util.function.Supplier
+
+class ClientSessionSpec extends Specification {
+  static final String MAC = "HmacSHA256"
+  static final SessionKey OLD_KEY = SessionKey.of("aaaaaaaaaaaaaaaa", "cccccccccccccccc", MAC)
+  static final SessionKey NEW_KEY = SessionKey.of("bbbbbbbbbbbbbbbb", "dddddddddddddddd", MAC)
+
+  SessionCodec codec = codec(new SessionCrypto(MAC, NEW_KEY, null))
+  List<String> cookies = []
+  Response response = Stub(Response) {
+    cookie(_ as String, _ as String) >> { String name, String value ->
+      cookies << value
+      new DefaultCookie(name, value) as Cookie
+    }
+  }
+
+  def "session is written to the cookie and read back"() {
+    given:
+    ClientSession written = session(codec, null)
+    written.put("foo", "bar")
+    written.put("count", 42)
+
+    when:
+    written.writeTo(response)
+    ClientSession read = session(codec, cookies[0])
+
+    then:
+    cookies.size() == 1
+    read.keySet() == ["foo", "count"] as Set
+    read.get("foo") == "bar"
+    read.get("count") == 42
+    !read.modified
+  }
+
+  def "session of tampered cookie is empty"() {
+    given:
+    ClientSession written = session(codec, null)
+    written.put("foo", "bar")
+    written.writeTo(response)
+    String cookie = cookies[0]
+    int index = cookie.length().intdiv(3)
+    String tampered = cookie.substring(0, index) + (cookie.charAt(index) == ('A' as char) ? 'B' : 'A') + cookie.substring(index + 1)
+
+    expect:
+    session(codec, tampered).empty
+    session(codec, "not a cookie").empty
+  }
+
+  def "session of cookie sealed with the previous key is sealed again with the current key"() {
+    given:
+    ClientSession old = session(codec(new SessionCrypto(MAC, OLD_KEY, null)), null)
+    old.put("foo", "bar")
+    old.writeTo(response)
+
+    when: "request only reads the session"
+    ClientSession read = session(codec(new SessionCrypto(MAC, NEW_KEY, OLD_KEY)), cookies[0])
+    String value = read.get("foo")
+    read.writeTo(response)
+
+    then:
+    value == "bar"
+    cookies.size() == 2
+    new SessionCrypto(MAC, NEW_KEY, null).open(cookies[1]) != null
+  }
+
+  def "put that would make the cookie above max size fails and leaves the session unchanged"() {
+    given:
+    ClientSession session = session(codec, null)
+    session.put("foo", "bar")
+
+    when:
+    session.put("big", "x" * 4096)
+
+    then:
+    thrown(SessionTooLargeException)
+    session.keySet() == ["foo"] as Set
+
+    when:
+    session.writeTo(response)
+
+    then:
+    cookies.size() == 1
+    session(codec, cookies[0]).get("foo") == "bar"
+  }
+
+  def "cookie made above max size by touched value is not sent"() {
+    given:
+    ClientSession session = session(codec, null)
+    List<String> value = ["x"]
+    session.put("list", value)
+    value << "x" * 4096
+    session.touch("list")
+
+    when:
+    session.writeTo(response)
+
+    then:
+    thrown(SessionTooLargeException)
+    cookies.empty
+  }
+
+  private static SessionCodec codec(SessionCrypto crypto) {
+    new SessionCodec(new ClientSessionModule.Config(secretKey: "unused"), crypto)
+  }
+
+  private static ClientSession session(SessionCodec codec, String cookie) {
+    new ClientSession(codec, { cookie } as Supplier<String>)
+  }
+}
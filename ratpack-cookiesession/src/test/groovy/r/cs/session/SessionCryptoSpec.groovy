@@ -0,0 +1,103 @@
+package r.cs.session
+
+import spock.lang.Specification
+
+class SessionCryptoSpec extends Specification {
+  static final String MAC = "HmacSHA256"
+  static final SessionKey OLD_KEY = SessionKey.of("aaaaaaaaaaaaaaaa", "cccccccccccccccc", MAC)
+  static final SessionKey NEW_KEY = SessionKey.of("bbbbbbbbbbbbbbbb", "dddddddddddddddd", MAC)
+
+  def "sealed payload is opened with the same key"() {
+    given:
+    SessionCrypto crypto = new SessionCrypto(MAC, key, null)
+
+    when:
+    String cookie = crypto.seal("foo=bar&buzz=quzz")
+    SessionCrypto.Opened opened = crypto.open(cookie)
+
+    then:
+    opened.payload == "foo=bar&buzz=quzz"
+    !opened.previousKey
+    encrypted == !cookie.startsWith("foo=bar")
+
+    where:
+    key                                          | encrypted
+    SessionKey.of("aaaaaaaaaaaaaaaa", null, MAC) | false
+    OLD_KEY                                      | true
+  }
+
+  def "cookie with changed body or signature is not opened"() {
+    given:
+    SessionCrypto crypto = new SessionCrypto(MAC, key, null)
+    String cookie = crypto.seal("foo=bar")
+
+    expect:
+    crypto.open(tamper(cookie)) == null
+
+    where:
+    [key, tamper] << [
+      [SessionKey.of("aaaaaaaaaaaaaaaa", null, MAC), OLD_KEY],
+      [
+        { String cookie -> flip(cookie, 2) },
+        { String cookie -> flip(cookie, cookie.length() - 2) },
+        { String cookie -> cookie.substring(0, cookie.lastIndexOf(".")) },
+        { String cookie -> cookie + "!" },
+      ]
+    ].combinations()
+  }
+
+  def "cookie sealed with another key is not opened"() {
+    given:
+    String cookie = new SessionCrypto(MAC, OLD_KEY, null).seal("foo=bar")
+
+    expect:
+    new SessionCrypto(MAC, NEW_KEY, null).open(cookie) == null
+  }
+
+  def "cookie sealed with the previous key is opened and marked to be sealed again"() {
+    given:
+    SessionCrypto crypto = new SessionCrypto(MAC, OLD_KEY, null)
+    String oldCookie = crypto.seal("foo=bar")
+
+    when:
+    crypto.rotate(NEW_KEY)
+    SessionCrypto.Opened opened = crypto.open(oldCookie)
+
+    then:
+    opened.payload == "foo=bar"
+    opened.previousKey
+
+    when:
+    String newCookie = crypto.seal(opened.payload)
+
+    then:
+    !crypto.open(newCookie).previousKey
+    new SessionCrypto(MAC, NEW_KEY, null).open(newCookie).payload == "foo=bar"
+
+    when: "the next rotation drops the oldest key"
+    crypto.rotate(SessionKey.of("eeeeeeeeeeeeeeee", "ffffffffffffffff", MAC))
+
+    then:
+    crypto.open(oldCookie) == null
+    crypto.open(newCookie).previousKey
+  }
+
+  def "sealed length is computed without sealing"() {
+    given:
+    SessionCrypto crypto = new SessionCrypto(MAC, key, null)
+
+    expect:
+    crypto.sealedLength(length) == crypto.seal("a" * length).length()
+
+    where:
+    [key, length] << [
+      [SessionKey.of("aaaaaaaaaaaaaaaa", null, MAC), OLD_KEY],
+      [0, 1, 15, 16, 17, 100, 3000]
+    ].combinations()
+  }
+
+  static String flip(String cookie, int index) {
+    char c = cookie.charAt(index)
+    cookie.substring(0, index) + (c == ('A' as char) ? 'B' : 'A') + cookie.substring(index + 1)
+  }
+}
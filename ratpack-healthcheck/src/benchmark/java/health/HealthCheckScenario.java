@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package health;
+
+import r.bench.Scenario;
+import r.bench.Workload;
+import ratpack.groovy.test.LocalScriptApplicationUnderTest;
+
+import java.net.URI;
+
+/**
+ * Health check example started from {@code Ratpack.groovy}, found with {@code ratpack.properties} on the classpath.
+ * <p>
+ * Every iteration calls all health checks, single health check, health checks with limited concurrency, and the API.
+ */
+public class HealthCheckScenario implements Scenario {
+  private LocalScriptApplicationUnderTest app;
+
+  @Override
+  public String getName() {
+    return "healthChecks";
+  }
+
+  @Override
+  public URI start() {
+    app = new LocalScriptApplicationUnderTest();
+    return app.getAddress();
+  }
+
+  @Override
+  public Workload getWorkload() {
+    return Workload.of()
+      .get("all", "health-checks")
+      .get("single", "health-checks/foo")
+      .get("concurrency", "health-checks-c/2")
+      .get("api", "api");
+  }
+
+  @Override
+  public void close() {
+    if (app != null) {
+      app.stop();
+    }
+  }
+}
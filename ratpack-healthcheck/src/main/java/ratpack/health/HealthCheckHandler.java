@@ -19,8 +19,11 @@ package ratpack.health;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.reflect.TypeToken;
+import ratpack.exec.ExecInterceptor;
+import ratpack.exec.Execution;
 import ratpack.exec.Fulfiller;
 import ratpack.exec.Promise;
+import ratpack.func.NoArgAction;
 import ratpack.handling.Context;
 import ratpack.handling.Handler;
 
@@ -351,8 +354,10 @@ public class HealthCheckHandler implements Handler {
         fulfiller.success(hcheckResults);
       }
     }).start(execution -> {
-      promise.then(r -> {
-        hcheckResults.put(name, r);
+      intercepted(context, execution, () -> {
+        promise.then(r -> {
+          hcheckResults.put(name, r);
+        });
       });
     });
   }
@@ -400,9 +405,28 @@ public class HealthCheckHandler implements Handler {
         fulfiller.success(i == 0 ? Boolean.TRUE : Boolean.FALSE);
       }
     }).start(execution -> {
-      promise.then(r -> {
-        hcheckResults.put(name, r);
+      intercepted(context, execution, () -> {
+        promise.then(r -> {
+          hcheckResults.put(name, r);
+        });
       });
     });
   }
+
+  /**
+   * Run action in the forked execution with interceptors bound in the registry, i.e. {@link ratpack.stall.StallWatchdog},
+   * so health checks run in parallel are intercepted like the request execution.
+   * @param context request context
+   * @param execution forked execution
+   * @param action action to run
+   * @throws Exception
+   */
+  private static void intercepted(Context context, Execution execution, NoArgAction action) throws Exception {
+    NoArgAction continuation = action;
+    for (ExecInterceptor interceptor : context.getAll(ExecInterceptor.class)) {
+      NoArgAction next = continuation;
+      continuation = () -> execution.getControl().addInterceptor(interceptor, next);
+    }
+    continuation.execute();
+  }
 }
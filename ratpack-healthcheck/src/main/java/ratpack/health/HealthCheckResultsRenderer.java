@@ -53,10 +53,13 @@ public class HealthCheckResultsRenderer extends RendererSupport<HealthCheckResul
       }
       builder.append("\n");
     });
-    context.getResponse().getHeaders()
-            .add("Cache-Control", "no-cache, no-store, must-revalidate")
-            .add("Pragma", "no-cache")
-            .add("Expires", 0);
+    // handler may let shared caches keep the results for a while, otherwise they are never cached
+    if (!context.getResponse().getHeaders().contains("Cache-Control")) {
+      context.getResponse().getHeaders()
+              .add("Cache-Control", "no-cache, no-store, must-revalidate")
+              .add("Pragma", "no-cache")
+              .add("Expires", 0);
+    }
     context.getResponse().send(builder.toString());
   }
 }
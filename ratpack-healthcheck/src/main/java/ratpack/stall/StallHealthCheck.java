@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ratpack.stall;
+
+import com.google.inject.Inject;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.health.HealthCheck;
+
+/**
+ * Health check reporting compute thread blocked longer than the {@link StallWatchdog} threshold at the moment.
+ * <p>
+ * Healthy result carries the number of stalls and the longest stall so far.
+ */
+public class StallHealthCheck implements HealthCheck {
+  public static final String NAME = "stalls";
+
+  private final StallWatchdog watchdog;
+
+  @Inject
+  public StallHealthCheck(StallWatchdog watchdog) {
+    this.watchdog = watchdog;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public Promise<Result> check(ExecControl execControl) throws Exception {
+    return execControl.promiseOf(watchdog.getBlocked()
+      .map(blocked -> Result.unhealthy("%s blocked for %d ms by %s", blocked.getThreadName(), blocked.getMillis(),
+        blocked.getOffender().orElse("not sampled yet")))
+      .orElseGet(() -> Result.healthy("%d stalls, max %d ms", watchdog.getStalls(), watchdog.getMaxStallMillis())));
+  }
+}
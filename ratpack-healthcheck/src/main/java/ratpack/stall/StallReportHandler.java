@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ratpack.stall;
+
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+
+/**
+ * Handler rendering {@link StallWatchdog} metrics and the worst offenders in plain text.
+ * <pre>{@code
+ *  segments : 1520
+ *  stalls : 3
+ *  stallTimeMs : 9004
+ *  maxStallMs : 3002
+ *  thresholdMs : 50
+ *
+ *  java.lang.Thread.sleep <- health.FooHealthCheck.lambda$check$0:31 : count=3 timeMs=9004 maxMs=3002
+ *    at java.lang.Thread.sleep(Native Method)
+ *    at health.FooHealthCheck.lambda$check$0(FooHealthCheck.java:31)
+ *    ...
+ * }</pre>
+ * <p>
+ * Handler sets no caching HTTP pragmas, the same as {@link ratpack.health.HealthCheckResultsRenderer}.
+ */
+public class StallReportHandler implements Handler {
+  public static final int DEFAULT_OFFENDERS = 10;
+
+  private final int offenders;
+
+  public StallReportHandler() {
+    this(DEFAULT_OFFENDERS);
+  }
+
+  /**
+   * @param offenders number of the worst offenders to render
+   */
+  public StallReportHandler(int offenders) {
+    this.offenders = offenders;
+  }
+
+  @Override
+  public void handle(Context context) throws Exception {
+    StallWatchdog watchdog = context.get(StallWatchdog.class);
+    StringBuilder builder = new StringBuilder()
+      .append("segments : ").append(watchdog.getSegments()).append("\n")
+      .append("stalls : ").append(watchdog.getStalls()).append("\n")
+      .append("stallTimeMs : ").append(watchdog.getStallTimeMillis()).append("\n")
+      .append("maxStallMs : ").append(watchdog.getMaxStallMillis()).append("\n")
+      .append("thresholdMs : ").append(watchdog.getThresholdMillis()).append("\n");
+    for (StallWatchdog.Offender offender : watchdog.getOffenders(offenders)) {
+      builder.append("\n").append(offender.getName())
+        .append(" : count=").append(offender.getCount())
+        .append(" timeMs=").append(offender.getStallTimeMillis())
+        .append(" maxMs=").append(offender.getMaxStallMillis()).append("\n");
+      offender.getStack().forEach(frame -> builder.append("  at ").append(frame).append("\n"));
+    }
+    context.getResponse().getHeaders()
+            .add("Cache-Control", "no-cache, no-store, must-revalidate")
+            .add("Pragma", "no-cache")
+            .add("Expires", 0);
+    context.getResponse().send(builder.toString());
+  }
+}
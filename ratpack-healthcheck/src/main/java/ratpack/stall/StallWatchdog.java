@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ratpack.stall;
+
+import com.google.common.base.Joiner;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.exec.ExecInterceptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detector of execution segments blocking compute (event loop) threads.
+ * <p>
+ * As {@link ExecInterceptor} the watchdog timestamps every compute segment of the intercepted execution. Segment
+ * running longer than the threshold is a stall. Sampling thread checks running segments every sample interval and
+ * captures stack trace of the stalled thread while it is still blocked, so the stack shows the blocking call, i.e.
+ * {@code Thread.sleep()} or JDBC call, instead of the place where the segment has finished.
+ * <p>
+ * Stalls are grouped by the blocking call and the first application frame into offenders. Counts, stall time and
+ * the worst offenders are exposed as metrics, see {@link StallReportHandler} and {@link StallHealthCheck}.
+ * The first stall of every offender is logged with its stack trace.
+ * <p>
+ * Overhead of the segment is two {@code System.nanoTime()} calls and a few writes to the thread's own slot.
+ * Blocking segments are not intercepted, blocking threads are expected to block.
+ * <pre>{@code
+ *   handler {
+ *     addInterceptor(get(StallWatchdog)) {
+ *       next()
+ *     }
+ *   }
+ * }</pre>
+ *
+ * @see StallWatchdogModule
+ */
+public class StallWatchdog implements ExecInterceptor, AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StallWatchdog.class);
+  private static final String OTHER = "(other)";
+  private static final String NOT_SAMPLED = "(finished before sampled)";
+  private static final String[] FRAMEWORK_PACKAGES = {
+    "java.", "javax.", "sun.", "jdk.", "io.netty.", "ratpack.exec.", "ratpack.func.", "ratpack.stall.",
+    "com.google.", "groovy.", "org.codehaus.groovy."
+  };
+
+  private final long thresholdNanos;
+  private final int maxOffenders;
+  private final int stackDepth;
+  private final ConcurrentMap<Thread, Segment> segments = new ConcurrentHashMap<>();
+  private final FastThreadLocal<Segment> current = new FastThreadLocal<Segment>() {
+    @Override
+    protected Segment initialValue() {
+      Segment segment = new Segment(Thread.currentThread());
+      segments.put(segment.thread, segment);
+      return segment;
+    }
+
+    @Override
+    protected void onRemoval(Segment segment) {
+      segments.remove(segment.thread);
+    }
+  };
+  private final LongAdder segmentCount = new LongAdder();
+  private final LongAdder stallCount = new LongAdder();
+  private final LongAdder stallNanos = new LongAdder();
+  private final AtomicLong maxStallNanos = new AtomicLong();
+  private final ConcurrentMap<String, Offender> offenders = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService sampler;
+
+  /**
+   * Creates watchdog and starts its sampling thread.
+   *
+   * @param thresholdMillis segment running longer is a stall
+   * @param sampleIntervalMillis how often running segments are checked
+   * @param maxOffenders max number of distinct offenders, further ones are counted together
+   * @param stackDepth max number of frames kept for the offender
+   */
+  public StallWatchdog(long thresholdMillis, long sampleIntervalMillis, int maxOffenders, int stackDepth) {
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this.maxOffenders = maxOffenders;
+    this.stackDepth = stackDepth;
+    this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "stall-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sampler.scheduleAtFixedRate(this::sample, sampleIntervalMillis, sampleIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void intercept(ExecType execType, Runnable continuation) {
+    if (execType != ExecType.COMPUTE) {
+      continuation.run();
+      return;
+    }
+    Segment segment = current.get();
+    if (segment.depth++ > 0) {
+      // the same execution intercepted twice, the outer segment is timed
+      try {
+        continuation.run();
+      } finally {
+        segment.depth--;
+      }
+      return;
+    }
+    long id = segment.id + 1;
+    long start = System.nanoTime();
+    segment.id = id;
+    segment.startedAt = start;
+    try {
+      continuation.run();
+    } finally {
+      long duration = System.nanoTime() - start;
+      segment.startedAt = 0;
+      segment.depth--;
+      segmentCount.increment();
+      if (duration > thresholdNanos) {
+        stalled(segment, id, duration);
+      }
+    }
+  }
+
+  /**
+   * @return number of timed compute segments
+   */
+  public long getSegments() {
+    return segmentCount.sum();
+  }
+
+  /**
+   * @return number of segments longer than the threshold
+   */
+  public long getStalls() {
+    return stallCount.sum();
+  }
+
+  public long getStallTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(stallNanos.sum());
+  }
+
+  public long getMaxStallMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxStallNanos.get());
+  }
+
+  public long getThresholdMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+  }
+
+  /**
+   * @param limit max number of returned offenders
+   * @return offenders with the highest stall time first
+   */
+  public List<Offender> getOffenders(int limit) {
+    List<Offender> sorted = new ArrayList<>(offenders.values());
+    sorted.sort(Comparator.comparingLong(Offender::getStallTimeMillis).reversed());
+    return sorted.subList(0, Math.min(limit, sorted.size()));
+  }
+
+  /**
+   * @return the longest running segment, if it is longer than the threshold now
+   */
+  public Optional<Blocked> getBlocked() {
+    long now = System.nanoTime();
+    Blocked longest = null;
+    for (Segment segment : segments.values()) {
+      long startedAt = segment.startedAt;
+      long running = startedAt == 0 ? 0 : now - startedAt;
+      if (running > thresholdNanos && (longest == null || running > longest.nanos)) {
+        longest = new Blocked(segment.thread.getName(), running, segment.stackOf == segment.id ? segment.stack : null);
+      }
+    }
+    return Optional.ofNullable(longest);
+  }
+
+  @Override
+  public void close() {
+    sampler.shutdownNow();
+  }
+
+  private void sample() {
+    long now = System.nanoTime();
+    for (Segment segment : segments.values()) {
+      long id = segment.id;
+      long startedAt = segment.startedAt;
+      if (startedAt != 0 && now - startedAt > thresholdNanos && segment.stackOf != id) {
+        StackTraceElement[] stack = segment.thread.getStackTrace();
+        // segment could finish while stack was captured, then the stack is not the blocking one
+        if (segment.startedAt == startedAt && segment.id == id) {
+          segment.stack = Arrays.copyOf(stack, Math.min(stack.length, stackDepth));
+          segment.stackOf = id;
+        }
+      }
+    }
+  }
+
+  private void stalled(Segment segment, long id, long duration) {
+    stallCount.increment();
+    stallNanos.add(duration);
+    maxStallNanos.accumulateAndGet(duration, Math::max);
+    StackTraceElement[] stack = segment.stackOf == id ? segment.stack : null;
+    String key = stack == null ? NOT_SAMPLED : key(stack);
+    Offender offender = offenders.get(key);
+    if (offender == null) {
+      if (offenders.size() >= maxOffenders) {
+        key = OTHER;
+        stack = null;
+      }
+      Offender created = new Offender(key, stack);
+      offender = offenders.putIfAbsent(key, created);
+      if (offender == null) {
+        offender = created;
+        if (stack != null) {
+          LOGGER.warn("Compute thread {} blocked for {} ms by {}\n\tat {}", segment.thread.getName(),
+            TimeUnit.NANOSECONDS.toMillis(duration), key, Joiner.on("\n\tat ").join(stack));
+        }
+      }
+    }
+    offender.record(duration);
+  }
+
+  /**
+   * @return blocking call and the first application frame, i.e. {@code java.lang.Thread.sleep <- health.FooHealthCheck.lambda$check$0:31}
+   */
+  private static String key(StackTraceElement[] stack) {
+    if (stack.length == 0) {
+      return NOT_SAMPLED;
+    }
+    String blocking = stack[0].getClassName() + "." + stack[0].getMethodName();
+    for (StackTraceElement frame : stack) {
+      if (!isFramework(frame.getClassName())) {
+        return blocking + " <- " + frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+      }
+    }
+    return blocking;
+  }
+
+  private static boolean isFramework(String className) {
+    for (String framework : FRAMEWORK_PACKAGES) {
+      if (className.startsWith(framework)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Segment slot of the compute thread. Written by its thread, read by the sampling thread.
+   */
+  private static final class Segment {
+    private final Thread thread;
+    private int depth;
+    private volatile long id;
+    private volatile long startedAt;
+    private volatile StackTraceElement[] stack;
+    private volatile long stackOf;
+
+    private Segment(Thread thread) {
+      this.thread = thread;
+    }
+  }
+
+  /**
+   * Stalls of the same blocking call.
+   */
+  public static final class Offender {
+    private final String name;
+    private final StackTraceElement[] stack;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private Offender(String name, StackTraceElement[] stack) {
+      this.name = name;
+      this.stack = stack;
+    }
+
+    private void record(long duration) {
+      count.increment();
+      nanos.add(duration);
+      maxNanos.accumulateAndGet(duration, Math::max);
+    }
+
+    /**
+     * @return blocking call and the first application frame
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return stack of the first stall, empty if not sampled
+     */
+    public List<StackTraceElement> getStack() {
+      return stack == null ? new ArrayList<>() : Arrays.asList(stack);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getStallTimeMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+
+    public long getMaxStallMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+  }
+
+  /**
+   * Compute thread blocked at the moment.
+   */
+  public static final class Blocked {
+    private final String threadName;
+    private final long nanos;
+    private final StackTraceElement[] stack;
+
+    private Blocked(String threadName, long nanos, StackTraceElement[] stack) {
+      this.threadName = threadName;
+      this.nanos = nanos;
+      this.stack = stack;
+    }
+
+    public String getThreadName() {
+      return threadName;
+    }
+
+    public long getMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return blocking call and the first application frame, if already sampled
+     */
+    public Optional<String> getOffender() {
+      return stack == null ? Optional.empty() : Optional.of(key(stack));
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ratpack.stall;
+
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import r.metrics.MetricRegistry;
+import ratpack.guice.ConfigurableModule;
+
+/**
+ * Binds {@link StallWatchdog} and {@link StallHealthCheck}.
+ * <p>
+ * Watchdog times segments of executions it intercepts, so it has to be added to request executions by a handler.
+ * {@link StallReportHandler} renders its metrics, they are also exported as {@code stall_*} gauges of
+ * {@link MetricRegistry#global()}.
+ * <pre>{@code
+ *   bindings {
+ *     add(StallWatchdogModule) { it.thresholdMillis = 20 }
+ *   }
+ *   handlers {
+ *     handler {
+ *       addInterceptor(get(StallWatchdog)) {
+ *         next()
+ *       }
+ *     }
+ *     get("stalls", new StallReportHandler())
+ *   }
+ * }</pre>
+ */
+public class StallWatchdogModule extends ConfigurableModule<StallWatchdogModule.Config> {
+  @Override
+  protected void configure() {
+    bind(StallHealthCheck.class);
+  }
+
+  @Provides
+  @Singleton
+  StallWatchdog provideStallWatchdog(Config config) {
+    StallWatchdog watchdog = new StallWatchdog(config.getThresholdMillis(), config.getSampleIntervalMillis(),
+      config.getMaxOffenders(), config.getStackDepth());
+    MetricRegistry metrics = MetricRegistry.global();
+    metrics.gauge("stall_segments", "Timed compute segments, since start", watchdog::getSegments);
+    metrics.gauge("stall_stalls", "Compute segments longer than threshold, since start", watchdog::getStalls);
+    metrics.gauge("stall_time_seconds", "Time of stalled segments, since start", () -> watchdog.getStallTimeMillis() / 1000.0);
+    metrics.gauge("stall_max_seconds", "The longest stalled segment", () -> watchdog.getMaxStallMillis() / 1000.0);
+    return watchdog;
+  }
+
+  public static class Config {
+    private long thresholdMillis = 50;
+    private long sampleIntervalMillis = 10;
+    private int maxOffenders = 20;
+    private int stackDepth = 16;
+
+    /**
+     * @return compute segment running longer is a stall, default 50 ms
+     */
+    public long getThresholdMillis() {
+      return thresholdMillis;
+    }
+
+    public void setThresholdMillis(long thresholdMillis) {
+      this.thresholdMillis = thresholdMillis;
+    }
+
+    /**
+     * @return how often running segments are checked for stalls, default 10 ms
+     */
+    public long getSampleIntervalMillis() {
+      return sampleIntervalMillis;
+    }
+
+    public void setSampleIntervalMillis(long sampleIntervalMillis) {
+      this.sampleIntervalMillis = sampleIntervalMillis;
+    }
+
+    /**
+     * @return max number of distinct offenders, further ones are counted together, default 20
+     */
+    public int getMaxOffenders() {
+      return maxOffenders;
+    }
+
+    public void setMaxOffenders(int maxOffenders) {
+      this.maxOffenders = maxOffenders;
+    }
+
+    /**
+     * @return max number of stack frames kept for the offender, default 16
+     */
+    public int getStackDepth() {
+      return stackDepth;
+    }
+
+    public void setStackDepth(int stackDepth) {
+      this.stackDepth = stackDepth;
+    }
+  }
+}
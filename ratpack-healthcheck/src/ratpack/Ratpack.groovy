@@ -2,11 +2,19 @@ import groovy.json.JsonOutput
 import health.BarHealthCheck
 import health.FooHealthCheck
 import health.WithExceptionHealthCheck
+import r.cache.CachingHandler
+import r.cache.ResponseCache
+import r.metrics.MetricsHandler
+import ratpack.handling.Context
+import ratpack.handling.Handler
 import ratpack.health.HealthCheck
 import ratpack.health.HealthCheckHandler
 import ratpack.health.HealthCheckResults
 import ratpack.health.HealthCheckResultsRenderer
 import ratpack.render.Renderer
+import ratpack.stall.StallReportHandler
+import ratpack.stall.StallWatchdog
+import ratpack.stall.StallWatchdogModule
 
 import static ratpack.groovy.Groovy.context
 import static ratpack.groovy.Groovy.ratpack
@@ -23,6 +31,8 @@ ratpack {
       }
     })
     bind WithExceptionHealthCheck
+    // compute segments longer than 50 ms are reported with stack traces of blocking calls
+    add StallWatchdogModule
   }
 
   handlers {
@@ -44,12 +54,20 @@ ratpack {
 //      })
       add new HealthCheckResultsRenderer()
     }
+    // latency by route, event loop queues and stalls, scraped at /metrics
+    handler(new MetricsHandler())
     handler {
       // register interceptor for SLF4J MDC support
       addInterceptor(new MDCInterceptor()) {
         next()
       }
     }
+    handler {
+      // time compute segments of the request, health checks run in parallel are intercepted by HealthCheckHandler
+      addInterceptor(get(StallWatchdog)) {
+        next()
+      }
+    }
 
     get("api") {
       render "API"
@@ -57,14 +75,21 @@ ratpack {
 
     get("health-checks", new HealthCheckHandler())
 
-    get("health-checks/:name") { ctx ->
-      new HealthCheckHandler(pathTokens["name"]).handle(ctx)
-    }
+    // identical requests in flight run health checks once, their result is served from the cache for a second
+    get("health-checks/:name", MetricsHandler.route("health-checks/:name",
+      new CachingHandler(ResponseCache.builder("health-checks").build(), { Context ctx ->
+        // results may be kept by the server side cache, see HealthCheckResultsRenderer
+        ctx.response.headers.set("Cache-Control", "public, s-maxage=1")
+        new HealthCheckHandler(ctx.pathTokens["name"]).handle(ctx)
+      } as Handler)))
+
+    // stall counts and the worst offenders
+    get("stalls", new StallReportHandler())
 
-    get("health-checks-c/:concurrencyLevel") {ctx ->
-      def cl = pathTokens["concurrencyLevel"]
+    get("health-checks-c/:concurrencyLevel", MetricsHandler.route("health-checks-c/:concurrencyLevel", { Context ctx ->
+      def cl = ctx.pathTokens["concurrencyLevel"]
       cl = cl ? cl.toInteger() : 0
       new HealthCheckHandler(cl).handle(ctx)
-    }
+    } as Handler))
   }
 }
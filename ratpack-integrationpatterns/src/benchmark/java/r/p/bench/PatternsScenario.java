@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.bench;
+
+import r.bench.Scenario;
+import r.bench.Workload;
+import r.p.Main;
+import r.p.exec.Backend;
+import ratpack.guice.Guice;
+import ratpack.test.embed.EmbeddedApp;
+
+import java.net.URI;
+
+/**
+ * Integration patterns started with {@link Main} bindings and handlers and with {@link StubBackend} instead of
+ * simulated blocking backend. Every iteration calls each pattern once.
+ * <p>
+ * Requests are sent with {@code Cache-Control: no-store}, so they bypass the response cache of {@code api/:name} and
+ * measure the patterns, not cache hits.
+ * <p>
+ * Configuration is given as system properties:
+ * <ul>
+ *   <li>{@code bench.endpoints} - comma separated list of patterns to call, default: {@value #DEFAULT_ENDPOINTS}</li>
+ *   <li>{@code bench.backendLatency} - stub backend latency in milliseconds, default: {@value #DEFAULT_BACKEND_LATENCY}</li>
+ * </ul>
+ */
+public class PatternsScenario implements Scenario {
+  public static final String DEFAULT_ENDPOINTS = "parallel,fanoutfanin,invokewithretry";
+  public static final int DEFAULT_BACKEND_LATENCY = 50;
+
+  private StubBackend backend;
+  private EmbeddedApp app;
+
+  @Override
+  public String getName() {
+    return "patterns";
+  }
+
+  @Override
+  public URI start() {
+    backend = StubBackend.start(Integer.getInteger("bench.backendLatency", DEFAULT_BACKEND_LATENCY));
+    app = EmbeddedApp.of(server -> server
+      .registry(Guice.registry(b -> {
+        Main.bindings(b);
+        b.bindInstance(Backend.class, backend);
+      }))
+      .handlers(Main::handlers)
+    );
+    return app.getAddress();
+  }
+
+  @Override
+  public Workload getWorkload() {
+    Workload workload = Workload.of().header("Cache-Control", "no-store");
+    for (String endpoint : System.getProperty("bench.endpoints", DEFAULT_ENDPOINTS).split(",")) {
+      workload.get(endpoint.trim(), "api/" + endpoint.trim());
+    }
+    return workload;
+  }
+
+  @Override
+  public void close() {
+    if (app != null) {
+      app.close();
+    }
+    if (backend != null) {
+      backend.close();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.bench;
+
+import r.bench.Http;
+import r.p.exec.Backend;
+import ratpack.test.embed.EmbeddedApp;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local HTTP backend with fixed latency.
+ * <p>
+ * The stub server does not block its threads, responses are scheduled on the event loop after the latency passed.
+ * Actions call the stub with a real blocking HTTP request, so scenarios measure the application with real I/O
+ * instead of {@code Thread.sleep()}.
+ */
+public class StubBackend implements Backend, AutoCloseable {
+  private final EmbeddedApp app;
+
+  private StubBackend(long latencyMillis) {
+    this.app = EmbeddedApp.fromHandler(ctx -> {
+      String data = ctx.getRequest().getQueryParams().get("data");
+      ctx.promise(f -> ctx.getExecution().getController().getExecutor()
+        .schedule(() -> f.success(data), latencyMillis, TimeUnit.MILLISECONDS)
+      ).then(ctx::render);
+    });
+  }
+
+  /**
+   * Starts stub backend server.
+   *
+   * @param latencyMillis latency of every response in milliseconds
+   * @return started backend
+   */
+  public static StubBackend start(long latencyMillis) {
+    StubBackend backend = new StubBackend(latencyMillis);
+    // start server eagerly, so startup is not measured
+    backend.app.getAddress();
+    return backend;
+  }
+
+  @Override
+  public String call(String name, String data) throws Exception {
+    URI uri = app.getAddress().resolve(name + "?data=" + URLEncoder.encode(data, "UTF-8"));
+    Http.Response response = Http.get(uri);
+    if (response.status != 200) {
+      throw new IOException("Backend responded with status " + response.status);
+    }
+    return response.body;
+  }
+
+  @Override
+  public void close() {
+    app.close();
+  }
+}
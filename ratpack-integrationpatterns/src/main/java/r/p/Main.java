@@ -16,35 +16,104 @@
 
 package r.p;
 
+import com.google.common.collect.ImmutableMap;
+import r.p.exec.Backend;
+import r.p.exec.BlockingExecutorModule;
+import r.p.exec.Pipeline;
+import r.p.handling.ConcurrencyLimitHandler;
 import r.p.handling.ExecHandler;
-import ratpack.sep.internal.ActionResultsRenderer;
+import r.p.limit.AimdLimit;
+import r.p.limit.ConcurrencyLimiter;
+import r.p.limit.VegasLimit;
+import r.cache.CachingHandler;
+import r.cache.ResponseCache;
+import r.metrics.MetricsHandler;
+import r.p.render.ActionResultsJsonRenderer;
 import ratpack.sep.PatternsModule;
+import ratpack.sep.exec.FanOutFanIn;
+import ratpack.sep.exec.InvokeWithRetry;
+import ratpack.sep.exec.Parallel;
+import ratpack.guice.BindingsSpec;
 import ratpack.guice.Guice;
+import ratpack.handling.Chain;
 import ratpack.handling.ResponseTimer;
 import ratpack.health.HealthCheck;
 import ratpack.health.HealthCheckHandler;
 import ratpack.jackson.JacksonModule;
 import ratpack.server.RatpackServer;
 
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Integration patterns example application.
+ * <p>
+ * Bindings and handlers are exposed, so the same application could be started by load tests with a stub {@link Backend}.
+ */
 public class Main {
   public static void main(String... args) throws Exception {
     RatpackServer.start(server -> server
-      .registry(Guice.registry(b -> b
-            .add(JacksonModule.class, c -> c.prettyPrint(true))
-            .add(PatternsModule.class, config -> {
-              config.setDefaultRetryCount(3);
-            })
-            .bindInstance(HealthCheck.of("eventLoopSize", (execControl, registry) -> execControl
-              .promiseOf(HealthCheck.Result.healthy())))
-            .bindInstance(ActionResultsRenderer.class, new ActionResultsRenderer())
-            .bindInstance(ResponseTimer.decorator())
-        )
-      )
-      .handlers(chain -> chain
-          .get("health-checks", new HealthCheckHandler())
-          .get(ctx -> ctx.render("Hi!"))
-          .get("api/:name", new ExecHandler())
-      )
+      .registry(Guice.registry(b -> {
+        bindings(b);
+        b.bindInstance(Backend.class, Backend.sleeping(3000));
+      }))
+      .handlers(Main::handlers)
     );
   }
+
+  /**
+   * Binds application components. {@link Backend} called by actions is not bound and has to be bound by the caller.
+   *
+   * @param b bindings spec
+   */
+  public static void bindings(BindingsSpec b) {
+    b
+      .add(JacksonModule.class, c -> c.prettyPrint(true))
+      .add(PatternsModule.class, config -> {
+        config.setDefaultRetryCount(3);
+      })
+      // blocking backend calls run on virtual threads on JDK 21, at most 1000 at once
+      .add(BlockingExecutorModule.class, config -> config
+        .setVirtualThreads(true)
+        .setResourceLimit("backend", 1000))
+      .bindInstance(HealthCheck.of("eventLoopSize", (execControl, registry) -> execControl
+        .promiseOf(HealthCheck.Result.healthy())))
+      // streams action results as JSON into pooled buffer, pretty printing is opt-in with ?pretty
+      .bindInstance(ActionResultsJsonRenderer.class, new ActionResultsJsonRenderer())
+      .bindInstance(ResponseTimer.decorator());
+  }
+
+  /**
+   * Defines application handlers.
+   *
+   * @param chain handler chain
+   */
+  public static void handlers(Chain chain) {
+    chain
+      // latency by route, event loop queues and blocking calls, scraped at /metrics
+      .handler(new MetricsHandler())
+      .get("health-checks", new HealthCheckHandler())
+      .get(ctx -> ctx.render("Hi!"))
+      // identical idempotent requests in flight run once and their response is served from the cache for a second,
+      // requests above the adaptive concurrency limit of their pattern are rejected with 503
+      .get("api/:name", MetricsHandler.route("api/:name",
+        new CachingHandler(ResponseCache.builder("api").ttl(Duration.ofSeconds(1)).build(),
+          ExecHandler::isIdempotent,
+          new ConcurrencyLimitHandler(ExecHandler.DEFAULT_NAME_TOKEN, patternLimiters(), new ConcurrencyLimiter(new AimdLimit()),
+            new ExecHandler(Duration.ofSeconds(1))))));
+  }
+
+  /**
+   * Patterns waiting for the backend are limited by its latency. Latency of invoke with retry includes backoff delays
+   * and in async mode it does not wait for the backend at all, so it is limited by failures and timeouts.
+   *
+   * @return concurrency limiters by pattern name
+   */
+  static Map<String, ConcurrencyLimiter> patternLimiters() {
+    return ImmutableMap.of(
+      FanOutFanIn.PATTERN_NAME, new ConcurrencyLimiter(new VegasLimit()),
+      Parallel.PATTERN_NAME, new ConcurrencyLimiter(new VegasLimit()),
+      Pipeline.PATTERN_NAME, new ConcurrencyLimiter(new VegasLimit()),
+      InvokeWithRetry.PATTERN_NAME, new ConcurrencyLimiter(new AimdLimit()));
+  }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.exec;
+
+/**
+ * Blocking backend called by example actions.
+ * <p>
+ * Backend is taken from the registry, so examples could run against simulated backend as well as against a real
+ * service, i.e. a stub server started by load tests.
+ *
+ * @see r.p.exec.internal.LongBlockingIOAction
+ */
+public interface Backend {
+  /**
+   * Calls backend. Method is blocking and should be called with {@code execControl.blocking()}.
+   *
+   * @param name name of the calling action
+   * @param data data sent to the backend
+   * @return backend's response
+   * @throws Exception any
+   */
+  String call(String name, String data) throws Exception;
+
+  /**
+   * Simulated backend that responds with the {@code data} after the given time.
+   *
+   * @param millis backend latency in milliseconds
+   * @return simulated backend
+   */
+  static Backend sleeping(long millis) {
+    return (name, data) -> {
+      Thread.sleep(millis);
+      return data;
+    };
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.exec;
+
+import r.metrics.Counter;
+import r.metrics.Histogram;
+import r.metrics.MetricRegistry;
+import r.p.exec.internal.PinningMonitor;
+import r.p.exec.internal.VirtualThreads;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs blocking calls of actions, with concurrency limit of every called resource.
+ * <p>
+ * Calls run either on Ratpack's blocking thread pool, as {@code execControl.blocking()} does, or on virtual threads
+ * of JDK 21. Every virtual thread is created for a single call and costs a few hundred bytes while it is blocked,
+ * so fan-out of thousands of blocking actions does not create thousands of platform threads. If JVM does not support
+ * virtual threads, the blocking thread pool is used.
+ * <p>
+ * Concurrency limit protects the called resource instead of the thread pool: calls above the limit wait for a permit
+ * on their thread (cheap for the virtual one). Resources without configured limit are not limited.
+ * <p>
+ * Carrier pinning of virtual threads is counted from JFR events, see {@link #getPinned()}.
+ * <p>
+ * Usage of resources and pinning are recorded in {@link MetricRegistry#global()} as {@code blocking_*} metrics.
+ * Gauges sum usage of all executors that are not {@link #close() closed}, so executors created by tests or restarted
+ * applications do not hide each other.
+ * <pre>{@code
+ *   BlockingExecutor blocking = ctx.get(BlockingExecutor.class);
+ *   blocking.blocking(execControl, "backend", () -> backend.call(name, data))
+ * }</pre>
+ *
+ * @see BlockingExecutorModule
+ */
+public class BlockingExecutor implements AutoCloseable {
+  // executors not closed yet, summed by gauges
+  private static final Set<BlockingExecutor> LIVE = ConcurrentHashMap.newKeySet();
+  private static final BlockingExecutor PLATFORM = new BlockingExecutor(null, Collections.emptyMap(), 0, null);
+
+  private final ThreadFactory virtualThreads;
+  private final Map<String, Integer> limits;
+  private final int defaultLimit;
+  private final ConcurrentMap<String, Resource> resources = new ConcurrentHashMap<>();
+  private final PinningMonitor pinning;
+
+  private BlockingExecutor(ThreadFactory virtualThreads, Map<String, Integer> limits, int defaultLimit, Duration pinningThreshold) {
+    this.virtualThreads = virtualThreads;
+    this.limits = Collections.unmodifiableMap(new HashMap<>(limits));
+    this.defaultLimit = defaultLimit;
+    this.pinning = virtualThreads != null ? new PinningMonitor(pinningThreshold) : null;
+    LIVE.add(this);
+    // registered once, the first registration wins
+    MetricRegistry.global().gauge("blocking_pinned", "Virtual threads pinned to carrier longer than threshold, since start",
+      () -> LIVE.stream().mapToLong(executor -> executor.getPinned().orElse(0L)).sum());
+  }
+
+  /**
+   * @return shared executor running calls on Ratpack's blocking thread pool, without limits
+   */
+  public static BlockingExecutor platform() {
+    return PLATFORM;
+  }
+
+  /**
+   * Creates executor.
+   *
+   * @param virtual {@code true} if calls should run on virtual threads, if supported by JVM
+   * @param limits concurrency limits by resource name
+   * @param defaultLimit limit of resources not given in {@code limits}, {@code 0} is unlimited
+   * @param pinningThreshold pinning of virtual threads shorter than threshold is not counted
+   * @return executor
+   */
+  public static BlockingExecutor of(boolean virtual, Map<String, Integer> limits, int defaultLimit, Duration pinningThreshold) {
+    ThreadFactory factory = virtual ? VirtualThreads.factory("blocking-virtual-").orElse(null) : null;
+    return new BlockingExecutor(factory, limits, defaultLimit, pinningThreshold);
+  }
+
+  /**
+   * Runs blocking call and returns its result as promise of the current execution.
+   *
+   * @param execControl execution control
+   * @param resource name of the called resource, calls of the same resource share its concurrency limit
+   * @param callable blocking call
+   * @param <T> type of the result
+   * @return promise of the result
+   */
+  public <T> Promise<T> blocking(ExecControl execControl, String resource, Callable<T> callable) {
+    Resource limited = resource(resource);
+    return blocking(execControl, () -> limited.call(callable));
+  }
+
+  /**
+   * Runs blocking call without concurrency limit, i.e. call that applies the limit of the resource with
+   * {@link Resource#call(Callable)} itself, after it registered its thread for cancellation.
+   *
+   * @param execControl execution control
+   * @param callable blocking call
+   * @param <T> type of the result
+   * @return promise of the result
+   */
+  public <T> Promise<T> blocking(ExecControl execControl, Callable<T> callable) {
+    if (virtualThreads == null) {
+      return execControl.blocking(callable);
+    }
+    // fulfiller resumes the execution on its event loop, the virtual thread ends with the call
+    return execControl.promise(fulfiller -> virtualThreads.newThread(() -> {
+      T result;
+      try {
+        result = callable.call();
+      } catch (Throwable ex) {
+        fulfiller.error(ex);
+        return;
+      }
+      fulfiller.success(result);
+    }).start());
+  }
+
+  /**
+   * @param name name of the called resource
+   * @return concurrency limit and usage of the resource
+   */
+  public Resource resource(String name) {
+    return resources.computeIfAbsent(name, key -> new Resource(key, limits.getOrDefault(key, defaultLimit)));
+  }
+
+  /**
+   * @return {@code true} if calls run on virtual threads
+   */
+  public boolean isVirtual() {
+    return virtualThreads != null;
+  }
+
+  /**
+   * @return usage of every called resource
+   */
+  public Map<String, Resource> getResources() {
+    return Collections.unmodifiableMap(resources);
+  }
+
+  /**
+   * @return number of virtual threads pinned to carrier longer than the threshold, empty if pinning is not monitored
+   */
+  public Optional<Long> getPinned() {
+    return pinning != null && pinning.isActive() ? Optional.of(pinning.getPinned()) : Optional.empty();
+  }
+
+  /**
+   * @return total time of pinning longer than the threshold, empty if pinning is not monitored
+   */
+  public Optional<Long> getPinnedMillis() {
+    return pinning != null && pinning.isActive() ? Optional.of(pinning.getPinnedMillis()) : Optional.empty();
+  }
+
+  @Override
+  public void close() throws Exception {
+    LIVE.remove(this);
+    if (pinning != null) {
+      pinning.close();
+    }
+  }
+
+  /**
+   * Concurrency limit and usage of the called resource.
+   */
+  public static final class Resource {
+    private final int limit;
+    private final Semaphore permits;
+    private final LongAdder active = new LongAdder();
+    private final LongAdder waiting = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final Counter completedTotal;
+    private final Histogram waitTime;
+    private final Histogram callTime;
+
+    private Resource(String name, int limit) {
+      this.limit = limit;
+      this.permits = limit > 0 ? new Semaphore(limit, true) : null;
+      MetricRegistry metrics = MetricRegistry.global();
+      metrics.gauge("blocking_active", "Blocking calls in progress", () -> sum(name, Resource::getActive), "resource", name);
+      metrics.gauge("blocking_waiting", "Blocking calls waiting for the concurrency limit",
+        () -> sum(name, Resource::getWaiting), "resource", name);
+      completedTotal = metrics.counter("blocking_calls_total", "Completed blocking calls", "resource", name);
+      waitTime = metrics.histogram("blocking_wait_seconds", "Time waiting for the concurrency limit", "resource", name);
+      callTime = metrics.histogram("blocking_call_seconds", "Time of blocking calls", "resource", name);
+    }
+
+    /**
+     * @return usage of the resource of the given name summed over live executors
+     */
+    private static long sum(String name, ToLongFunction<Resource> usage) {
+      return LIVE.stream().map(executor -> executor.resources.get(name)).filter(Objects::nonNull).mapToLong(usage).sum();
+    }
+
+    /**
+     * Makes blocking call on the current thread when a permit of the concurrency limit is available.
+     * Waiting for the permit is interrupted by {@link Thread#interrupt()}.
+     *
+     * @param callable blocking call
+     * @param <T> type of the result
+     * @return result of the call
+     * @throws InterruptedException if thread was interrupted while it waited for the permit
+     * @throws Exception any exception of the call
+     */
+    public <T> T call(Callable<T> callable) throws Exception {
+      if (permits != null) {
+        long waitStart = System.nanoTime();
+        waiting.increment();
+        try {
+          permits.acquire();
+        } finally {
+          waiting.decrement();
+          waitTime.recordSince(waitStart);
+        }
+      }
+      long start = System.nanoTime();
+      active.increment();
+      try {
+        return callable.call();
+      } finally {
+        active.decrement();
+        completed.increment();
+        completedTotal.inc();
+        callTime.recordSince(start);
+        if (permits != null) {
+          permits.release();
+        }
+      }
+    }
+
+    /**
+     * @return concurrency limit, {@code 0} if not limited
+     */
+    public int getLimit() {
+      return limit;
+    }
+
+    public long getActive() {
+      return active.sum();
+    }
+
+    public long getWaiting() {
+      return waiting.sum();
+    }
+
+    public long getCompleted() {
+      return completed.sum();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.exec;
+
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import ratpack.guice.ConfigurableModule;
+import ratpack.health.HealthCheck;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Binds {@link BlockingExecutor} used by actions for their blocking calls, and {@code blocking} health check
+ * reporting usage of resources and pinning of virtual threads.
+ * <pre>{@code
+ *   b.add(BlockingExecutorModule.class, config -> config
+ *     .setVirtualThreads(true)
+ *     .setResourceLimit("backend", 1000)
+ *   )
+ * }</pre>
+ */
+public class BlockingExecutorModule extends ConfigurableModule<BlockingExecutorModule.Config> {
+  @Override
+  protected void configure() {
+  }
+
+  @Provides
+  @Singleton
+  BlockingExecutor provideBlockingExecutor(Config config) {
+    return BlockingExecutor.of(config.isVirtualThreads(), config.getResourceLimits(), config.getDefaultResourceLimit(),
+      Duration.ofMillis(config.getPinningThresholdMillis()));
+  }
+
+  @Provides
+  @Singleton
+  HealthCheck provideBlockingHealthCheck(BlockingExecutor blocking) {
+    return HealthCheck.of("blocking", (execControl, registry) -> {
+      StringBuilder message = new StringBuilder(blocking.isVirtual() ? "virtual" : "platform");
+      blocking.getResources().forEach((name, resource) -> message
+        .append(", ").append(name)
+        .append(": active=").append(resource.getActive())
+        .append(" waiting=").append(resource.getWaiting())
+        .append(" limit=").append(resource.getLimit()));
+      blocking.getPinned().ifPresent(pinned -> message
+        .append(", pinned=").append(pinned)
+        .append(" pinnedMs=").append(blocking.getPinnedMillis().orElse(0L)));
+      return execControl.promiseOf(HealthCheck.Result.healthy(message.toString()));
+    });
+  }
+
+  public static class Config {
+    private boolean virtualThreads;
+    private final Map<String, Integer> resourceLimits = new LinkedHashMap<>();
+    private int defaultResourceLimit;
+    private long pinningThresholdMillis = 20;
+
+    /**
+     * @return {@code true} if blocking calls run on virtual threads, if supported by JVM, default {@code false}
+     */
+    public boolean isVirtualThreads() {
+      return virtualThreads;
+    }
+
+    public Config setVirtualThreads(boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
+    /**
+     * @return concurrency limits by resource name
+     */
+    public Map<String, Integer> getResourceLimits() {
+      return resourceLimits;
+    }
+
+    /**
+     * Limits number of concurrent blocking calls of the resource.
+     *
+     * @param resource resource name
+     * @param limit max number of concurrent calls
+     * @return this config
+     */
+    public Config setResourceLimit(String resource, int limit) {
+      resourceLimits.put(resource, limit);
+      return this;
+    }
+
+    /**
+     * @return limit of resources without configured limit, {@code 0} is unlimited, default {@code 0}
+     */
+    public int getDefaultResourceLimit() {
+      return defaultResourceLimit;
+    }
+
+    public Config setDefaultResourceLimit(int defaultResourceLimit) {
+      this.defaultResourceLimit = defaultResourceLimit;
+      return this;
+    }
+
+    /**
+     * @return pinning of virtual threads shorter than threshold is not counted, default 20 ms
+     */
+    public long getPinningThresholdMillis() {
+      return pinningThresholdMillis;
+    }
+
+    public Config setPinningThresholdMillis(long pinningThresholdMillis) {
+      this.pinningThresholdMillis = pinningThresholdMillis;
+      return this;
+    }
+  }
+}
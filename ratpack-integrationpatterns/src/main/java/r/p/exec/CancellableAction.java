@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.exec;
+
+import ratpack.sep.Action;
+
+/**
+ * An {@link Action} that can be aborted while it is executing.
+ * <p>
+ * Implementations that perform long running I/O should release the resources they hold and finish
+ * as soon as possible when {@link #cancel()} is called, i.e. interrupt the blocking thread or close the connection.
+ *
+ * @param <T> a type of action's data
+ * @param <O> a type of action's result
+ * @see r.p.exec.Cancellation
+ */
+public interface CancellableAction<T, O> extends Action<T, O> {
+  /**
+   * Aborts the running action.
+   * <p>
+   * Called at most once, possibly from a thread different from the one executing the action.
+   * It could be called before the action started or after it finished.
+   */
+  void cancel();
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.exec;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Promise;
+import ratpack.handling.Context;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cancellation signal of the single request.
+ * <p>
+ * Created with {@link #of(Context)} the signal is fired when the client closes connection before the response is sent.
+ * Actions {@link #guard(Iterable) guarded} by the signal are not started after cancellation,
+ * instead they return {@link #CANCELLED_CODE} error result.
+ * Running {@link CancellableAction cancellable actions} are {@link CancellableAction#cancel() cancelled}, finished ones
+ * are forgotten.
+ * <pre>{@code
+ *   Cancellation cancellation = Cancellation.of(ctx);
+ *   ctx.render(pattern.apply(ctx, ctx, cancellation.guard(actions)));
+ * }</pre>
+ */
+public class Cancellation {
+  /**
+   * Code of the result returned by actions that were not started because of cancellation.
+   *
+   * Value: {@value}
+   */
+  public static final String CANCELLED_CODE = "CANCELLED";
+
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private final Set<CancellableAction<?, ?>> running = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates cancellation signal bound to the connection of the given request.
+   * <p>
+   * The signal is detached from the connection when the response is sent, so keep-alive connections do not collect
+   * listeners of already finished requests.
+   *
+   * @param ctx the request context
+   * @return cancellation signal fired when client disconnects
+   */
+  public static Cancellation of(Context ctx) {
+    Cancellation cancellation = new Cancellation();
+    Channel channel = ctx.getDirectChannelAccess().getChannel();
+    ChannelFutureListener listener = future -> cancellation.cancel();
+    channel.closeFuture().addListener(listener);
+    ctx.onClose(outcome -> channel.closeFuture().removeListener(listener));
+    return cancellation;
+  }
+
+  /**
+   * @return {@code true} if cancellation signal was fired
+   */
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  /**
+   * Fires cancellation signal and cancels all running actions. Subsequent calls do nothing.
+   */
+  public void cancel() {
+    if (!cancelled.compareAndSet(false, true)) {
+      return;
+    }
+    for (CancellableAction<?, ?> action : running) {
+      // action finishing concurrently removes itself, it is cancelled only if it is still running
+      if (running.remove(action)) {
+        action.cancel();
+      }
+    }
+  }
+
+  /**
+   * Guards every action with this cancellation signal.
+   *
+   * @param actions actions to guard
+   * @param <T> a type of action's data
+   * @param <O> a type of action's result
+   * @return actions that are not started after cancellation
+   */
+  public <T, O> Iterable<Action<T, O>> guard(Iterable<Action<T, O>> actions) {
+    List<Action<T, O>> guarded = new LinkedList<>();
+    actions.forEach(action -> guarded.add(guard(action)));
+    return guarded;
+  }
+
+  /**
+   * Guards action with this cancellation signal.
+   * <p>
+   * If signal was fired before the action starts, action is not executed and {@link #CANCELLED_CODE} error is its result.
+   * If action is {@link CancellableAction} it is cancelled when signal is fired during its execution.
+   *
+   * @param action action to guard
+   * @param <T> a type of action's data
+   * @param <O> a type of action's result
+   * @return action that is not started after cancellation
+   */
+  public <T, O> Action<T, O> guard(Action<T, O> action) {
+    return new Action<T, O>() {
+      @Override
+      public String getName() {
+        return action.getName();
+      }
+
+      @Override
+      public T getData() {
+        return action.getData();
+      }
+
+      @Override
+      public Promise<ActionResult<O>> exec(ExecControl execControl) throws Exception {
+        // patterns create promises of all actions at once, so the signal is checked when the promise is subscribed
+        return execControl.promise(fulfiller -> {
+          if (isCancelled()) {
+            fulfiller.success(ActionResult.error(CANCELLED_CODE, "Client disconnected"));
+            return;
+          }
+          CancellableAction<?, ?> cancellable = action instanceof CancellableAction ? (CancellableAction<?, ?>) action : null;
+          if (cancellable != null) {
+            register(cancellable);
+          }
+          action.exec(execControl)
+            .onError(error -> {
+              deregister(cancellable);
+              fulfiller.error(error);
+            })
+            .then(result -> {
+              deregister(cancellable);
+              fulfiller.success(result);
+            });
+        });
+      }
+    };
+  }
+
+  private void register(CancellableAction<?, ?> action) {
+    running.add(action);
+    // signal could be fired between the check and registration
+    if (isCancelled() && running.remove(action)) {
+      action.cancel();
+    }
+  }
+
+  private void deregister(CancellableAction<?, ?> action) {
+    if (action != null) {
+      running.remove(action);
+    }
+  }
+}
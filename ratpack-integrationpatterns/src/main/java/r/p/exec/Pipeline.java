@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.exec;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import ratpack.exec.ExecControl;
+import ratpack.exec.Fulfiller;
+import ratpack.exec.Promise;
+import ratpack.func.Function;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pipeline pattern. Items flow through the sequence of stages, i.e. {@code enrich -> transform -> persist}.
+ * <p>
+ * Every stage executes {@link Action actions} created for items, with its own parallelism and bounded input queue.
+ * Stages work concurrently, while the first item is persisted the next ones are transformed and enriched,
+ * so the throughput is limited by the slowest stage and not by the sum of stage latencies.
+ * <p>
+ * When stage's input queue is full the upstream stage keeps finished item and does not start the next one
+ * (back pressure), so the number of items in memory is bounded by stage parallelism and queue capacity.
+ * <p>
+ * Item's action that fails, or returns error result, stops processing of this item. Its error is the item's result.
+ * Results are rendered as {@link ActionResults} with item's index as a key.
+ * <pre>{@code
+ *   Pipeline<String, String> pipeline = Pipeline.<String>builder()
+ *     .stage(Pipeline.Stage.of("enrich", 4, 8, data -> new EnrichAction(data)))
+ *     .stage(Pipeline.Stage.of("persist", 2, 8, data -> new PersistAction(data)))
+ *     .build();
+ *   ctx.render(pipeline.apply(ctx, items));
+ * }</pre>
+ *
+ * @param <T> a type of input items
+ * @param <O> a type of result of the last stage
+ */
+public class Pipeline<T, O> {
+  /**
+   * The name of the pattern that indicates pipeline execution.
+   *
+   * Value: {@value}
+   */
+  public static final String PATTERN_NAME = "pipeline";
+
+  /**
+   * Code of the result of item whose action threw an exception.
+   *
+   * Value: {@value}
+   */
+  public static final String STAGE_ERROR_CODE = "STAGE_ERROR";
+
+  // code of successful results, taken from the library instead of repeating its value
+  private static final String SUCCESS_CODE = ActionResult.success(null).getCode();
+
+  private final ImmutableList<Stage<Object, Object>> stages;
+
+  private Pipeline(ImmutableList<Stage<Object, Object>> stages) {
+    this.stages = stages;
+  }
+
+  /**
+   * @param <T> a type of input items
+   * @return builder of the pipeline with no stages
+   */
+  public static <T> Builder<T, T> builder() {
+    return new Builder<>(ImmutableList.builder());
+  }
+
+  /**
+   * Streams items through pipeline's stages.
+   *
+   * @param execControl execution control
+   * @param items items to process
+   * @return promise of results of every item
+   */
+  public Promise<ActionResults<O>> apply(ExecControl execControl, Iterable<T> items) {
+    return execControl.promise(fulfiller -> new Run(execControl, items.iterator(), fulfiller).pump());
+  }
+
+  /**
+   * Stage of the pipeline.
+   *
+   * @param <I> a type of stage input
+   * @param <R> a type of stage result
+   */
+  public static class Stage<I, R> {
+    private final String name;
+    private final int parallelism;
+    private final int queueCapacity;
+    private final Function<? super I, ? extends Action<I, R>> actionFactory;
+
+    private Stage(String name, int parallelism, int queueCapacity, Function<? super I, ? extends Action<I, R>> actionFactory) {
+      if (parallelism < 1 || queueCapacity < 1) {
+        throw new IllegalArgumentException("Stage " + name + " parallelism and queue capacity must be positive");
+      }
+      this.name = name;
+      this.parallelism = parallelism;
+      this.queueCapacity = queueCapacity;
+      this.actionFactory = actionFactory;
+    }
+
+    /**
+     * Creates pipeline stage.
+     *
+     * @param name stage name
+     * @param parallelism max number of actions executed concurrently by the stage
+     * @param queueCapacity max number of items waiting for the stage
+     * @param actionFactory creates action for the stage's input item
+     * @param <I> a type of stage input
+     * @param <R> a type of stage result
+     * @return pipeline stage
+     */
+    public static <I, R> Stage<I, R> of(String name, int parallelism, int queueCapacity, Function<? super I, ? extends Action<I, R>> actionFactory) {
+      return new Stage<>(name, parallelism, queueCapacity, actionFactory);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getParallelism() {
+      return parallelism;
+    }
+
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+  }
+
+  /**
+   * Builder of the pipeline. Every added stage consumes results of the previous one.
+   *
+   * @param <T> a type of pipeline input items
+   * @param <C> a type of result of the last added stage
+   */
+  public static class Builder<T, C> {
+    private final ImmutableList.Builder<Stage<Object, Object>> stages;
+
+    private Builder(ImmutableList.Builder<Stage<Object, Object>> stages) {
+      this.stages = stages;
+    }
+
+    /**
+     * Adds stage to the end of the pipeline.
+     *
+     * @param stage stage to add
+     * @param <N> a type of the stage result
+     * @return builder
+     */
+    @SuppressWarnings("unchecked")
+    public <N> Builder<T, N> stage(Stage<? super C, N> stage) {
+      stages.add((Stage<Object, Object>) (Stage<?, ?>) stage);
+      return new Builder<>(stages);
+    }
+
+    /**
+     * @return pipeline with added stages
+     */
+    public Pipeline<T, C> build() {
+      ImmutableList<Stage<Object, Object>> list = stages.build();
+      if (list.isEmpty()) {
+        throw new IllegalStateException("Pipeline requires at least one stage");
+      }
+      return new Pipeline<>(list);
+    }
+  }
+
+  private static boolean isSuccess(ActionResult<?> result) {
+    return result != null && SUCCESS_CODE.equals(result.getCode());
+  }
+
+  /**
+   * Item with its position in the input.
+   */
+  private static class Item {
+    private final int index;
+    private final Object value;
+
+    private Item(int index, Object value) {
+      this.index = index;
+      this.value = value;
+    }
+  }
+
+  /**
+   * State of the stage during the single run.
+   */
+  private static class StageRun {
+    private final Stage<Object, Object> stage;
+    private final Deque<Item> queue = new ArrayDeque<>();
+    // items finished by this stage, waiting for space in the next stage queue. They still occupy stage's slot.
+    private final Deque<Item> finished = new ArrayDeque<>();
+    private int active;
+
+    private StageRun(Stage<Object, Object> stage) {
+      this.stage = stage;
+    }
+  }
+
+  /**
+   * Single execution of the pipeline. All state is guarded by this.
+   */
+  private class Run {
+    private final ExecControl execControl;
+    private final Iterator<T> source;
+    private final Fulfiller<ActionResults<O>> fulfiller;
+    private final List<StageRun> stageRuns = new ArrayList<>();
+    private final SortedMap<Integer, ActionResult<O>> results = new TreeMap<>();
+    private int started;
+    private boolean fulfilled;
+
+    private Run(ExecControl execControl, Iterator<T> source, Fulfiller<ActionResults<O>> fulfiller) {
+      this.execControl = execControl;
+      this.source = source;
+      this.fulfiller = fulfiller;
+      stages.forEach(stage -> stageRuns.add(new StageRun(stage)));
+    }
+
+    /**
+     * Moves items between stages, from the last to the first one, and starts actions for free stage slots.
+     */
+    private void pump() {
+      List<Runnable> toStart = new LinkedList<>();
+      boolean done;
+      synchronized (this) {
+        for (int i = stageRuns.size() - 1; i >= 0; i--) {
+          StageRun stageRun = stageRuns.get(i);
+          if (i < stageRuns.size() - 1) {
+            StageRun next = stageRuns.get(i + 1);
+            while (!stageRun.finished.isEmpty() && next.queue.size() < next.stage.getQueueCapacity()) {
+              next.queue.add(stageRun.finished.poll());
+              stageRun.active--;
+            }
+          }
+          if (i == 0) {
+            while (stageRun.queue.size() < stageRun.stage.getQueueCapacity() && source.hasNext()) {
+              stageRun.queue.add(new Item(started++, source.next()));
+            }
+          }
+          while (stageRun.active < stageRun.stage.getParallelism() && !stageRun.queue.isEmpty()) {
+            Item item = stageRun.queue.poll();
+            stageRun.active++;
+            int stageIndex = i;
+            toStart.add(() -> start(stageIndex, item));
+          }
+        }
+        done = !fulfilled && !source.hasNext() && results.size() == started;
+        fulfilled = fulfilled || done;
+      }
+      toStart.forEach(Runnable::run);
+      if (done) {
+        fulfiller.success(new ActionResults<>(toImmutableMap()));
+      }
+    }
+
+    private void start(int stageIndex, Item item) {
+      Stage<Object, Object> stage = stageRuns.get(stageIndex).stage;
+      // error handler could be called after the result, if completion failed, but item completes only once
+      AtomicBoolean completed = new AtomicBoolean(false);
+      execControl.exec()
+        .onError(throwable -> {
+          if (completed.compareAndSet(false, true)) {
+            complete(stageIndex, item, ActionResult.error(STAGE_ERROR_CODE, stage.getName() + ": " + throwable));
+          }
+        })
+        .start(execution -> stage.actionFactory.apply(item.value).exec(execution.getControl())
+          .then(result -> {
+            if (completed.compareAndSet(false, true)) {
+              complete(stageIndex, item, result);
+            }
+          }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(int stageIndex, Item item, ActionResult<Object> result) {
+      synchronized (this) {
+        StageRun stageRun = stageRuns.get(stageIndex);
+        boolean last = stageIndex == stageRuns.size() - 1;
+        if (last || !isSuccess(result)) {
+          stageRun.active--;
+          results.put(item.index, (ActionResult<O>) (ActionResult<?>) result);
+        } else {
+          stageRun.finished.add(new Item(item.index, result.getData()));
+        }
+      }
+      pump();
+    }
+
+    private ImmutableMap<String, ActionResult<O>> toImmutableMap() {
+      ImmutableMap.Builder<String, ActionResult<O>> builder = ImmutableMap.builder();
+      synchronized (this) {
+        results.forEach((index, result) -> builder.put(String.valueOf(index), result));
+      }
+      return builder.build();
+    }
+  }
+}
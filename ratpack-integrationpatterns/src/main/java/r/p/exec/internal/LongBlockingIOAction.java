@@ -1,6 +1,8 @@
 package r.p.exec.internal;
 
-import ratpack.sep.Action;
+import r.p.exec.Backend;
+import r.p.exec.BlockingExecutor;
+import r.p.exec.CancellableAction;
 import ratpack.sep.ActionResult;
 import ratpack.exec.ExecControl;
 import ratpack.exec.Promise;
@@ -8,17 +10,40 @@ import ratpack.exec.Promise;
 /**
  * Example of long running blocking IO.
  * <p>
- * Because it is blocking so instead of {@code execControl.promise()}, {@code execControl.blocking()} method is used.
- * Blocking operation will be performed on a thread from a special thread pool and not on threads from main
- * compute event loop.
+ * Because it is blocking so instead of {@code execControl.promise()}, {@link BlockingExecutor} is used.
+ * Blocking operation will be performed on a thread from a special thread pool, or on a virtual thread, and not on
+ * threads from main compute event loop.
+ * <p>
+ * Action calls {@link Backend} given as constructor parameter.
+ * <p>
+ * Action is cancellable. Cancellation interrupts the blocking thread, so it is returned to the pool immediately.
+ * <p>
+ * Backend is called through {@link BlockingExecutor} as resource {@code backend}, so it may run on a virtual thread and
+ * its concurrency may be limited.
  */
-public class LongBlockingIOAction implements Action<String,String> {
+public class LongBlockingIOAction implements CancellableAction<String,String> {
   private final String name;
   private final String data;
+  private final Backend backend;
+  private final BlockingExecutor blocking;
+
+  // guarded by this
+  private boolean cancelled;
+  private Thread worker;
 
   public LongBlockingIOAction(String name, String data) {
+    this(name, data, Backend.sleeping(3000));
+  }
+
+  public LongBlockingIOAction(String name, String data, Backend backend) {
+    this(name, data, backend, BlockingExecutor.platform());
+  }
+
+  public LongBlockingIOAction(String name, String data, Backend backend, BlockingExecutor blocking) {
     this.name = name;
     this.data = data;
+    this.backend = backend;
+    this.blocking = blocking;
   }
 
   @Override
@@ -29,9 +54,32 @@ public class LongBlockingIOAction implements Action<String,String> {
 
   @Override
   public Promise<ActionResult<String>> exec(ExecControl execControl) throws Exception {
-    return execControl.blocking(() -> {
-      Thread.sleep(3000);
-      return ActionResult.success(data);
+    BlockingExecutor.Resource limit = blocking.resource("backend");
+    return blocking.blocking(execControl, () -> {
+      // registered before waiting for the concurrency limit, so cancellation interrupts the wait as well
+      synchronized (this) {
+        if (cancelled) {
+          throw new InterruptedException("Action " + name + " cancelled");
+        }
+        worker = Thread.currentThread();
+      }
+      try {
+        return ActionResult.success(limit.call(() -> backend.call(name, data)));
+      } finally {
+        synchronized (this) {
+          worker = null;
+          // do not leak interrupted status to the next task of the blocking pool
+          Thread.interrupted();
+        }
+      }
     });
   }
+
+  @Override
+  public synchronized void cancel() {
+    cancelled = true;
+    if (worker != null) {
+      worker.interrupt();
+    }
+  }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.exec.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Counts {@code jdk.VirtualThreadPinned} JFR events: virtual thread blocked while pinned to its carrier thread,
+ * i.e. inside {@code synchronized} block, so the carrier could not run other virtual threads.
+ * <p>
+ * Events are consumed from in-process JFR event stream of JDK 14+, looked up reflectively. If streaming is not
+ * supported, monitor is inactive and its counters stay zero. The first pinning of every call site is logged.
+ */
+public class PinningMonitor implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PinningMonitor.class);
+  private static final String EVENT = "jdk.VirtualThreadPinned";
+
+  private final LongAdder pinned = new LongAdder();
+  private final LongAdder pinnedNanos = new LongAdder();
+  private final AtomicLong maxPinnedNanos = new AtomicLong();
+  private final AtomicLong logged = new AtomicLong();
+  private final AutoCloseable stream;
+
+  /**
+   * Starts monitoring.
+   *
+   * @param threshold pinning shorter than threshold is not recorded
+   */
+  public PinningMonitor(Duration threshold) {
+    this.stream = start(threshold);
+  }
+
+  public boolean isActive() {
+    return stream != null;
+  }
+
+  public long getPinned() {
+    return pinned.sum();
+  }
+
+  public long getPinnedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(pinnedNanos.sum());
+  }
+
+  public long getMaxPinnedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxPinnedNanos.get());
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (stream != null) {
+      stream.close();
+    }
+  }
+
+  private AutoCloseable start(Duration threshold) {
+    try {
+      Class<?> streamType = Class.forName("jdk.jfr.consumer.RecordingStream");
+      AutoCloseable stream = (AutoCloseable) streamType.getConstructor().newInstance();
+      Object settings = streamType.getMethod("enable", String.class).invoke(stream, EVENT);
+      Class<?> settingsType = Class.forName("jdk.jfr.EventSettings");
+      settings = settingsType.getMethod("withThreshold", Duration.class).invoke(settings, threshold);
+      settingsType.getMethod("withStackTrace").invoke(settings);
+      Consumer<Object> onPinned = this::record;
+      streamType.getMethod("onEvent", String.class, Consumer.class).invoke(stream, EVENT, onPinned);
+      streamType.getMethod("startAsync").invoke(stream);
+      return stream;
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      LOGGER.info("Pinning of virtual threads is not monitored: {}", ex.toString());
+      return null;
+    }
+  }
+
+  private void record(Object event) {
+    try {
+      Duration duration = (Duration) invoke(event, "jdk.jfr.consumer.RecordedEvent", "getDuration");
+      long nanos = duration.toNanos();
+      pinned.increment();
+      pinnedNanos.add(nanos);
+      maxPinnedNanos.accumulateAndGet(nanos, Math::max);
+      // only a few stacks are logged, pinning usually happens at the same call sites over and over
+      if (logged.getAndIncrement() < 10) {
+        LOGGER.warn("Virtual thread pinned for {} ms at {}", duration.toMillis(), topFrame(event));
+      }
+    } catch (ReflectiveOperationException ex) {
+      LOGGER.debug("Pinning event not recorded", ex);
+    }
+  }
+
+  private static String topFrame(Object event) throws ReflectiveOperationException {
+    Object stackTrace = invoke(event, "jdk.jfr.consumer.RecordedEvent", "getStackTrace");
+    if (stackTrace == null) {
+      return "unknown";
+    }
+    List<?> frames = (List<?>) invoke(stackTrace, "jdk.jfr.consumer.RecordedStackTrace", "getFrames");
+    for (Object frame : frames) {
+      Object method = invoke(frame, "jdk.jfr.consumer.RecordedFrame", "getMethod");
+      Object type = invoke(method, "jdk.jfr.consumer.RecordedMethod", "getType");
+      String className = (String) invoke(type, "jdk.jfr.consumer.RecordedClass", "getName");
+      if (!className.startsWith("java.") && !className.startsWith("jdk.") && !className.startsWith("sun.")) {
+        return className + "." + invoke(method, "jdk.jfr.consumer.RecordedMethod", "getName")
+          + ":" + invoke(frame, "jdk.jfr.consumer.RecordedFrame", "getLineNumber");
+      }
+    }
+    return "unknown";
+  }
+
+  private static Object invoke(Object target, String type, String name) throws ReflectiveOperationException {
+    // methods are looked up on public API types, implementation classes are not accessible
+    Method method = Class.forName(type).getMethod(name);
+    return method.invoke(target);
+  }
+}
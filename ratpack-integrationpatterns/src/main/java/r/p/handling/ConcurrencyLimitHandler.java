@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.handling;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import r.p.limit.ConcurrencyLimiter;
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A handler that sheds load above the adaptive concurrency limit.
+ * <p>
+ * Requests above the {@link ConcurrencyLimiter limit} are rejected with HTTP 503 before any work is done.
+ * Accepted requests are passed to the {@code delegate} handler and their latency, measured until the response is sent,
+ * adjusts the limit. The permit is released exactly once: when the response is sent, when the delegate throws, or when
+ * the client disconnects before the response. Disconnected requests count as dropped, clients usually give up because
+ * of the latency.
+ * <p>
+ * Patterns differ in latency and in the way they fail, so every value of the path {@code token} gets its own limiter.
+ * Values without a limiter, e.g. unknown patterns, share the {@code fallback} limiter, so the number of limiters does not
+ * depend on client input.
+ * <pre>{@code
+ *   chain.get("api/:name", new ConcurrencyLimitHandler("name",
+ *     ImmutableMap.of("parallel", new ConcurrencyLimiter(new VegasLimit()), "invokewithretry", new ConcurrencyLimiter(new AimdLimit())),
+ *     new ConcurrencyLimiter(new AimdLimit()),
+ *     new ExecHandler()));
+ * }</pre>
+ */
+public class ConcurrencyLimitHandler implements Handler {
+  /**
+   * Value of {@code Retry-After} header sent with rejected requests.
+   *
+   * Value: {@value}
+   */
+  public static final String RETRY_AFTER_SECONDS = "1";
+
+  private final String token;
+  private final Map<String, ConcurrencyLimiter> limiters;
+  private final ConcurrencyLimiter fallback;
+  private final Handler delegate;
+
+  /**
+   * Limits all requests with one limiter.
+   *
+   * @param limiter the limiter
+   * @param delegate handler executed for accepted requests
+   */
+  public ConcurrencyLimitHandler(ConcurrencyLimiter limiter, Handler delegate) {
+    this(null, ImmutableMap.of(), limiter, delegate);
+  }
+
+  /**
+   * Limits requests with the limiter of their path {@code token} value.
+   *
+   * @param token name of the path token selecting the limiter
+   * @param limiters limiters by path token value
+   * @param fallback limiter of requests whose path token value has no limiter
+   * @param delegate handler executed for accepted requests
+   */
+  public ConcurrencyLimitHandler(String token, Map<String, ConcurrencyLimiter> limiters, ConcurrencyLimiter fallback,
+                                 Handler delegate) {
+    this.token = token;
+    this.limiters = ImmutableMap.copyOf(limiters);
+    this.fallback = Objects.requireNonNull(fallback);
+    this.delegate = delegate;
+  }
+
+  /**
+   * @param key value of the path token
+   * @return limiter used for requests with the given path token value
+   */
+  public ConcurrencyLimiter getLimiter(String key) {
+    ConcurrencyLimiter limiter = key == null ? null : limiters.get(key);
+    return limiter != null ? limiter : fallback;
+  }
+
+  /**
+   * Executes {@code delegate} if the limit is not reached, otherwise sends HTTP 503.
+   *
+   * @param ctx the request context
+   * @throws Exception any
+   */
+  @Override
+  public void handle(Context ctx) throws Exception {
+    ConcurrencyLimiter limiter = getLimiter(token == null ? null : ctx.getPathTokens().get(token));
+    int inflight = limiter.tryAcquire();
+    if (inflight < 0) {
+      ctx.getResponse().getHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+      ctx.getResponse().status(503).send();
+      return;
+    }
+    Permit permit = new Permit(limiter, inflight);
+    Channel channel = ctx.getDirectChannelAccess().getChannel();
+    ChannelFutureListener disconnect = future -> permit.release(true);
+    channel.closeFuture().addListener(disconnect);
+    ctx.onClose(outcome -> {
+      channel.closeFuture().removeListener(disconnect);
+      permit.release(outcome.getResponse().getStatus().getCode() >= 500);
+    });
+    try {
+      ctx.insert(delegate);
+    } catch (Throwable ex) {
+      permit.release(true);
+      throw ex;
+    }
+  }
+
+  /**
+   * Permit of the accepted request, released only by the first of the response, error and disconnect.
+   */
+  private static final class Permit {
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final ConcurrencyLimiter limiter;
+    private final int inflight;
+    private final long start = System.nanoTime();
+
+    private Permit(ConcurrencyLimiter limiter, int inflight) {
+      this.limiter = limiter;
+      this.inflight = inflight;
+    }
+
+    private void release(boolean dropped) {
+      if (released.compareAndSet(false, true)) {
+        limiter.release(System.nanoTime() - start, inflight, dropped);
+      }
+    }
+  }
+}
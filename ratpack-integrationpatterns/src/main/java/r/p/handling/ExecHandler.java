@@ -19,6 +19,8 @@ package r.p.handling;
 import r.p.handling.internal.FanOutFanInHandler;
 import r.p.handling.internal.InvokeWithRetryHandler;
 import r.p.handling.internal.ParallelHandler;
+import r.p.handling.internal.PipelineHandler;
+import r.p.exec.Pipeline;
 import ratpack.sep.exec.FanOutFanIn;
 import ratpack.sep.exec.InvokeWithRetry;
 import ratpack.sep.exec.Parallel;
@@ -26,15 +28,21 @@ import ratpack.handling.Context;
 import ratpack.handling.Handler;
 import ratpack.sep.Action;
 
+import java.time.Duration;
+
 /**
  * A handler that executes {@link Action actions} and renders their results.
  * <p>
  * The handler obtains pattern for actions execution from the context's registry.
+ * <p>
+ * Responses are not cached by default. If {@code sharedMaxAge} is given, responses of {@link #isIdempotent idempotent}
+ * requests are marked with {@code Cache-Control: public, s-maxage}, so server side cache may keep them.
  */
 public class ExecHandler implements Handler {
   private final Handler fanOutFanInHandler = new FanOutFanInHandler();
   private final Handler parallelHandler = new ParallelHandler();
   private final Handler invokeAndRetryHandler = new InvokeWithRetryHandler();
+  private final Handler pipelineHandler = new PipelineHandler();
 
   /**
    * The default path token name that indicates the pattern to be used for actions execution.
@@ -43,6 +51,35 @@ public class ExecHandler implements Handler {
    */
   public static final String DEFAULT_NAME_TOKEN = "name";
 
+  private final String sharedCacheControl;
+
+  public ExecHandler() {
+    this.sharedCacheControl = null;
+  }
+
+  /**
+   * @param sharedMaxAge time responses of idempotent requests may be kept by shared caches
+   */
+  public ExecHandler(Duration sharedMaxAge) {
+    this.sharedCacheControl = "public, s-maxage=" + sharedMaxAge.getSeconds();
+  }
+
+  /**
+   * Requests running actions in background ({@code invokewithretry?mode=async}) are not idempotent,
+   * every one of them has to start its own work.
+   *
+   * @param ctx the request context
+   * @return {@code true} if request runs known pattern and returns its results
+   */
+  public static boolean isIdempotent(Context ctx) {
+    String patternName = ctx.getPathTokens().get(DEFAULT_NAME_TOKEN);
+    if (InvokeWithRetry.PATTERN_NAME.equals(patternName)) {
+      return !"async".equals(ctx.getRequest().getQueryParams().get("mode"));
+    }
+    return FanOutFanIn.PATTERN_NAME.equals(patternName) || Parallel.PATTERN_NAME.equals(patternName)
+      || Pipeline.PATTERN_NAME.equals(patternName);
+  }
+
   /**
    * Runs actions with the given {@code pattern}
    *
@@ -51,10 +88,14 @@ public class ExecHandler implements Handler {
    */
   @Override
   public void handle(Context ctx) throws Exception {
-    ctx.getResponse().getHeaders()
-      .add("Cache-Control", "no-cache, no-store, must-revalidate")
-      .add("Pragma", "no-cache")
-      .add("Expires", "0");
+    if (sharedCacheControl != null && isIdempotent(ctx)) {
+      ctx.getResponse().getHeaders().set("Cache-Control", sharedCacheControl);
+    } else {
+      ctx.getResponse().getHeaders()
+        .add("Cache-Control", "no-cache, no-store, must-revalidate")
+        .add("Pragma", "no-cache")
+        .add("Expires", "0");
+    }
 
     String patternName = ctx.getPathTokens().get(DEFAULT_NAME_TOKEN);
     if (patternName == null || "".equals(patternName)) {
@@ -68,6 +109,8 @@ public class ExecHandler implements Handler {
       ctx.insert(parallelHandler);
     } else if (InvokeWithRetry.PATTERN_NAME.equals(patternName)) {
       ctx.insert(invokeAndRetryHandler);
+    } else if (Pipeline.PATTERN_NAME.equals(patternName)) {
+      ctx.insert(pipelineHandler);
     } else {
       ctx.next();
     }
@@ -18,6 +18,9 @@ package r.p.handling.internal;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.reflect.TypeToken;
+import r.p.exec.Backend;
+import r.p.exec.BlockingExecutor;
+import r.p.exec.Cancellation;
 import ratpack.sep.Action;
 import ratpack.sep.ActionResult;
 import ratpack.sep.ActionResults;
@@ -45,20 +48,22 @@ public class FanOutFanInHandler implements Handler {
   @Override
   public void handle(Context ctx) throws Exception {
     try {
+      Backend backend = ctx.get(Backend.class);
+      BlockingExecutor blocking = ctx.get(BlockingExecutor.class);
       Iterable<Action<String,String>> actions = new LinkedList<>(Arrays.asList(
-        new LongBlockingIOAction("foo", "data"),
-        new LongBlockingIOAction("bar", "data"),
+        new LongBlockingIOAction("foo", "data", backend, blocking),
+        new LongBlockingIOAction("bar", "data", backend, blocking),
         Action.<String,String>of("buzz", "data", (execControl, data) -> execControl
           .promise(fulfiller -> {
             throw new IOException("CONTROLLED EXCEPTION");
           })),
-        new LongBlockingIOAction("quzz", "data"),
-        new LongBlockingIOAction("foo_1", "data"),
-        new LongBlockingIOAction("foo_2", "data"),
-        new LongBlockingIOAction("foo_3", "data"),
-        new LongBlockingIOAction("foo_4", "data"),
-        new LongBlockingIOAction("foo_5", "data"),
-        new LongBlockingIOAction("foo_6", "data")
+        new LongBlockingIOAction("quzz", "data", backend, blocking),
+        new LongBlockingIOAction("foo_1", "data", backend, blocking),
+        new LongBlockingIOAction("foo_2", "data", backend, blocking),
+        new LongBlockingIOAction("foo_3", "data", backend, blocking),
+        new LongBlockingIOAction("foo_4", "data", backend, blocking),
+        new LongBlockingIOAction("foo_5", "data", backend, blocking),
+        new LongBlockingIOAction("foo_6", "data", backend, blocking)
       ));
       Action<ActionResults<String>, String> mergeResults = Action.of("merge", null, (execControl, actionResults) ->
           execControl.promise(fulfiller -> {
@@ -77,7 +82,9 @@ public class FanOutFanInHandler implements Handler {
       );
 
       FanOutFanIn<String,String,String> pattern = new FanOutFanIn<>();
-      ctx.render(pattern.apply(ctx, ctx, actions, mergeResults));
+      // actions are not started and running ones are interrupted when client disconnects
+      Cancellation cancellation = Cancellation.of(ctx);
+      ctx.render(pattern.apply(ctx, ctx, cancellation.guard(actions), mergeResults));
     } catch (Exception ex) {
       ctx.clientError(404);
     }
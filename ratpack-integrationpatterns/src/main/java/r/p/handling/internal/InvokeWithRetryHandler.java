@@ -18,6 +18,10 @@ package r.p.handling.internal;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import r.p.exec.Backend;
+import r.p.exec.BlockingExecutor;
 import ratpack.sep.Action;
 import ratpack.sep.ActionResult;
 import ratpack.sep.ActionResults;
@@ -33,27 +37,33 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A handler that shows how <b>InvokeAndRetry</b> pattern works.
+ * <p>
+ * The first three executions of the action fail, the next one calls blocking backend, so the latency of the pattern
+ * includes retries as well as the backend call.
  */
 public class InvokeWithRetryHandler implements Handler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(InvokeWithRetryHandler.class);
   private static final TypeToken<PatternsModule.Config> PATTERN_CONFIG_TYPE_TOKEN = TypeToken.of(PatternsModule.Config.class);
 
   @Override
   public void handle(Context ctx) throws Exception {
     try {
+      Backend backend = ctx.get(Backend.class);
+      BlockingExecutor blocking = ctx.get(BlockingExecutor.class);
       AtomicInteger execCounter = new AtomicInteger(0);
-      Action<String,String> action = Action.<String, String>of("foo", "data", (execControl, data) -> execControl
-        .promise(fulfiller -> {
-          if (execCounter.incrementAndGet() <= 3) {
+      Action<String,String> action = Action.<String, String>of("foo", "data", (execControl, data) -> {
+        if (execCounter.incrementAndGet() <= 3) {
+          return execControl.promise(fulfiller -> {
             throw new IOException("FAILED EXECUTION");
-          }
-          fulfiller.success(ActionResult.success("BAR"));
-        })
-      );
+          });
+        }
+        return blocking.blocking(execControl, "backend", () -> ActionResult.success(backend.call("foo", data)));
+      });
 
       // check if retries have to be executed asynchronously
       boolean asyncRetry = false;
       MultiValueMap<String, String> queryAttrs = ctx.getRequest().getQueryParams();
-      System.out.println("QUERY: " + queryAttrs.toString());
+      LOGGER.debug("QUERY: {}", queryAttrs);
       if ("async".equals(queryAttrs.get("retrymode"))) {
         asyncRetry = true;
       }
@@ -17,6 +17,9 @@
 package r.p.handling.internal;
 
 import com.google.common.reflect.TypeToken;
+import r.p.exec.Backend;
+import r.p.exec.BlockingExecutor;
+import r.p.exec.Cancellation;
 import ratpack.sep.Action;
 import r.p.exec.internal.LongBlockingIOAction;
 import ratpack.sep.exec.Parallel;
@@ -36,24 +39,28 @@ public class ParallelHandler implements Handler {
   @Override
   public void handle(Context ctx) throws Exception {
     try {
+      Backend backend = ctx.get(Backend.class);
+      BlockingExecutor blocking = ctx.get(BlockingExecutor.class);
       Iterable<Action<String,String>> actions = new LinkedList<>(Arrays.asList(
-        new LongBlockingIOAction("foo", "data"),
-        new LongBlockingIOAction("bar", "data"),
+        new LongBlockingIOAction("foo", "data", backend, blocking),
+        new LongBlockingIOAction("bar", "data", backend, blocking),
         Action.<String,String>of("buzz", "data", (execControl, data) -> execControl
           .promise(fulfiller -> {
             throw new IOException("CONTROLLED EXCEPTION");
           })),
-        new LongBlockingIOAction("quzz", "data"),
-        new LongBlockingIOAction("foo_1", "data"),
-        new LongBlockingIOAction("foo_2", "data"),
-        new LongBlockingIOAction("foo_3", "data"),
-        new LongBlockingIOAction("foo_4", "data"),
-        new LongBlockingIOAction("foo_5", "data"),
-        new LongBlockingIOAction("foo_6", "data")
+        new LongBlockingIOAction("quzz", "data", backend, blocking),
+        new LongBlockingIOAction("foo_1", "data", backend, blocking),
+        new LongBlockingIOAction("foo_2", "data", backend, blocking),
+        new LongBlockingIOAction("foo_3", "data", backend, blocking),
+        new LongBlockingIOAction("foo_4", "data", backend, blocking),
+        new LongBlockingIOAction("foo_5", "data", backend, blocking),
+        new LongBlockingIOAction("foo_6", "data", backend, blocking)
       ));
 
       Parallel<String,String> pattern = new Parallel<>();
-      ctx.render(pattern.apply(ctx, ctx, actions));
+      // actions are not started and running ones are interrupted when client disconnects
+      Cancellation cancellation = Cancellation.of(ctx);
+      ctx.render(pattern.apply(ctx, ctx, cancellation.guard(actions)));
     } catch (Exception ex) {
       ctx.clientError(404);
     }
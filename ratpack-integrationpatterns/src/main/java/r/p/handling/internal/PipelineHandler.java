@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.handling.internal;
+
+import r.p.exec.Backend;
+import r.p.exec.BlockingExecutor;
+import r.p.exec.Pipeline;
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import ratpack.sep.Action;
+import ratpack.sep.ActionResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A handler that shows how <b>Pipeline</b> pattern works.
+ * <p>
+ * Items are enriched by blocking backend call, transformed on the compute thread and persisted by blocking backend call.
+ */
+public class PipelineHandler implements Handler {
+  @Override
+  public void handle(Context ctx) throws Exception {
+    try {
+      Backend backend = ctx.get(Backend.class);
+      BlockingExecutor blocking = ctx.get(BlockingExecutor.class);
+      List<String> items = Arrays.asList("foo", "bar", "buzz", "quzz", "foo_1", "foo_2", "foo_3", "foo_4", "foo_5", "foo_6");
+
+      Pipeline<String, String> pattern = Pipeline.<String>builder()
+        .stage(Pipeline.Stage.<String, String>of("enrich", 4, 8, item -> Action.of("enrich", item, (execControl, data) -> blocking
+          .blocking(execControl, "backend", () -> ActionResult.success(backend.call("enrich", data) + "_enriched")))))
+        .stage(Pipeline.Stage.<String, String>of("transform", 2, 8, item -> Action.of("transform", item, (execControl, data) -> execControl
+          .promiseOf(ActionResult.success(data.toUpperCase())))))
+        .stage(Pipeline.Stage.<String, String>of("persist", 2, 8, item -> Action.of("persist", item, (execControl, data) -> blocking
+          .blocking(execControl, "backend", () -> ActionResult.success(backend.call("persist", data))))))
+        .build();
+
+      ctx.render(pattern.apply(ctx, items));
+    } catch (Exception ex) {
+      ctx.clientError(404);
+    }
+  }
+}
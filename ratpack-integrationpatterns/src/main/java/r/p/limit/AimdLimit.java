@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease limit.
+ * <p>
+ * The limit grows by one while requests are served within {@code timeout} and the limit is close to be used.
+ * The limit is multiplied by {@code backoffRatio} when request is dropped or its latency exceeds {@code timeout}.
+ */
+public class AimdLimit implements Limit {
+  public static final int DEFAULT_INITIAL_LIMIT = 20;
+  public static final int DEFAULT_MIN_LIMIT = 1;
+  public static final int DEFAULT_MAX_LIMIT = 200;
+  public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+  public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final long timeoutNanos;
+
+  private volatile int limit;
+
+  /**
+   * Creates limit with default parameters.
+   */
+  public AimdLimit() {
+    this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_BACKOFF_RATIO, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param initialLimit limit used before any sample is collected
+   * @param minLimit the lowest limit
+   * @param maxLimit the highest limit
+   * @param backoffRatio ratio, in range (0.5, 1.0), applied to the limit on overload
+   * @param timeoutMillis latency, in milliseconds, above which request is treated as dropped
+   */
+  public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long timeoutMillis) {
+    if (backoffRatio < 0.5 || backoffRatio >= 1.0) {
+      throw new IllegalArgumentException("Backoff ratio must be in range [0.5, 1.0)");
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.limit = Math.min(maxLimit, Math.max(minLimit, initialLimit));
+  }
+
+  @Override
+  public int getLimit() {
+    return limit;
+  }
+
+  @Override
+  public synchronized void onSample(long rttNanos, int inflight, boolean dropped) {
+    int current = limit;
+    if (dropped || rttNanos > timeoutNanos) {
+      current = (int) (current * backoffRatio);
+    } else if (inflight * 2 >= current) {
+      // grow only if the limit is really used, otherwise it would grow without bounds on low traffic
+      current = current + 1;
+    }
+    limit = Math.min(maxLimit, Math.max(minLimit, current));
+  }
+
+  @Override
+  public String toString() {
+    return "AimdLimit [limit=" + limit + "]";
+  }
+}
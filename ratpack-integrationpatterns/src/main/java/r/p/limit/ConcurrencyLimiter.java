@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.limit;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts requests in flight and rejects new ones above the {@link Limit limit}.
+ * <p>
+ * Every acquired permit has to be released with the measured latency, that is fed back to the {@link Limit}.
+ * <pre>{@code
+ *   ConcurrencyLimiter limiter = new ConcurrencyLimiter(new VegasLimit());
+ *   int inflight = limiter.tryAcquire();
+ *   if (inflight < 0) {
+ *     // reject request
+ *   }
+ *   long start = System.nanoTime();
+ *   // ... execute request
+ *   limiter.release(System.nanoTime() - start, inflight, false);
+ * }</pre>
+ */
+public class ConcurrencyLimiter {
+  private final Limit limit;
+  private final AtomicInteger inflight = new AtomicInteger(0);
+  private final AtomicLong rejected = new AtomicLong(0);
+
+  public ConcurrencyLimiter(Limit limit) {
+    this.limit = Objects.requireNonNull(limit);
+  }
+
+  /**
+   * Acquires permit to execute request.
+   *
+   * @return number of requests in flight, including acquired one, or {@code -1} if the limit is reached
+   */
+  public int tryAcquire() {
+    while (true) {
+      int current = inflight.get();
+      if (current >= limit.getLimit()) {
+        rejected.incrementAndGet();
+        return -1;
+      }
+      if (inflight.compareAndSet(current, current + 1)) {
+        return current + 1;
+      }
+    }
+  }
+
+  /**
+   * Releases permit and updates the limit.
+   *
+   * @param rttNanos request latency in nanoseconds
+   * @param inflight number of requests in flight returned by {@link #tryAcquire()}
+   * @param dropped {@code true} if request failed because of overload
+   */
+  public void release(long rttNanos, int inflight, boolean dropped) {
+    this.inflight.decrementAndGet();
+    limit.onSample(rttNanos, inflight, dropped);
+  }
+
+  /**
+   * @return current limit
+   */
+  public int getLimit() {
+    return limit.getLimit();
+  }
+
+  /**
+   * @return number of requests in flight
+   */
+  public int getInflight() {
+    return inflight.get();
+  }
+
+  /**
+   * @return number of rejected requests since start
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+}
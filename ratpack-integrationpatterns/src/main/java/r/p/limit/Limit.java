@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.limit;
+
+/**
+ * Algorithm that calculates the number of requests allowed to be executed concurrently.
+ * <p>
+ * The limit is adjusted with every sample of measured request latency.
+ *
+ * @see r.p.limit.AimdLimit
+ * @see r.p.limit.VegasLimit
+ * @see r.p.limit.ConcurrencyLimiter
+ */
+public interface Limit {
+  /**
+   * @return current limit of concurrently executed requests
+   */
+  int getLimit();
+
+  /**
+   * Updates the limit with the sample of finished request.
+   *
+   * @param rttNanos request round trip time in nanoseconds
+   * @param inflight number of requests executed concurrently when the request started
+   * @param dropped {@code true} if request failed because of overload, i.e. server error or timeout
+   */
+  void onSample(long rttNanos, int inflight, boolean dropped);
+}
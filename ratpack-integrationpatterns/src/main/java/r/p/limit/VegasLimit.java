@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.limit;
+
+/**
+ * Delay based limit inspired by TCP Vegas congestion control.
+ * <p>
+ * The lowest observed latency ({@code rttNoLoad}) estimates latency of the backend without queueing.
+ * The size of the queue is estimated as {@code limit * (1 - rttNoLoad / rtt)}.
+ * If the queue is shorter than {@code alpha} the limit is increased, if longer than {@code beta} the limit is decreased.
+ * Both steps are proportional to {@code log10(limit)}, so big limits react faster.
+ * <p>
+ * Every {@code probeInterval} samples the {@code rttNoLoad} is reset, so the limit follows backends that became slower permanently.
+ */
+public class VegasLimit implements Limit {
+  public static final int DEFAULT_INITIAL_LIMIT = 20;
+  public static final int DEFAULT_MAX_LIMIT = 1000;
+  public static final int DEFAULT_ALPHA = 3;
+  public static final int DEFAULT_BETA = 6;
+  public static final int DEFAULT_PROBE_INTERVAL = 1000;
+
+  private final int maxLimit;
+  private final int alpha;
+  private final int beta;
+  private final int probeInterval;
+
+  private volatile int limit;
+
+  // guarded by this
+  private double estimatedLimit;
+  private long rttNoLoad;
+  private int samplesToProbe;
+
+  /**
+   * Creates limit with default parameters.
+   */
+  public VegasLimit() {
+    this(DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_ALPHA, DEFAULT_BETA, DEFAULT_PROBE_INTERVAL);
+  }
+
+  /**
+   * @param initialLimit limit used before any sample is collected
+   * @param maxLimit the highest limit
+   * @param alpha queue size below which the limit is increased
+   * @param beta queue size above which the limit is decreased
+   * @param probeInterval number of samples after which the no load latency is measured again
+   */
+  public VegasLimit(int initialLimit, int maxLimit, int alpha, int beta, int probeInterval) {
+    if (alpha >= beta) {
+      throw new IllegalArgumentException("Alpha must be lower than beta");
+    }
+    this.maxLimit = maxLimit;
+    this.alpha = alpha;
+    this.beta = beta;
+    this.probeInterval = probeInterval;
+    this.estimatedLimit = Math.min(maxLimit, Math.max(1, initialLimit));
+    this.limit = (int) estimatedLimit;
+    this.samplesToProbe = probeInterval;
+  }
+
+  @Override
+  public int getLimit() {
+    return limit;
+  }
+
+  @Override
+  public synchronized void onSample(long rttNanos, int inflight, boolean dropped) {
+    if (rttNanos <= 0) {
+      return;
+    }
+    if (--samplesToProbe <= 0) {
+      samplesToProbe = probeInterval;
+      rttNoLoad = 0;
+    }
+    if (rttNoLoad == 0 || rttNanos < rttNoLoad) {
+      rttNoLoad = rttNanos;
+      return;
+    }
+
+    double step = Math.max(1.0, Math.log10(estimatedLimit));
+    double next;
+    if (dropped) {
+      next = estimatedLimit - step;
+    } else if (inflight * 2 < estimatedLimit) {
+      // application limited, the sample does not tell anything about the backend capacity
+      return;
+    } else {
+      double queueSize = Math.ceil(estimatedLimit * (1.0 - (double) rttNoLoad / rttNanos));
+      if (queueSize <= alpha) {
+        next = estimatedLimit + step;
+      } else if (queueSize >= beta) {
+        next = estimatedLimit - step;
+      } else {
+        return;
+      }
+    }
+    estimatedLimit = Math.min(maxLimit, Math.max(1.0, next));
+    limit = (int) estimatedLimit;
+  }
+
+  @Override
+  public String toString() {
+    return "VegasLimit [limit=" + limit + "]";
+  }
+}
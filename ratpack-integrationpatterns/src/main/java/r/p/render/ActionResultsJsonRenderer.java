@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package r.p.render;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import ratpack.handling.Context;
+import ratpack.render.RendererSupport;
+import ratpack.sep.ActionResult;
+import ratpack.sep.ActionResults;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A renderer that streams {@link ActionResults} as JSON directly into the pooled response buffer.
+ * <p>
+ * There is no intermediate tree of JSON nodes and no {@code byte[]} copy, {@link JsonGenerator} writes into
+ * the {@link ByteBuf} taken from the channel's allocator. Field names are serialized once, when the class is loaded.
+ * <p>
+ * The output is compact. Pretty printing is opt-in per request with {@code pretty} query parameter, i.e.
+ * {@code api/parallel?pretty}.
+ * <p>
+ * Values are written as Jackson's {@link ObjectMapper} writes them, also {@code NaN} and infinite numbers,
+ * that are not valid JSON numbers and are quoted as strings, i.e. {@code "NaN"}. The mapper is taken from the context,
+ * as Ratpack's Jackson renderer does, so {@link ratpack.jackson.JacksonModule} or other binding of {@link ObjectMapper}
+ * is required.
+ * <pre>{@code
+ *  {"results":{"foo":{"code":"0","message":null,"data":"data"}, ...}}
+ * }</pre>
+ */
+@SuppressWarnings("rawtypes")
+public class ActionResultsJsonRenderer extends RendererSupport<ActionResults> {
+  /**
+   * Query parameter that turns pretty printing on.
+   *
+   * Value: {@value}
+   */
+  public static final String PRETTY_PARAM = "pretty";
+
+  private static final SerializableString RESULTS = new SerializedString("results");
+  private static final SerializableString CODE = new SerializedString("code");
+  private static final SerializableString MESSAGE = new SerializedString("message");
+  private static final SerializableString DATA = new SerializedString("data");
+
+  @Override
+  public void render(Context ctx, ActionResults actionResults) throws Exception {
+    if (actionResults == null) {
+      ctx.clientError(404);
+      return;
+    }
+    ObjectMapper mapper = ctx.get(ObjectMapper.class);
+    ByteBuf buffer = ctx.getDirectChannelAccess().getChannel().alloc().buffer();
+    try {
+      try (JsonGenerator generator = mapper.getFactory()
+        .createGenerator(new ByteBufOutputStream(buffer), JsonEncoding.UTF8)) {
+        if (isPrettyPrintRequested(ctx)) {
+          generator.useDefaultPrettyPrinter();
+        }
+        write(mapper, generator, actionResults);
+      }
+    } catch (Exception ex) {
+      buffer.release();
+      throw ex;
+    }
+    ctx.getResponse().contentType("application/json").send(buffer);
+  }
+
+  private static boolean isPrettyPrintRequested(Context ctx) {
+    String pretty = ctx.getRequest().getQueryParams().get(PRETTY_PARAM);
+    return pretty != null && !"false".equals(pretty);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void write(ObjectMapper mapper, JsonGenerator generator, ActionResults actionResults)
+    throws IOException {
+    generator.writeStartObject();
+    generator.writeFieldName(RESULTS);
+    generator.writeStartObject();
+    for (Map.Entry<String, ActionResult> entry : ((Map<String, ActionResult>) actionResults.getResults()).entrySet()) {
+      ActionResult result = entry.getValue();
+      generator.writeFieldName(entry.getKey());
+      generator.writeStartObject();
+      generator.writeFieldName(CODE);
+      generator.writeString(result.getCode());
+      generator.writeFieldName(MESSAGE);
+      generator.writeString(result.getMessage());
+      generator.writeFieldName(DATA);
+      writeValue(mapper, generator, result.getData());
+      generator.writeEndObject();
+    }
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+
+  /**
+   * Strings, primitive numbers and booleans are written directly, the mapper is used only for other data.
+   */
+  private static void writeValue(ObjectMapper mapper, JsonGenerator generator, Object value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else if (value instanceof String) {
+      generator.writeString((String) value);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      generator.writeNumber(((Number) value).longValue());
+    } else if (value instanceof Double) {
+      // not finite numbers are quoted, see JsonGenerator.Feature.QUOTE_NON_NUMERIC_NUMBERS
+      generator.writeNumber((Double) value);
+    } else if (value instanceof Float) {
+      generator.writeNumber((Float) value);
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else {
+      mapper.writeValue(generator, value);
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.cache
+
+import r.metrics.MetricRegistry
+import ratpack.groovy.test.embed.GroovyEmbeddedApp
+import ratpack.handling.Context
+import ratpack.handling.Handler
+import ratpack.test.embed.EmbeddedApp
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Predicate
+
+class Reply {
+  int status
+  String body
+  String age
+}
+
+class CachingHandlerSpec extends Specification {
+  static final String CACHEABLE = "public, s-maxage=10"
+
+  ExecutorService clients = Executors.newCachedThreadPool()
+  AtomicInteger calls = new AtomicInteger()
+  CountDownLatch release = new CountDownLatch(1)
+  EmbeddedApp app
+
+  def cleanup() {
+    release.countDown()
+    clients.shutdownNow()
+    app?.close()
+  }
+
+  def "identical requests in flight run the handler once and the response is cached"() {
+    given:
+    app = cachingApp(ResponseCache.builder("coalesce").build()) { Context ctx ->
+      calls.incrementAndGet()
+      ctx.blocking { release.await(); "value" }.then { String value ->
+        ctx.response.headers.set("Cache-Control", CACHEABLE)
+        ctx.render(value)
+      }
+    }
+
+    when:
+    Future<Reply> leader = send("value")
+    waitFor { calls.get() == 1 }
+    List<Future<Reply>> followers = (1..4).collect { send("value") }
+    waitFor { count("coalesce", "coalesced") == 4 }
+    release.countDown()
+
+    then:
+    leader.get().body == "value"
+    followers*.get()*.body == ["value"] * 4
+    calls.get() == 1
+
+    when:
+    Reply cached = send("value").get()
+
+    then:
+    cached.body == "value"
+    cached.age != null
+    calls.get() == 1
+    count("coalesce", "hit") == 1
+  }
+
+  def "waiting requests are handled on their own when the leading request fails"() {
+    given:
+    app = cachingApp(ResponseCache.builder("failure").build()) { Context ctx ->
+      if (calls.incrementAndGet() == 1) {
+        ctx.blocking { release.await(); throw new IllegalStateException("leader failed") }.then { ctx.render("never") }
+      } else {
+        ctx.response.headers.set("Cache-Control", CACHEABLE)
+        ctx.render("value")
+      }
+    }
+
+    when:
+    Future<Reply> leader = send("value")
+    waitFor { calls.get() == 1 }
+    List<Future<Reply>> followers = (1..3).collect { send("value") }
+    waitFor { count("failure", "coalesced") == 3 }
+    release.countDown()
+
+    then:
+    leader.get().status == 500
+    followers*.get()*.status == [200] * 3
+    followers*.get()*.body == ["value"] * 3
+    calls.get() == 4
+  }
+
+  def "waiting requests are handled on their own when the leading request does not respond in time"() {
+    given:
+    ResponseCache cache = ResponseCache.builder("timeout").followTimeout(Duration.ofMillis(200)).build()
+    app = cachingApp(cache) { Context ctx ->
+      if (calls.incrementAndGet() == 1) {
+        ctx.blocking { release.await(); "leader" }.then { String value -> ctx.render(value) }
+      } else {
+        ctx.render("follower")
+      }
+    }
+
+    when:
+    Future<Reply> leader = send("value")
+    waitFor { calls.get() == 1 }
+    List<Reply> followers = (1..3).collect { send("value") }*.get()
+    release.countDown()
+
+    then: "followers do not wait for the leader that is still running"
+    followers*.body == ["follower"] * 3
+    count("timeout", "timeout") == 3
+    leader.get().body == "leader"
+  }
+
+  def "responses that are not marked as cacheable are not cached"() {
+    given:
+    app = cachingApp(ResponseCache.builder("uncacheable").build()) { Context ctx ->
+      calls.incrementAndGet()
+      ctx.response.headers.set("Cache-Control", cacheControl)
+      ctx.render("value")
+    }
+
+    when:
+    2.times { send("value").get() }
+
+    then:
+    calls.get() == 2
+
+    where:
+    cacheControl << ["no-cache", "no-cache, no-store, must-revalidate", "private, max-age=10"]
+  }
+
+  def "requests rejected by the predicate are neither coalesced nor cached"() {
+    given:
+    ResponseCache cache = ResponseCache.builder("predicate").build()
+    Predicate<Context> idempotent = { Context ctx -> ctx.request.queryParams.mode != "async" } as Predicate<Context>
+    app = GroovyEmbeddedApp.build {
+      handlers {
+        get("value", new CachingHandler(cache, idempotent, { Context ctx ->
+          calls.incrementAndGet()
+          ctx.response.headers.set("Cache-Control", CACHEABLE)
+          ctx.render("value")
+        } as Handler))
+      }
+    }
+
+    when:
+    2.times { send("value?mode=async").get() }
+
+    then:
+    calls.get() == 2
+
+    when:
+    2.times { send("value").get() }
+
+    then:
+    calls.get() == 3
+  }
+
+  private static EmbeddedApp cachingApp(ResponseCache cache, Closure<?> handler) {
+    GroovyEmbeddedApp.build {
+      handlers {
+        get("value", new CachingHandler(cache, handler as Handler))
+      }
+    }
+  }
+
+  private Future<Reply> send(String path) {
+    URL url = new URL(app.address.toString() + path)
+    clients.submit({
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection()
+      int status = connection.responseCode
+      String body = (status < 400 ? connection.inputStream : connection.errorStream)?.text
+      new Reply(status: status, body: body, age: connection.getHeaderField("Age"))
+    } as Callable<Reply>)
+  }
+
+  private static long count(String cache, String result) {
+    MetricRegistry.global()
+      .counter("http_cache_requests_total", "Requests of cached routes by result", "cache", cache, "result", result)
+      .get()
+  }
+
+  private static void waitFor(Closure<Boolean> condition) {
+    long deadline = System.currentTimeMillis() + 5000
+    while (!condition()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("Condition not met in 5 seconds")
+      }
+      Thread.sleep(10)
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.p.exec
+
+import r.p.exec.internal.LongBlockingIOAction
+import ratpack.exec.ExecControl
+import ratpack.exec.Promise
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.test.exec.ExecHarness
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Cancellable action that finishes immediately and counts its cancellations.
+ */
+class FinishedAction implements CancellableAction<String, String> {
+  final AtomicInteger cancelled = new AtomicInteger()
+
+  String getName() { "finished" }
+
+  String getData() { "data" }
+
+  Promise<ActionResult<String>> exec(ExecControl execControl) throws Exception {
+    execControl.promiseOf(ActionResult.success("done"))
+  }
+
+  void cancel() {
+    cancelled.incrementAndGet()
+  }
+}
+
+class CancellationSpec extends Specification {
+  Cancellation cancellation = new Cancellation()
+
+  def "action is not started after cancellation"() {
+    given:
+    AtomicInteger executed = new AtomicInteger()
+    Action<String, String> action = cancellation.guard(Action.of("foo", "data", { ExecControl execControl, String data ->
+      executed.incrementAndGet()
+      execControl.promiseOf(ActionResult.success(data))
+    }))
+
+    when:
+    cancellation.cancel()
+    def result = ExecHarness.yieldSingle { execution -> action.exec(execution) }
+
+    then:
+    result.value.code == Cancellation.CANCELLED_CODE
+    executed.get() == 0
+  }
+
+  def "action created before cancellation is not started when its promise is subscribed after cancellation"() {
+    given:
+    AtomicInteger executed = new AtomicInteger()
+    Action<String, String> action = cancellation.guard(Action.of("foo", "data", { ExecControl execControl, String data ->
+      executed.incrementAndGet()
+      execControl.promiseOf(ActionResult.success(data))
+    }))
+
+    when:
+    def result = ExecHarness.yieldSingle { execution ->
+      Promise<ActionResult<String>> promise = action.exec(execution)
+      cancellation.cancel()
+      promise
+    }
+
+    then:
+    result.value.code == Cancellation.CANCELLED_CODE
+    executed.get() == 0
+  }
+
+  def "cancellation interrupts running blocking action"() {
+    given:
+    CountDownLatch started = new CountDownLatch(1)
+    Backend backend = { String name, String data ->
+      started.countDown()
+      Thread.sleep(TimeUnit.MINUTES.toMillis(1))
+      data
+    } as Backend
+    Action<String, String> action = cancellation.guard(new LongBlockingIOAction("foo", "data", backend))
+    Thread.start {
+      started.await()
+      cancellation.cancel()
+    }
+
+    when:
+    long start = System.nanoTime()
+    def result = ExecHarness.yieldSingle { execution -> action.exec(execution) }
+
+    then:
+    result.throwable instanceof InterruptedException
+    System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30)
+  }
+
+  def "finished actions are not cancelled"() {
+    given:
+    FinishedAction finished = new FinishedAction()
+    Action<String, String> action = cancellation.guard(finished)
+
+    when:
+    def result = ExecHarness.yieldSingle { execution -> action.exec(execution) }
+    cancellation.cancel()
+
+    then:
+    result.value.data == "done"
+    finished.cancelled.get() == 0
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.p.exec
+
+import ratpack.exec.ExecControl
+import ratpack.func.Function
+import ratpack.sep.Action
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.exec.ExecHarness
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class PipelineSpec extends Specification {
+  AtomicInteger persisted = new AtomicInteger()
+
+  Pipeline.Stage<String, String> upper = stage("upper", 2) { ExecControl execControl, String data ->
+    if (data == "invalid") {
+      return execControl.promiseOf(ActionResult.error("INVALID", data))
+    }
+    if (data == "broken") {
+      throw new IllegalStateException("broken item")
+    }
+    execControl.promiseOf(ActionResult.success(data.toUpperCase()))
+  }
+
+  Pipeline.Stage<String, String> persist = stage("persist", 2) { ExecControl execControl, String data ->
+    execControl.blocking {
+      persisted.incrementAndGet()
+      ActionResult.success(data + "!")
+    }
+  }
+
+  Pipeline<String, String> pipeline = Pipeline.<String>builder().stage(upper).stage(persist).build()
+
+  def "items flow through all stages and results are keyed by item index"() {
+    when:
+    ActionResults<String> results = run(["a", "b", "c"])
+
+    then:
+    results.results.keySet() as List == ["0", "1", "2"]
+    results.results.values()*.data == ["A!", "B!", "C!"]
+    persisted.get() == 3
+  }
+
+  def "item with error result does not enter the next stage"() {
+    when:
+    ActionResults<String> results = run(["a", "invalid", "c"])
+
+    then:
+    results.results["1"].code == "INVALID"
+    results.results["0"].data == "A!"
+    results.results["2"].data == "C!"
+    persisted.get() == 2
+  }
+
+  def "item whose action throws exception does not enter the next stage"() {
+    when:
+    ActionResults<String> results = run(["broken", "b"])
+
+    then:
+    results.results["0"].code == Pipeline.STAGE_ERROR_CODE
+    results.results["1"].data == "B!"
+    persisted.get() == 1
+  }
+
+  def "stage runs at most parallelism actions at once"() {
+    given:
+    AtomicInteger running = new AtomicInteger()
+    AtomicInteger maxRunning = new AtomicInteger()
+    Pipeline<String, String> slow = Pipeline.<String>builder().stage(stage("slow", 2) { ExecControl execControl, String data ->
+      execControl.blocking {
+        int current = running.incrementAndGet()
+        maxRunning.accumulateAndGet(current, { int a, int b -> Math.max(a, b) })
+        Thread.sleep(20)
+        running.decrementAndGet()
+        ActionResult.success(data)
+      }
+    }).build()
+
+    when:
+    ActionResults<String> results = ExecHarness.yieldSingle { execution -> slow.apply(execution, (1..10)*.toString()) }.value
+
+    then:
+    results.results.size() == 10
+    maxRunning.get() <= 2
+  }
+
+  private ActionResults<String> run(List<String> items) {
+    ExecHarness.yieldSingle { execution -> pipeline.apply(execution, items) }.value
+  }
+
+  private static Pipeline.Stage<String, String> stage(String name, int parallelism, Closure<?> exec) {
+    Pipeline.Stage.of(name, parallelism, 4, { String item -> Action.of(name, item, exec) } as Function<String, Action<String, String>>)
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.p.handling
+
+import r.p.limit.AimdLimit
+import r.p.limit.ConcurrencyLimiter
+import ratpack.groovy.test.embed.GroovyEmbeddedApp
+import ratpack.handling.Context
+import ratpack.handling.Handler
+import ratpack.test.embed.EmbeddedApp
+import ratpack.test.http.TestHttpClient
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ConcurrencyLimitHandlerSpec extends Specification {
+  ConcurrencyLimiter slow = limiterOfOne()
+  ConcurrencyLimiter fast = limiterOfOne()
+  ConcurrencyLimiter fallback = limiterOfOne()
+
+  def "every path token value is limited by its own limiter"() {
+    given:
+    ConcurrencyLimitHandler handler = new ConcurrencyLimitHandler("name", [slow: slow, fast: fast], fallback,
+      { Context ctx -> ctx.render(ctx.pathTokens.name) } as Handler)
+    EmbeddedApp app = GroovyEmbeddedApp.build {
+      handlers {
+        get("api/:name", handler)
+      }
+    }
+
+    expect:
+    handler.getLimiter("slow").is(slow)
+    handler.getLimiter("fast").is(fast)
+    handler.getLimiter("unknown").is(fallback)
+
+    when: "the only permit of slow pattern is taken"
+    slow.tryAcquire()
+
+    then:
+    app.test { TestHttpClient httpClient ->
+      httpClient.get("api/slow")
+      assert httpClient.response.statusCode == 503
+      assert httpClient.response.headers.get("Retry-After") == ConcurrencyLimitHandler.RETRY_AFTER_SECONDS
+      assert httpClient.getText("api/fast") == "fast"
+      assert httpClient.getText("api/unknown") == "unknown"
+    }
+    slow.rejected == 1
+    fast.rejected == 0
+    fallback.rejected == 0
+  }
+
+  def "permit is released when the client disconnects before the response"() {
+    given:
+    CountDownLatch started = new CountDownLatch(1)
+    EmbeddedApp app = GroovyEmbeddedApp.build {
+      handlers {
+        get("api/:name", new ConcurrencyLimitHandler("name", [slow: slow], fallback, { Context ctx ->
+          // the response never comes
+          ctx.promise { started.countDown() }.then { ctx.render it }
+        } as Handler))
+      }
+    }
+    URI address = app.address
+
+    when:
+    Socket socket = new Socket(address.host, address.port)
+    socket.outputStream.write("GET /api/slow HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII))
+    socket.outputStream.flush()
+
+    then:
+    started.await(5, TimeUnit.SECONDS)
+    slow.inflight == 1
+
+    when:
+    socket.close()
+
+    then:
+    new PollingConditions(timeout: 5).eventually {
+      assert slow.inflight == 0
+    }
+
+    cleanup:
+    app.close()
+  }
+
+  def "permit is released once when the delegate fails"() {
+    given:
+    EmbeddedApp app = GroovyEmbeddedApp.build {
+      handlers {
+        get("api/:name", new ConcurrencyLimitHandler("name", [slow: slow], fallback, { Context ctx ->
+          throw new IllegalStateException("failed")
+        } as Handler))
+      }
+    }
+
+    expect:
+    app.test { TestHttpClient httpClient ->
+      httpClient.get("api/slow")
+      assert httpClient.response.statusCode == 500
+      new PollingConditions(timeout: 5).eventually {
+        assert slow.inflight == 0
+      }
+      // the only permit is available again, and it was not released twice
+      httpClient.get("api/slow")
+      assert httpClient.response.statusCode == 500
+      assert slow.inflight >= 0
+    }
+    slow.rejected == 0
+  }
+
+  private static ConcurrencyLimiter limiterOfOne() {
+    new ConcurrencyLimiter(new AimdLimit(1, 1, 1, 0.9, 5000))
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.p.limit
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class AimdLimitSpec extends Specification {
+  static final long RTT = TimeUnit.MILLISECONDS.toNanos(10)
+
+  AimdLimit limit = new AimdLimit(20, 1, 200, 0.9, 5000)
+
+  def "limit grows by one while requests finish in time and the limit is used"() {
+    when:
+    limit.onSample(RTT, 10, false)
+
+    then:
+    limit.limit == 21
+  }
+
+  def "limit does not grow on low traffic"() {
+    when:
+    limit.onSample(RTT, 9, false)
+
+    then:
+    limit.limit == 20
+  }
+
+  def "limit is multiplied by backoff ratio on overload"() {
+    when:
+    limit.onSample(rtt, 20, dropped)
+
+    then:
+    limit.limit == 18
+
+    where:
+    rtt                                  | dropped
+    RTT                                  | true
+    TimeUnit.MILLISECONDS.toNanos(5001)  | false
+  }
+
+  def "limit stays between min and max limit"() {
+    given:
+    AimdLimit lowest = new AimdLimit(1, 1, 200, 0.9, 5000)
+    AimdLimit highest = new AimdLimit(200, 1, 200, 0.9, 5000)
+
+    when:
+    lowest.onSample(RTT, 1, true)
+    highest.onSample(RTT, 200, false)
+
+    then:
+    lowest.limit == 1
+    highest.limit == 200
+  }
+
+  def "backoff ratio has to be in range [0.5, 1.0)"() {
+    when:
+    new AimdLimit(20, 1, 200, ratio, 5000)
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    ratio << [0.4, 1.0]
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.p.limit
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+class ConcurrencyLimiterSpec extends Specification {
+  def "requests above the limit are rejected"() {
+    given:
+    Limit limit = Mock()
+    limit.getLimit() >> 2
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit)
+
+    expect:
+    limiter.tryAcquire() == 1
+    limiter.tryAcquire() == 2
+    limiter.tryAcquire() == -1
+    limiter.inflight == 2
+    limiter.rejected == 1
+  }
+
+  def "released permit can be acquired again and its latency is fed back to the limit"() {
+    given:
+    Limit limit = Mock()
+    limit.getLimit() >> 1
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit)
+    int inflight = limiter.tryAcquire()
+
+    when:
+    limiter.release(1000, inflight, true)
+
+    then:
+    1 * limit.onSample(1000, 1, true)
+    limiter.inflight == 0
+    limiter.tryAcquire() == 1
+    limiter.rejected == 0
+  }
+
+  def "concurrent requests never exceed the limit"() {
+    given:
+    Limit limit = Mock()
+    limit.getLimit() >> 5
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit)
+    ExecutorService executor = Executors.newFixedThreadPool(16)
+    CountDownLatch start = new CountDownLatch(1)
+
+    when:
+    List<Future<Integer>> futures = (1..50).collect {
+      executor.submit({ start.await(); limiter.tryAcquire() } as Callable<Integer>)
+    }
+    start.countDown()
+    List<Integer> acquired = futures*.get()
+
+    then:
+    acquired.findAll { it > 0 }.sort() == [1, 2, 3, 4, 5]
+    limiter.inflight == 5
+    limiter.rejected == 45
+
+    cleanup:
+    executor.shutdownNow()
+  }
+}
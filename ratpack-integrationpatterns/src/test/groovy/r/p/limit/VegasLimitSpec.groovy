@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.p.limit
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class VegasLimitSpec extends Specification {
+  static final long RTT = TimeUnit.MILLISECONDS.toNanos(10)
+
+  VegasLimit limit = new VegasLimit(20, 1000, 3, 6, 1000)
+
+  def "first sample only measures latency without load"() {
+    when:
+    limit.onSample(RTT, 20, false)
+
+    then:
+    limit.limit == 20
+  }
+
+  def "limit grows by log10 of the limit while there is no queue"() {
+    given:
+    limit.onSample(RTT, 20, false)
+
+    when:
+    limit.onSample(RTT, 20, false)
+
+    then: "20 + log10(20)"
+    limit.limit == 21
+
+    when:
+    limit.onSample(RTT, 20, false)
+
+    then: "21.30 + log10(21.30)"
+    limit.limit == 22
+  }
+
+  def "limit shrinks when the queue gets longer than beta"() {
+    given:
+    limit.onSample(RTT, 20, false)
+
+    when: "queue is estimated as ceil(20 * (1 - 10 / 20)) = 10"
+    limit.onSample(RTT * 2, 20, false)
+
+    then: "20 - log10(20)"
+    limit.limit == 18
+  }
+
+  def "limit does not change while the queue is between alpha and beta"() {
+    given:
+    limit.onSample(RTT, 20, false)
+
+    when: "queue is estimated as ceil(20 * (1 - 10 / 12.5)) = 4"
+    limit.onSample((long) (RTT * 1.25), 20, false)
+
+    then:
+    limit.limit == 20
+  }
+
+  def "dropped request shrinks the limit"() {
+    given:
+    limit.onSample(RTT, 20, false)
+
+    when:
+    limit.onSample(RTT, 20, true)
+
+    then:
+    limit.limit == 18
+  }
+
+  def "samples of application limited traffic are ignored"() {
+    given:
+    limit.onSample(RTT, 20, false)
+
+    when:
+    limit.onSample(RTT * 4, 9, false)
+
+    then:
+    limit.limit == 20
+  }
+
+  def "limit stays between one and the max limit"() {
+    given:
+    VegasLimit lowest = new VegasLimit(1, 10, 3, 6, 1000)
+    VegasLimit highest = new VegasLimit(10, 10, 3, 6, 1000)
+    [lowest, highest]*.onSample(RTT, 10, false)
+
+    when:
+    lowest.onSample(RTT, 1, true)
+    highest.onSample(RTT, 10, false)
+
+    then:
+    lowest.limit == 1
+    highest.limit == 10
+  }
+
+  def "latency without load is measured again after probe interval"() {
+    given:
+    VegasLimit probing = new VegasLimit(20, 1000, 3, 6, 3)
+    probing.onSample(RTT, 20, false)
+
+    when: "backend became permanently slower"
+    probing.onSample(RTT * 2, 20, false)
+
+    then:
+    probing.limit == 18
+
+    when: "third sample resets the latency without load, the next one compares to it"
+    probing.onSample(RTT * 2, 20, false)
+    probing.onSample(RTT * 2, 20, false)
+
+    then: "no queue, the limit grows"
+    probing.limit == 19
+  }
+
+  def "alpha has to be lower than beta"() {
+    when:
+    new VegasLimit(20, 1000, 6, 6, 1000)
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+}
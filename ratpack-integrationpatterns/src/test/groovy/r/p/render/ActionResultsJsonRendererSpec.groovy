@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package r.p.render
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.google.common.collect.ImmutableMap
+import ratpack.groovy.test.embed.GroovyEmbeddedApp
+import ratpack.jackson.JacksonModule
+import ratpack.sep.ActionResult
+import ratpack.sep.ActionResults
+import ratpack.test.embed.EmbeddedApp
+import ratpack.test.http.TestHttpClient
+import spock.lang.Specification
+
+class ActionResultsJsonRendererSpec extends Specification {
+  static final ObjectMapper MAPPER = new ObjectMapper()
+
+  def "action results are rendered as Jackson renders them"() {
+    given:
+    ActionResults<Object> actionResults = new ActionResults<>(ImmutableMap.of(
+      "result", ActionResult.success(data),
+      "failure", ActionResult.error("1", "failed")))
+
+    when:
+    String rendered = render(actionResults, "")
+
+    then:
+    JsonNode actual = MAPPER.readTree(rendered)
+    JsonNode expected = MAPPER.readTree(MAPPER.writeValueAsString(actionResults))
+    ["result", "failure"].each { String name ->
+      ["code", "message", "data"].each { String field ->
+        assert actual.path("results").path(name).path(field) == expected.path("results").path(name).path(field)
+      }
+    }
+
+    where:
+    data << ["text", 42, Long.MAX_VALUE, 1.5d, 0.1f, new BigDecimal("1.10"), true, null, [1, 2], [a: "b"],
+             Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY]
+  }
+
+  def "not finite numbers are written as strings"() {
+    when:
+    String rendered = render(new ActionResults<>(ImmutableMap.of("nan", ActionResult.success(Double.NaN))), "")
+
+    then:
+    rendered == '{"results":{"nan":{"code":"0","message":null,"data":"NaN"}}}'
+  }
+
+  def "output is compact unless pretty printing is requested"() {
+    given:
+    ActionResults<String> actionResults = new ActionResults<>(ImmutableMap.of("foo", ActionResult.success("data")))
+
+    expect:
+    !render(actionResults, "").contains("\n")
+    render(actionResults, "?pretty").contains("\n")
+    !render(actionResults, "?pretty=false").contains("\n")
+  }
+
+  def "data is written with object mapper of the registry"() {
+    given:
+    ObjectMapper mapper = new ObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+
+    when:
+    String rendered = render(new ActionResults<>(ImmutableMap.of("date", ActionResult.success(new Date(0)))), "", mapper)
+
+    then:
+    rendered.startsWith('{"results":{"date":{"code":"0","message":null,"data":"1970-01-01T00:00:00')
+  }
+
+  private static String render(ActionResults<?> actionResults, String query, ObjectMapper mapper = null) {
+    EmbeddedApp app = GroovyEmbeddedApp.build {
+      bindings {
+        if (mapper) {
+          bindInstance(ObjectMapper, mapper)
+        } else {
+          add JacksonModule
+        }
+        bindInstance(ActionResultsJsonRenderer, new ActionResultsJsonRenderer())
+      }
+      handlers {
+        get("results") {
+          render actionResults
+        }
+      }
+    }
+    String rendered = null
+    app.test { TestHttpClient httpClient ->
+      rendered = httpClient.getText("results" + query)
+    }
+    rendered
+  }
+}
@@ -0,0 +1,196 @@
+package r.kryo;
+
+import com.esotericsoftware.kryo.pool.KryoPool;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pac4j.http.profile.HttpProfile;
+import ratpack.registry.Registries;
+import ratpack.registry.Registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of session values to and from the cookie value.
+ * <ul>
+ *   <li>{@code java} - plain Java serialization with URL safe Base64, the baseline</li>
+ *   <li>{@code kryo} - {@link KryoValueSerializer} without compression</li>
+ *   <li>{@code kryoDeflate} - {@link KryoValueSerializer} with Deflate and preset dictionary built from sample profile,
+ *   as configured in the example</li>
+ * </ul>
+ * Kryo variants run the serializer bound as the session {@code ValueSerializer} of the example. The cookie session
+ * example codec, Java serialization with signed and encrypted cookie, is measured by {@code SessionCodecBenchmark}
+ * of {@code ratpack-cookiesession} on the same string and map payloads.
+ * <p>
+ * Payloads are pac4j {@link HttpProfile} of the logged in user, 2 KB string set by {@code m/set/:attr} of the cookie
+ * session example, and a map of short strings. Encoded sizes are printed by {@link #main(String...)}:
+ * <pre>
+ *   ./gradlew benchmarkMain -Dbench.main=r.kryo.SessionSerializationBenchmark
+ * </pre>
+ * Run with {@code -prof gc} to get allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionSerializationBenchmark {
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  @Param({"profile", "string2k", "map"})
+  public String payload;
+
+  private final KryoValueSerializer serializer = new KryoValueSerializer();
+  private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+  private Registry kryoRegistry;
+  private Registry kryoDeflateRegistry;
+  private Object value;
+  private String javaEncoded;
+  private String kryoEncoded;
+  private String kryoDeflateEncoded;
+
+  @Setup
+  public void setup() throws Exception {
+    value = payload(payload);
+    kryoRegistry = registry(config().setCompressionThreshold(-1));
+    kryoDeflateRegistry = registry(config());
+    javaEncoded = javaSerialize();
+    kryoEncoded = encode(kryoRegistry);
+    kryoDeflateEncoded = encode(kryoDeflateRegistry);
+  }
+
+  public static void main(String... args) throws Exception {
+    for (String name : new String[]{"profile", "string2k", "map"}) {
+      SessionSerializationBenchmark benchmark = new SessionSerializationBenchmark();
+      benchmark.payload = name;
+      benchmark.setup();
+      System.out.println(String.format("Encoded size of %s: java=%d kryo=%d kryoDeflate=%d", name,
+        benchmark.javaEncoded.length(), benchmark.kryoEncoded.length(), benchmark.kryoDeflateEncoded.length()));
+    }
+  }
+
+  @Benchmark
+  public String javaSerialize() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(value);
+    }
+    return ENCODER.encodeToString(bytes.toByteArray());
+  }
+
+  @Benchmark
+  public Object javaDeserialize() throws Exception {
+    try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(DECODER.decode(javaEncoded)))) {
+      return input.readObject();
+    }
+  }
+
+  @Benchmark
+  public int kryoSerialize() throws Exception {
+    return serialize(kryoRegistry);
+  }
+
+  @Benchmark
+  public Object kryoDeserialize() throws Exception {
+    return serializer.deserialize(kryoRegistry, kryoEncoded);
+  }
+
+  @Benchmark
+  public int kryoDeflateSerialize() throws Exception {
+    return serialize(kryoDeflateRegistry);
+  }
+
+  @Benchmark
+  public Object kryoDeflateDeserialize() throws Exception {
+    return serializer.deserialize(kryoDeflateRegistry, kryoDeflateEncoded);
+  }
+
+  private int serialize(Registry registry) throws Exception {
+    ByteBuf encoded = serializer.serialize(registry, allocator, value);
+    try {
+      return encoded.readableBytes();
+    } finally {
+      encoded.release();
+    }
+  }
+
+  private String encode(Registry registry) throws Exception {
+    ByteBuf encoded = serializer.serialize(registry, allocator, value);
+    try {
+      return encoded.toString(StandardCharsets.US_ASCII);
+    } finally {
+      encoded.release();
+    }
+  }
+
+  /**
+   * @return configuration with the same registrations and compression sample as the example application
+   */
+  private static KryoSerializerModule.Config config() {
+    HttpProfile sample = new HttpProfile();
+    sample.setId("username");
+    sample.addAttribute("username", "username");
+    return new KryoSerializerModule.Config()
+      .register(HashMap.class)
+      .register(ArrayList.class)
+      .register(HttpProfile.class)
+      .addCompressionSample(sample);
+  }
+
+  private Registry registry(KryoSerializerModule.Config config) {
+    return Registries.registry()
+      .add(KryoPool.class, new KryoSerializerModule().provideKryoPool(config))
+      .add(ByteBufAllocator.class, allocator)
+      .build();
+  }
+
+  private static Object payload(String name) {
+    switch (name) {
+      case "profile":
+        HttpProfile profile = new HttpProfile();
+        profile.setId("jerry");
+        profile.addAttribute("username", "jerry");
+        profile.addAttribute("email", "jerry@example.com");
+        profile.addAttribute("display_name", "Jerry Smith");
+        profile.addAttribute("location", "Warsaw");
+        profile.addRole("ROLE_ADMIN");
+        profile.addRole("ROLE_USER");
+        return profile;
+      case "string2k":
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+          value.append("ab");
+        }
+        return value.toString();
+      case "map":
+        HashMap<String, String> map = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+          map.put("attr" + i, "valueeeeeeeeeeeeeeeeeeeeee" + i);
+        }
+        return map;
+      default:
+        throw new IllegalArgumentException("Unknown payload: " + name);
+    }
+  }
+}
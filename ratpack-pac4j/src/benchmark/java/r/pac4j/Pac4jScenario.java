@@ -0,0 +1,52 @@
+package r.pac4j;
+
+import r.bench.Scenario;
+import r.bench.Workload;
+import ratpack.server.RatpackServer;
+import ratpack.server.ServerConfig;
+
+import java.net.URI;
+
+/**
+ * pac4j example started with {@link Main#definition} on an ephemeral port.
+ * <p>
+ * Every iteration is a session of the user: protected page redirects to the login page, user logs in with the form
+ * client, admin page is accessed twice, so the second access uses {@link ProfileCache}, then user logs out.
+ * Static asset is served with the iteration, as browsers would do.
+ */
+public class Pac4jScenario implements Scenario {
+  private RatpackServer server;
+
+  @Override
+  public String getName() {
+    return "pac4j";
+  }
+
+  @Override
+  public URI start() throws Exception {
+    server = RatpackServer.of(definition -> Main.definition(definition,
+      ServerConfig.findBaseDir("application.properties").port(0)));
+    server.start();
+    return URI.create("http://localhost:" + server.getBindPort() + "/");
+  }
+
+  @Override
+  public Workload getWorkload() {
+    return Workload.of()
+      .get("adminRedirect", "admin")
+      .get("loginPage", "login")
+      .get("asset", "styles/bootstrap.min.css")
+      // simple test authenticator accepts password equal to username
+      .get("login", "auth-callback?client_name=FormClient&username=jerry&password=jerry")
+      .get("admin", "admin")
+      .get("adminCached", "admin")
+      .get("logout", "logout");
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (server != null) {
+      server.stop();
+    }
+  }
+}
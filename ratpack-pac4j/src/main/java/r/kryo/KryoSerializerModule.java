@@ -1,30 +1,56 @@
 package r.kryo;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.factories.ReflectionSerializerFactory;
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoFactory;
 import com.esotericsoftware.kryo.pool.KryoPool;
+import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 import com.google.inject.Provides;
+import r.session.OffHeapSessionStore;
 import ratpack.guice.ConfigurableModule;
+import ratpack.session.clientside.ValueSerializer;
 
 import javax.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.Deflater;
 
+/**
+ * Provides pool of configured Kryo instances and binds {@link KryoValueSerializer} as session {@link ValueSerializer}.
+ * <p>
+ * The module has to be added after {@code ClientSideSessionModule}, so its binding overrides the default Java serializer.
+ * <pre>{@code
+ *   b.module(KryoSerializerModule.class, config -> config
+ *     .register(HashMap.class)
+ *     .register(HttpProfile.class)
+ *     .setReferences(false)
+ *     .setCompressionThreshold(512)
+ *     .setSpillThreshold(2048)
+ *   );
+ * }</pre>
+ */
 public class KryoSerializerModule extends ConfigurableModule<KryoSerializerModule.Config> {
 
   @Override
   protected void configure() {
-
+    bind(KryoValueSerializer.class);
+    bind(ValueSerializer.class).to(KryoValueSerializer.class);
   }
 
   @Provides
   @Singleton
-  KryoPool provideKryoPool() {
+  KryoPool provideKryoPool(Config config) {
+    byte[] dictionary = compressionDictionary(config);
     KryoFactory kryoFactory = new KryoFactory() {
       @Override
       public Kryo create() {
-        Kryo kryo = new Kryo();
-        // configuration comes here
-        return kryo;
+        return configure(new PooledKryo(config, dictionary), config);
       }
     };
     // build pool with soft references
@@ -32,10 +58,269 @@ public class KryoSerializerModule extends ConfigurableModule<KryoSerializerModul
     return kryoPool;
   }
 
+  private static Kryo configure(Kryo kryo, Config config) {
+    kryo.setReferences(config.isReferences());
+    kryo.setRegistrationRequired(config.isRegistrationRequired());
+    config.getRegistrations().forEach(registration -> {
+      if (registration.serializer == null) {
+        kryo.register(registration.type);
+      } else {
+        kryo.register(registration.type, ReflectionSerializerFactory.makeSerializer(kryo, registration.serializer, registration.type));
+      }
+    });
+    return kryo;
+  }
+
+  /**
+   * Preset Deflate dictionary is the configured one, or serialized compression samples one after another. Samples are
+   * serialized as session values are, so the dictionary has the same class ids, field order and strings as the values.
+   * Deflate looks back at most {@value #MAX_DICTIONARY_SIZE} bytes, so only the end of longer dictionary is kept.
+   */
+  static byte[] compressionDictionary(Config config) {
+    if (config.getCompressionDictionary().length > 0 || config.getCompressionSamples().isEmpty()) {
+      return config.getCompressionDictionary();
+    }
+    Kryo kryo = configure(new Kryo(), config);
+    ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+    Output output = new Output(config.getBufferSize(), -1);
+    for (Object sample : config.getCompressionSamples()) {
+      output.clear();
+      kryo.writeClassAndObject(output, sample);
+      dictionary.write(output.getBuffer(), 0, output.position());
+    }
+    byte[] bytes = dictionary.toByteArray();
+    if (bytes.length > MAX_DICTIONARY_SIZE) {
+      return Arrays.copyOfRange(bytes, bytes.length - MAX_DICTIONARY_SIZE, bytes.length);
+    }
+    return bytes;
+  }
+
+  @Provides
+  @Singleton
+  OffHeapSessionStore provideSessionStore(Config config) {
+    return new OffHeapSessionStore(config.getSessionStore());
+  }
+
+  private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
   public static class Config {
     /**
      * Used to get kryo serializer configuration
      */
     public static final TypeToken<Config> KRYO_SERIALIZER_CONFIG = TypeToken.of(Config.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+    public static final int DEFAULT_SPILL_THRESHOLD = -1;
+
+    private final List<Registration> registrations = new LinkedList<>();
+    private final List<Object> compressionSamples = new LinkedList<>();
+    private boolean references = true;
+    private boolean registrationRequired = false;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private byte[] compressionDictionary = new byte[0];
+    private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private OffHeapSessionStore.Config sessionStore = new OffHeapSessionStore.Config();
+
+    /**
+     * Registers class, so its id is written instead of fully qualified class name.
+     * <p>
+     * Ids are assigned in order of registration. All application instances sharing sessions
+     * have to register the same classes in the same order.
+     *
+     * @param type class to register
+     * @return this
+     */
+    public Config register(Class<?> type) {
+      registrations.add(new Registration(type, null));
+      return this;
+    }
+
+    /**
+     * Registers class with custom serializer.
+     * <p>
+     * Serializer is created for every Kryo instance in the pool, so serializer does not have to be thread safe.
+     *
+     * @param type class to register
+     * @param serializer class of serializer for the {@code type}
+     * @return this
+     */
+    @SuppressWarnings("rawtypes")
+    public Config register(Class<?> type, Class<? extends Serializer> serializer) {
+      registrations.add(new Registration(type, serializer));
+      return this;
+    }
+
+    public List<Registration> getRegistrations() {
+      return ImmutableList.copyOf(registrations);
+    }
+
+    /**
+     * @return {@code true} if references to the same object are tracked, default {@code true}
+     */
+    public boolean isReferences() {
+      return references;
+    }
+
+    /**
+     * Turn off reference tracking if session values have no shared nor circular references. Serialization is faster.
+     *
+     * @param references {@code true} if references are tracked
+     * @return this
+     */
+    public Config setReferences(boolean references) {
+      this.references = references;
+      return this;
+    }
+
+    /**
+     * @return {@code true} if unregistered classes are rejected, default {@code false}
+     */
+    public boolean isRegistrationRequired() {
+      return registrationRequired;
+    }
+
+    public Config setRegistrationRequired(boolean registrationRequired) {
+      this.registrationRequired = registrationRequired;
+      return this;
+    }
+
+    /**
+     * @return size of reusable input and output buffer of every Kryo instance in the pool
+     */
+    public int getBufferSize() {
+      return bufferSize;
+    }
+
+    public Config setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    /**
+     * @return size of serialized value, in bytes, from which values are compressed. Negative if compression is off
+     */
+    public int getCompressionThreshold() {
+      return compressionThreshold;
+    }
+
+    /**
+     * Values smaller than threshold are not compressed, compression would not make cookie smaller.
+     *
+     * @param compressionThreshold size in bytes, negative value turns compression off
+     * @return this
+     */
+    public Config setCompressionThreshold(int compressionThreshold) {
+      this.compressionThreshold = compressionThreshold;
+      return this;
+    }
+
+    /**
+     * @return Deflate compression level, default {@link Deflater#BEST_SPEED}
+     */
+    public int getCompressionLevel() {
+      return compressionLevel;
+    }
+
+    public Config setCompressionLevel(int compressionLevel) {
+      this.compressionLevel = compressionLevel;
+      return this;
+    }
+
+    /**
+     * @return preset Deflate dictionary, empty if the dictionary is built from compression samples or not used
+     */
+    public byte[] getCompressionDictionary() {
+      return compressionDictionary;
+    }
+
+    /**
+     * Preset dictionary makes small values compress well, if it has sequences of bytes the values have. Class names
+     * are not among them, Kryo writes registered classes as ids, so the dictionary is best built from serialized
+     * sample values, see {@link #addCompressionSample(Object)}. All application instances sharing sessions
+     * have to use the same dictionary, otherwise they can not read compressed values.
+     *
+     * @param compressionDictionary dictionary, empty array if no dictionary is used
+     * @return this
+     */
+    public Config setCompressionDictionary(byte[] compressionDictionary) {
+      this.compressionDictionary = compressionDictionary;
+      return this;
+    }
+
+    public List<Object> getCompressionSamples() {
+      return ImmutableList.copyOf(compressionSamples);
+    }
+
+    /**
+     * Adds typical session value, i.e. profile of the logged in user. Serialized samples make the preset Deflate
+     * dictionary, unless the dictionary is set explicitly. The most common value should be added last.
+     * <p>
+     * All application instances sharing sessions have to add the same samples in the same order.
+     *
+     * @param sample session value
+     * @return this
+     */
+    public Config addCompressionSample(Object sample) {
+      compressionSamples.add(Objects.requireNonNull(sample));
+      return this;
+    }
+
+    /**
+     * @return size of encoded value, in bytes, from which values are kept in {@link OffHeapSessionStore}. Negative if off
+     */
+    public int getSpillThreshold() {
+      return spillThreshold;
+    }
+
+    /**
+     * Values bigger than threshold, after compression, are kept on the server and the cookie carries only their id.
+     * <p>
+     * Spilled values live only on the instance that stored them, so requests of the session have to be routed
+     * to the same instance (sticky sessions). Store them in memory mapped file to survive restarts.
+     *
+     * @param spillThreshold size in bytes, negative value keeps all values in the cookie
+     * @return this
+     */
+    public Config setSpillThreshold(int spillThreshold) {
+      this.spillThreshold = spillThreshold;
+      return this;
+    }
+
+    /**
+     * @return configuration of the store of spilled values
+     */
+    public OffHeapSessionStore.Config getSessionStore() {
+      return sessionStore;
+    }
+
+    public Config setSessionStore(OffHeapSessionStore.Config sessionStore) {
+      this.sessionStore = sessionStore;
+      return this;
+    }
+
+    /**
+     * Class registered in Kryo with optional serializer.
+     */
+    @SuppressWarnings("rawtypes")
+    public static class Registration {
+      private final Class<?> type;
+      private final Class<? extends Serializer> serializer;
+
+      Registration(Class<?> type, Class<? extends Serializer> serializer) {
+        this.type = type;
+        this.serializer = serializer;
+      }
+
+      public Class<?> getType() {
+        return type;
+      }
+
+      public Class<? extends Serializer> getSerializer() {
+        return serializer;
+      }
+    }
   }
 }
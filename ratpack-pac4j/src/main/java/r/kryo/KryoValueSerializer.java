@@ -6,57 +6,216 @@ import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoPool;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.ByteBufUtil;
-import io.netty.util.CharsetUtil;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.handler.codec.base64.Base64;
+import io.netty.handler.codec.base64.Base64Dialect;
+import r.metrics.Histogram;
+import r.metrics.MetricRegistry;
+import r.session.OffHeapSessionStore;
+import ratpack.handling.Context;
 import ratpack.registry.Registry;
+import ratpack.session.clientside.ValueSerializer;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
-import java.nio.CharBuffer;
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
-public class KryoValueSerializer {
-  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder();
-  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+/**
+ * Serializes session values with Kryo into URL safe Base64 encoded buffers.
+ * <p>
+ * Kryo output is written directly into a pooled {@link ByteBuf} and Base64 encoded into the second pooled buffer,
+ * there are no intermediate {@code byte[]} nor {@code String} copies. Deserialization decodes from the buffer as well.
+ * <p>
+ * Kryo instances provided by {@link KryoSerializerModule} carry their own reusable {@link Output} and {@link Input}.
+ * <p>
+ * Serialized value starts with one byte codec tag. Values above {@link KryoSerializerModule.Config#getCompressionThreshold()}
+ * are compressed with Deflate, with preset dictionary built from sample values if they are configured, which keeps cookies
+ * small.
+ * <p>
+ * Values still bigger than {@link KryoSerializerModule.Config#getSpillThreshold()} are put in {@link OffHeapSessionStore}
+ * and only their id is written. Value that is not found in the store, because it expired or was evicted,
+ * is deserialized as {@code null}, the same as missing session entry. Session is written as a whole, so when it is
+ * written again in the request that loaded stored values, the new cookie refers to values stored again and the loaded
+ * values are released when the request completes. They expire after the grace period of the store, so concurrent
+ * requests with the previous cookie still find them.
+ * <p>
+ * Times are recorded as {@code session_encode_seconds} and {@code session_decode_seconds} with label {@code step="value"}.
+ * <p>
+ * {@link KryoSerializerModule} binds it as {@link ValueSerializer}, so client side session module uses it
+ * instead of Java serialization.
+ */
+public class KryoValueSerializer implements ValueSerializer {
+  private static final Base64Dialect DIALECT = Base64Dialect.URL_SAFE;
+  private static final Histogram ENCODE_TIME = MetricRegistry.global()
+    .histogram("session_encode_seconds", "Session value serialization and cookie sealing", "step", "value");
+  private static final Histogram DECODE_TIME = MetricRegistry.global()
+    .histogram("session_decode_seconds", "Session cookie verification and value deserialization", "step", "value");
 
+  @Override
   public ByteBuf serialize(Registry registry, ByteBufAllocator bufAllocator, Object value) throws Exception {
     Objects.requireNonNull(value);
+    long start = System.nanoTime();
+    loadedValues(registry).ifPresent(loaded -> loaded.written = true);
     KryoPool kryoPool = registry.get(KryoPool.class);
     Kryo kryo = kryoPool.borrow();
+    ByteBuf serialized = bufAllocator.buffer();
+    ByteBuf payload = serialized;
     try {
-      ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      Output output = new Output(stream);
+      PooledKryo pooledKryo = pooled(kryo);
+      serialized.writeByte(ValueCodec.TAG_RAW);
+      Output output = pooledKryo.getOutput();
+      output.setOutputStream(new ByteBufOutputStream(serialized));
       kryo.writeClassAndObject(output, value);
-      output.close();
-      byte[] bytes = stream.toByteArray();
-      String encoded = ENCODER.encodeToString(bytes);
-      return ByteBufUtil.encodeString(bufAllocator, CharBuffer.wrap(encoded), CharsetUtil.UTF_8);
-    } catch (Exception ex) {
-      throw ex;
+      output.flush();
+      output.setOutputStream(null);
+      payload = pooledKryo.getCodec().encode(serialized, bufAllocator);
+      if (pooledKryo.getSpillThreshold() >= 0 && payload.readableBytes() > pooledKryo.getSpillThreshold()) {
+        return spill(registry, bufAllocator, payload);
+      }
+      // encoded buffer is allocated with the allocator of the payload buffer
+      return Base64.encode(payload, false, DIALECT);
     } finally {
+      if (payload != serialized) {
+        payload.release();
+      }
+      serialized.release();
       kryoPool.release(kryo);
+      ENCODE_TIME.recordSince(start);
     }
   }
 
+  @Override
   public Object deserialize(Registry registry, String value) throws Exception {
-    if (value == null || value.isEmpty()) {
+    return deserialize(registry, (CharSequence) value);
+  }
+
+  public Object deserialize(Registry registry, CharSequence value) throws Exception {
+    if (value == null || value.length() == 0) {
+      return null;
+    }
+    // Base64 alphabet is ASCII, so every char is a single byte
+    ByteBuf encoded = registry.get(ByteBufAllocator.class).buffer(value.length());
+    try {
+      for (int i = 0; i < value.length(); i++) {
+        encoded.writeByte(value.charAt(i));
+      }
+      return deserialize(registry, encoded);
+    } finally {
+      encoded.release();
+    }
+  }
+
+  /**
+   * Deserializes Base64 encoded value. The {@code encoded} buffer is read but not released.
+   *
+   * @param registry registry with {@link KryoPool}
+   * @param encoded URL safe Base64 encoded value
+   * @return deserialized value or {@code null} if buffer is empty
+   * @throws Exception any
+   */
+  public Object deserialize(Registry registry, ByteBuf encoded) throws Exception {
+    if (encoded == null || !encoded.isReadable()) {
       return null;
     }
+    long start = System.nanoTime();
     KryoPool kryoPool = registry.get(KryoPool.class);
     Kryo kryo = kryoPool.borrow();
+    ByteBuf decoded = Base64.decode(encoded, DIALECT);
+    ByteBuf stored = null;
+    ByteBuf payload = null;
     try {
-      byte[] bytes = DECODER.decode(value);
-      ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
-      Input input = new Input(stream);
+      if (!decoded.isReadable()) {
+        return null;
+      }
+      PooledKryo pooledKryo = pooled(kryo);
+      ByteBuf value = decoded;
+      if (decoded.getByte(decoded.readerIndex()) == ValueCodec.TAG_STORED) {
+        stored = load(registry, decoded);
+        if (stored == null) {
+          return null;
+        }
+        value = stored;
+      }
+      payload = pooledKryo.getCodec().decode(value, value.alloc());
+      Input input = pooledKryo.getInput();
+      input.setInputStream(new ByteBufInputStream(payload));
       Object obj = kryo.readClassAndObject(input);
-      input.close();
+      input.setInputStream(null);
       return obj;
-    } catch (Exception ex) {
-      throw ex;
     } finally {
+      if (payload != null && payload != decoded && payload != stored) {
+        payload.release();
+      }
+      if (stored != null) {
+        stored.release();
+      }
+      decoded.release();
       kryoPool.release(kryo);
+      DECODE_TIME.recordSince(start);
+    }
+  }
+
+  /**
+   * Puts encoded value in the store under new id.
+   */
+  private static ByteBuf spill(Registry registry, ByteBufAllocator bufAllocator, ByteBuf payload) {
+    String id = registry.get(OffHeapSessionStore.class).put(payload);
+    ByteBuf reference = bufAllocator.buffer(1 + id.length());
+    try {
+      reference.writeByte(ValueCodec.TAG_STORED);
+      reference.writeBytes(id.getBytes(StandardCharsets.US_ASCII));
+      return Base64.encode(reference, false, DIALECT);
+    } finally {
+      reference.release();
+    }
+  }
+
+  private static ByteBuf load(Registry registry, ByteBuf reference) {
+    String id = reference.toString(reference.readerIndex() + 1, reference.readableBytes() - 1, StandardCharsets.US_ASCII);
+    OffHeapSessionStore store = registry.get(OffHeapSessionStore.class);
+    ByteBuf value = store.get(id, reference.alloc());
+    if (value != null && registry instanceof Context) {
+      Context ctx = (Context) registry;
+      LoadedValues loaded = ctx.getRequest().maybeGet(LoadedValues.class).orElseGet(() -> {
+        LoadedValues created = new LoadedValues();
+        ctx.getRequest().add(LoadedValues.class, created);
+        ctx.onClose(outcome -> created.release(store));
+        return created;
+      });
+      loaded.ids.add(id);
+    }
+    return value;
+  }
+
+  private static Optional<LoadedValues> loadedValues(Registry registry) {
+    if (registry instanceof Context) {
+      return ((Context) registry).getRequest().maybeGet(LoadedValues.class);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Ids of stored values loaded by the request. If the session is written in the same request, every value
+   * is serialized again, so values under these ids are referenced only by the previous cookie.
+   */
+  private static class LoadedValues {
+    private final List<String> ids = new ArrayList<>();
+    private volatile boolean written;
+
+    private void release(OffHeapSessionStore store) {
+      if (written) {
+        ids.forEach(store::release);
+      }
+    }
+  }
+
+  private static PooledKryo pooled(Kryo kryo) {
+    if (!(kryo instanceof PooledKryo)) {
+      throw new IllegalStateException("KryoPool has to be provided by " + KryoSerializerModule.class.getName());
     }
+    return (PooledKryo) kryo;
   }
 }
@@ -0,0 +1,44 @@
+package r.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo instance kept in the {@link com.esotericsoftware.kryo.pool.KryoPool} together with its own
+ * {@link Output} and {@link Input}.
+ * <p>
+ * Buffers are reused by every serialization done with the borrowed instance, so they are not allocated on every call.
+ * Only the thread that borrowed the instance can use its buffers.
+ * <p>
+ * Instance has its own {@link ValueCodec} for compression of serialized values.
+ */
+class PooledKryo extends Kryo {
+  private final Output output;
+  private final Input input;
+  private final ValueCodec codec;
+  private final int spillThreshold;
+
+  PooledKryo(KryoSerializerModule.Config config, byte[] dictionary) {
+    this.output = new Output(config.getBufferSize());
+    this.input = new Input(config.getBufferSize());
+    this.codec = new ValueCodec(config, dictionary);
+    this.spillThreshold = config.getSpillThreshold();
+  }
+
+  Output getOutput() {
+    return output;
+  }
+
+  Input getInput() {
+    return input;
+  }
+
+  ValueCodec getCodec() {
+    return codec;
+  }
+
+  int getSpillThreshold() {
+    return spillThreshold;
+  }
+}
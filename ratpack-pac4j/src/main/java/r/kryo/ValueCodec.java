@@ -0,0 +1,128 @@
+package r.kryo;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression of serialized session values.
+ * <p>
+ * Every value starts with one byte codec tag. Values shorter than the compression threshold, or values that do not
+ * get smaller, are stored as they are with {@link #TAG_RAW} tag. Bigger values are compressed with Deflate, with preset
+ * dictionary if it is configured, and stored with {@link #TAG_DEFLATE} tag.
+ * <p>
+ * Codec keeps its own {@link Deflater}, {@link Inflater} and scratch buffers, so it is not thread safe.
+ * Every {@link PooledKryo} has its own codec.
+ */
+class ValueCodec {
+  static final byte TAG_RAW = 0;
+  static final byte TAG_DEFLATE = 1;
+  // value is kept in the session store, tag is followed by its id. Handled by KryoValueSerializer, not by the codec.
+  static final byte TAG_STORED = 2;
+
+  private static final int CHUNK_SIZE = 512;
+
+  private final int threshold;
+  private final byte[] dictionary;
+  private final Deflater deflater;
+  private final Inflater inflater = new Inflater();
+  private final byte[] chunk = new byte[CHUNK_SIZE];
+  private byte[] scratch = new byte[CHUNK_SIZE];
+
+  ValueCodec(KryoSerializerModule.Config config, byte[] dictionary) {
+    this.threshold = config.getCompressionThreshold();
+    this.dictionary = dictionary;
+    this.deflater = new Deflater(config.getCompressionLevel());
+  }
+
+  /**
+   * Compresses value if it is bigger than threshold.
+   *
+   * @param serialized tag {@link #TAG_RAW} followed by serialized value
+   * @param allocator allocator of the compressed buffer
+   * @return {@code serialized} buffer if value is not compressed, otherwise new buffer with {@link #TAG_DEFLATE} tag
+   */
+  ByteBuf encode(ByteBuf serialized, ByteBufAllocator allocator) {
+    int length = serialized.readableBytes() - 1;
+    if (threshold < 0 || length < threshold) {
+      return serialized;
+    }
+    byte[] input = scratch(length);
+    serialized.getBytes(serialized.readerIndex() + 1, input, 0, length);
+
+    deflater.reset();
+    if (dictionary.length > 0) {
+      deflater.setDictionary(dictionary);
+    }
+    deflater.setInput(input, 0, length);
+    deflater.finish();
+
+    ByteBuf compressed = allocator.buffer(length / 2 + 1);
+    compressed.writeByte(TAG_DEFLATE);
+    while (!deflater.finished()) {
+      int written = deflater.deflate(chunk);
+      compressed.writeBytes(chunk, 0, written);
+      if (compressed.readableBytes() > length) {
+        // compression does not pay off
+        compressed.release();
+        return serialized;
+      }
+    }
+    return compressed;
+  }
+
+  /**
+   * Decompresses value if it has {@link #TAG_DEFLATE} tag.
+   *
+   * @param encoded tag followed by value
+   * @param allocator allocator of the decompressed buffer
+   * @return {@code encoded} buffer positioned after the tag if value is not compressed, otherwise new decompressed buffer
+   * @throws DataFormatException if compressed value is corrupted
+   */
+  ByteBuf decode(ByteBuf encoded, ByteBufAllocator allocator) throws DataFormatException {
+    byte tag = encoded.readByte();
+    if (tag == TAG_RAW) {
+      return encoded;
+    }
+    if (tag != TAG_DEFLATE) {
+      throw new DataFormatException("Unknown session value codec: " + tag);
+    }
+    int length = encoded.readableBytes();
+    byte[] input = scratch(length);
+    encoded.readBytes(input, 0, length);
+
+    inflater.reset();
+    inflater.setInput(input, 0, length);
+    ByteBuf decompressed = allocator.buffer(length * 3);
+    try {
+      while (!inflater.finished()) {
+        int read = inflater.inflate(chunk);
+        if (read == 0) {
+          if (inflater.needsDictionary()) {
+            if (dictionary.length == 0) {
+              throw new DataFormatException("Session value compressed with preset dictionary");
+            }
+            inflater.setDictionary(dictionary);
+          } else if (inflater.needsInput()) {
+            throw new DataFormatException("Truncated session value");
+          }
+        }
+        decompressed.writeBytes(chunk, 0, read);
+      }
+      return decompressed;
+    } catch (DataFormatException ex) {
+      decompressed.release();
+      throw ex;
+    }
+  }
+
+  private byte[] scratch(int length) {
+    if (scratch.length < length) {
+      scratch = new byte[length];
+    }
+    return scratch;
+  }
+}
@@ -0,0 +1,54 @@
+package r.pac4j;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import groovy.text.markup.MarkupTemplateEngine;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import ratpack.handling.Context;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Opt-in cache of rendered templates whose output depends only on the cache key, i.e. login page without error.
+ * <p>
+ * Template is rendered once per key and the HTML is kept in a buffer shared by all responses.
+ * Pages with user specific content must not be cached.
+ * <pre>{@code
+ *   fragmentCache.render(ctx, "login", "login.gtpl", model);
+ * }</pre>
+ */
+public class FragmentCache {
+  private final Cache<String, ByteBuf> fragments;
+
+  /**
+   * @param maxSize max number of cached fragments
+   */
+  public FragmentCache(long maxSize) {
+    this.fragments = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Sends cached HTML of the key, renders template with the model if it is not cached yet.
+   *
+   * @param ctx request context
+   * @param key cache key, has to identify the model
+   * @param template template path
+   * @param model template model
+   * @throws Exception if template could not be rendered
+   */
+  public void render(Context ctx, String key, String template, Map<String, Object> model) throws Exception {
+    ByteBuf html = fragments.get(key, () -> {
+      StringWriter writer = new StringWriter();
+      ctx.get(MarkupTemplateEngine.class).createTemplateByPath(template).make(model).writeTo(writer);
+      return Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(writer.toString().getBytes(StandardCharsets.UTF_8)));
+    });
+    ctx.getResponse().contentType("text/html;charset=UTF-8").send(html.duplicate());
+  }
+
+  public void invalidateAll() {
+    fragments.invalidateAll();
+  }
+}
@@ -4,9 +4,10 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.reflect.ImmutableTypeToInstanceMap;
 import org.pac4j.http.client.FormClient;
 import org.pac4j.http.credentials.SimpleTestUsernamePasswordAuthenticator;
+import org.pac4j.http.profile.HttpProfile;
 import org.pac4j.http.profile.UsernameProfileCreator;
 import r.kryo.KryoSerializerModule;
-import r.kryo.KryoValueSerializer;
+import r.metrics.MetricsHandler;
 import ratpack.groovy.template.MarkupTemplateModule;
 import ratpack.guice.Guice;
 import ratpack.pac4j.RatpackPac4j;
@@ -16,44 +17,111 @@ import ratpack.session.SessionModule;
 import ratpack.session.clientside.ClientSideSessionModule;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import static ratpack.groovy.Groovy.groovyMarkupTemplate;
 
+/**
+ * pac4j authentication example application.
+ * <p>
+ * Server config is given to {@link #definition}, so the same application could be started by benchmark scenarios
+ * on an ephemeral port.
+ */
 public class Main {
   public static void main(String... args) throws Exception {
-    RatpackServer.start(server -> server
-      .serverConfig(ServerConfig.findBaseDir("application.properties"))
+    RatpackServer.start(server -> definition(server, ServerConfig.findBaseDir("application.properties")));
+  }
+
+  /**
+   * Defines the application.
+   *
+   * @param server server definition
+   * @param serverConfig server config, base dir has to contain templates and public assets
+   * @throws Exception if application could not be defined
+   */
+  public static void definition(RatpackServer.Definition.Builder server, ServerConfig.Builder serverConfig) throws Exception {
+    // profiles of authenticated sessions, repeated requests do not deserialize the profile from the session
+    ProfileCache profileCache = new ProfileCache("ratpack_session", 10_000, Duration.ofMinutes(5));
+    // public assets with strong ETags and gzipped variants, served from memory
+    StaticAssets staticAssets = new StaticAssets("public", Duration.ofDays(30));
+    FragmentCache fragmentCache = new FragmentCache(100);
+    server
+      .serverConfig(serverConfig)
         .registry(Guice.registry(b -> b
-          .module(MarkupTemplateModule.class)
+          // templates are compiled once, at startup, and kept compiled
+          .module(MarkupTemplateModule.class, config -> config.setCacheTemplates(true))
+          .bindInstance(new TemplateWarmup("templates"))
+          .bindInstance(staticAssets)
           .module(SessionModule.class)
           .module(ClientSideSessionModule.class, config -> {
             config.setSecretKey("aaaaaaaaaaaaaaaa");
             // required to share the same session between app instances (in cluster)
             config.setSecretToken("bbbbbb");
           })
+          // added after the session module, so its ValueSerializer binding replaces Java serialization
+          // registered classes are written as ids instead of class names, the order has to be the same on every instance
+          .module(KryoSerializerModule.class, config -> config
+            .register(HashMap.class)
+            .register(ArrayList.class)
+            .register(HttpProfile.class)
+            // serialized sample profile is the preset Deflate dictionary of compressed values
+            .addCompressionSample(sampleProfile())
+            // values that would not fit in the cookie are kept off heap on this instance, cookie carries their ids
+            .setSpillThreshold(2048)
+          )
         ))
         .handlers(chain -> chain
+          // latency by route and session encoding times, scraped at /metrics
+          .handler(new MetricsHandler())
+          .handler(staticAssets)
           .handler(RatpackPac4j.callback(new FormClient("/login", new SimpleTestUsernamePasswordAuthenticator(), new UsernameProfileCreator())))
           .get(ctx -> {
             ctx.redirect("admin");
           })
           .prefix("admin", p -> p
+            .handler(profileCache.lookup())
             .handler(RatpackPac4j.auth(FormClient.class))
+            .handler(profileCache.store())
             .get(ctx -> {
               ctx.render("admin page ACCESSED");
             })
           )
+          .get("logout", ctx -> {
+            profileCache.invalidate(ctx);
+            RatpackPac4j.logout(ctx).then(() -> ctx.redirect("login"));
+          })
           .get("login", ctx -> {
-            ctx.render(groovyMarkupTemplate("login.gtpl", model -> model
-              .put("title", "Login")
-              .put("action", "/auth-callback")
-              .put("method", "get")
-              .put("buttonText", "Login")
-              .put("error", ctx.getRequest().getQueryParams().getOrDefault("error", ""))
-            ));
+            String error = ctx.getRequest().getQueryParams().getOrDefault("error", "");
+            if (error.isEmpty()) {
+              // login page without error is the same for everyone
+              fragmentCache.render(ctx, "login", "login.gtpl", loginModel(error));
+            } else {
+              ctx.render(groovyMarkupTemplate(loginModel(error), "login.gtpl"));
+            }
           })
           .assets("public")
-        )
-    );
+        );
+  }
+
+  /**
+   * @return profile as created by {@link UsernameProfileCreator} on login
+   */
+  private static HttpProfile sampleProfile() {
+    HttpProfile profile = new HttpProfile();
+    profile.setId("username");
+    profile.addAttribute("username", "username");
+    return profile;
+  }
+
+  private static Map<String, Object> loginModel(String error) {
+    return ImmutableMap.<String, Object>builder()
+      .put("title", "Login")
+      .put("action", "/auth-callback")
+      .put("method", "get")
+      .put("buttonText", "Login")
+      .put("error", error)
+      .build();
   }
 }
@@ -0,0 +1,118 @@
+package r.pac4j;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.netty.handler.codec.http.Cookie;
+import org.pac4j.core.profile.UserProfile;
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side cache of authenticated user profiles, keyed by SHA-256 of the session cookies.
+ * <p>
+ * {@link #lookup()} puts cached profile in the request registry before {@code RatpackPac4j.auth}, so authentication
+ * of the repeated request does not read the profile from the session and does not deserialize it.
+ * {@link #store()} caches the profile verified by {@code RatpackPac4j.auth}.
+ * <p>
+ * Every change of the session changes its cookie and the cache key, so profile from the stale session is never returned.
+ * Entries expire after TTL and the least recently used ones are evicted when the cache is full.
+ * <pre>{@code
+ *   .prefix("admin", p -> p
+ *     .handler(profileCache.lookup())
+ *     .handler(RatpackPac4j.auth(FormClient.class))
+ *     .handler(profileCache.store())
+ *     ...
+ *   )
+ *   .get("logout", ctx -> {
+ *     profileCache.invalidate(ctx);
+ *     ...
+ *   })
+ * }</pre>
+ */
+public class ProfileCache {
+  private final String sessionName;
+  private final Cache<String, UserProfile> profiles;
+
+  /**
+   * Creates profile cache.
+   *
+   * @param sessionName name of the session cookie, cookies of the partitioned session start with it
+   * @param maxSize max number of cached profiles
+   * @param ttl time after which cached profile is read from the session again
+   */
+  public ProfileCache(String sessionName, long maxSize, Duration ttl) {
+    this.sessionName = sessionName;
+    this.profiles = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+      .build();
+  }
+
+  /**
+   * @return handler that adds cached profile of the session to the request registry
+   */
+  public Handler lookup() {
+    return ctx -> {
+      key(ctx)
+        .map(profiles::getIfPresent)
+        .ifPresent(profile -> ctx.getRequest().add(UserProfile.class, profile));
+      ctx.next();
+    };
+  }
+
+  /**
+   * @return handler that caches profile of the authenticated request
+   */
+  public Handler store() {
+    return ctx -> {
+      Optional<UserProfile> profile = ctx.getRequest().maybeGet(UserProfile.class);
+      if (profile.isPresent()) {
+        key(ctx).ifPresent(key -> profiles.put(key, profile.get()));
+      }
+      ctx.next();
+    };
+  }
+
+  /**
+   * Removes profile of the request's session, i.e. on logout.
+   *
+   * @param ctx request context
+   */
+  public void invalidate(Context ctx) {
+    key(ctx).ifPresent(profiles::invalidate);
+  }
+
+  public long size() {
+    return profiles.size();
+  }
+
+  /**
+   * @return hash of session cookies, empty if request has no session
+   */
+  private Optional<String> key(Context ctx) {
+    // sorted by name, so partitions of the session are always hashed in the same order
+    SortedMap<String, String> session = new TreeMap<>();
+    for (Cookie cookie : ctx.getRequest().getCookies()) {
+      if (cookie.getName().startsWith(sessionName)) {
+        session.put(cookie.getName(), cookie.getValue());
+      }
+    }
+    if (session.isEmpty()) {
+      return Optional.empty();
+    }
+    Hasher hasher = Hashing.sha256().newHasher();
+    session.forEach((name, value) -> hasher
+      .putString(name, StandardCharsets.US_ASCII)
+      .putString(value, StandardCharsets.US_ASCII));
+    return Optional.of(hasher.hash().toString());
+  }
+}
@@ -0,0 +1,162 @@
+package r.pac4j;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import ratpack.file.MimeTypes;
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import ratpack.http.Response;
+import ratpack.server.ServerConfig;
+import ratpack.server.Service;
+import ratpack.server.StartEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves static assets from memory, with precomputed strong ETags, pre-gzipped variants and long lived cache headers.
+ * <p>
+ * Assets are read when the server starts. Their ETag is SHA-1 of the content, so it does not change between restarts nor
+ * between servers of the cluster. Text assets (scripts, styles) are gzipped once and sent as they are to clients
+ * accepting gzip. Gzipped variant is a different representation, so its strong ETag has {@code -gz} suffix.
+ * Requests with {@code If-None-Match} matching ETag of either variant get {@code 304 Not Modified}, the content is the same.
+ * <p>
+ * Requests for files that are not preloaded, i.e. added after start or bigger than {@link #MAX_FILE_SIZE}, are passed
+ * to the next handler, usually {@code assets(path)}.
+ * <pre>{@code
+ *   StaticAssets assets = new StaticAssets("public", Duration.ofDays(30));
+ *   b.bindInstance(assets);
+ *   chain.handler(assets).assets("public");
+ * }</pre>
+ */
+public class StaticAssets implements Handler, Service {
+  public static final int MAX_FILE_SIZE = 1024 * 1024;
+
+  private final String path;
+  private final String cacheControl;
+  private volatile Map<String, Asset> assets = ImmutableMap.of();
+
+  /**
+   * @param path directory of assets, relative to the base dir
+   * @param maxAge time clients cache assets without revalidation
+   */
+  public StaticAssets(String path, Duration maxAge) {
+    this.path = path;
+    this.cacheControl = "public, max-age=" + maxAge.getSeconds();
+  }
+
+  @Override
+  public void onStart(StartEvent event) throws Exception {
+    Path dir = event.getRegistry().get(ServerConfig.class).getBaseDir().file(path);
+    MimeTypes mimeTypes = event.getRegistry().get(MimeTypes.class);
+    ImmutableMap.Builder<String, Asset> builder = ImmutableMap.builder();
+    if (Files.isDirectory(dir)) {
+      try (Stream<Path> files = Files.walk(dir)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          if (Files.isRegularFile(file) && Files.size(file) <= MAX_FILE_SIZE) {
+            String name = dir.relativize(file).toString().replace('\\', '/');
+            builder.put(name, Asset.of(Files.readAllBytes(file), mimeTypes.getContentType(name)));
+          }
+        }
+      }
+    }
+    assets = builder.build();
+  }
+
+  @Override
+  public void handle(Context ctx) throws Exception {
+    Asset asset = ctx.getRequest().getMethod().isGet() ? assets.get(ctx.getRequest().getPath()) : null;
+    if (asset == null) {
+      ctx.next();
+      return;
+    }
+    Response response = ctx.getResponse();
+    String acceptEncoding = ctx.getRequest().getHeaders().get("Accept-Encoding");
+    boolean gzip = asset.gzipped != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+    response.getHeaders().set("ETag", gzip ? asset.gzippedEtag : asset.etag);
+    response.getHeaders().set("Cache-Control", cacheControl);
+    if (asset.gzipped != null) {
+      response.getHeaders().set("Vary", "Accept-Encoding");
+    }
+    if (matches(ctx.getRequest().getHeaders().get("If-None-Match"), asset)) {
+      response.status(304).send();
+      return;
+    }
+    response.contentType(asset.contentType);
+    if (gzip) {
+      response.getHeaders().set("Content-Encoding", "gzip");
+      response.send(asset.gzipped.duplicate());
+    } else {
+      response.send(asset.content.duplicate());
+    }
+  }
+
+  private static boolean matches(String ifNoneMatch, Asset asset) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String value = candidate.trim();
+      if (value.equals(asset.etag) || value.equals(asset.gzippedEtag) || value.equals("*")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Asset content kept in buffers that are shared by all responses, every response sends its duplicate.
+   */
+  private static class Asset {
+    private final ByteBuf content;
+    private final ByteBuf gzipped;
+    private final String etag;
+    private final String gzippedEtag;
+    private final String contentType;
+
+    private Asset(ByteBuf content, ByteBuf gzipped, String etag, String gzippedEtag, String contentType) {
+      this.content = content;
+      this.gzipped = gzipped;
+      this.etag = etag;
+      this.gzippedEtag = gzippedEtag;
+      this.contentType = contentType;
+    }
+
+    private static Asset of(byte[] content, String contentType) throws Exception {
+      String hash = Hashing.sha1().hashBytes(content).toString();
+      byte[] gzipped = isCompressible(contentType) ? gzip(content) : null;
+      boolean gzippedSmaller = gzipped != null && gzipped.length < content.length;
+      return new Asset(
+        shared(content),
+        gzippedSmaller ? shared(gzipped) : null,
+        "\"" + hash + "\"",
+        gzippedSmaller ? "\"" + hash + "-gz\"" : null,
+        contentType
+      );
+    }
+
+    private static boolean isCompressible(String contentType) {
+      return contentType.startsWith("text/") || contentType.contains("javascript")
+        || contentType.contains("json") || contentType.contains("svg");
+    }
+
+    private static byte[] gzip(byte[] content) throws Exception {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2);
+      try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+        gzip.write(content);
+      }
+      return bytes.toByteArray();
+    }
+
+    private static ByteBuf shared(byte[] content) {
+      return Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(content));
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package r.pac4j;
+
+import groovy.text.markup.MarkupTemplateEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.server.ServerConfig;
+import ratpack.server.Service;
+import ratpack.server.StartEvent;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Compiles all Groovy markup templates when the server starts.
+ * <p>
+ * With template caching turned on, the engine keeps compiled templates, so the first request of every page
+ * does not pay for compilation and later requests only execute the compiled template.
+ */
+public class TemplateWarmup implements Service {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TemplateWarmup.class);
+
+  private final String path;
+
+  /**
+   * @param path directory of templates, relative to the base dir
+   */
+  public TemplateWarmup(String path) {
+    this.path = path;
+  }
+
+  @Override
+  public void onStart(StartEvent event) throws Exception {
+    Path dir = event.getRegistry().get(ServerConfig.class).getBaseDir().file(path);
+    MarkupTemplateEngine engine = event.getRegistry().get(MarkupTemplateEngine.class);
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (Files.isRegularFile(file) && file.toString().endsWith(".gtpl")) {
+          String name = dir.relativize(file).toString().replace('\\', '/');
+          engine.createTemplateByPath(name);
+          LOGGER.debug("Compiled template {}", name);
+        }
+      }
+    }
+  }
+}
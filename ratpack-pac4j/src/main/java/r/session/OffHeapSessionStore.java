@@ -0,0 +1,474 @@
+package r.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Server side store of session values that are too big for the cookie.
+ * <p>
+ * Values are kept off heap, in one arena of {@link Config#getMaxBytes()} size, so big sessions do not add to GC pressure.
+ * The store is bounded: least recently used values are evicted when arena is full, and values not accessed for
+ * {@link Config#getTtl()} expire. Values released by {@link #release(String)} expire after {@link Config#getGracePeriod()}.
+ * <p>
+ * If {@link Config#getFile()} is set, the arena is a memory mapped file and values survive application restarts.
+ * The file is mapped and its values are recovered by the first access of any kind, not only by the first put.
+ * <p>
+ * Arena is a log of records {@code [live:1][length:4][expiresAt:8][idLength:2][id][value]} written one after another.
+ * Removed records are marked as dead, and the arena is compacted when there is no space at its end.
+ * All methods are synchronized.
+ */
+public class OffHeapSessionStore implements AutoCloseable {
+  private static final long MAGIC = 0x5241545041434b53L;
+  // magic and write position
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_HEADER_SIZE = 1 + 4 + 8 + 2;
+  private static final int ID_BYTES = 16;
+  private static final byte LIVE = 1;
+  private static final byte DEAD = 0;
+
+  private final Config config;
+  private final Clock clock;
+  private final SecureRandom random = new SecureRandom();
+  // access ordered, the eldest entry is the least recently used one
+  private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+  // released values in order of their shortened expiration, grace period is the same for all values
+  private final Queue<Released> released = new ArrayDeque<>();
+
+  private ByteBuffer arena;
+  private FileChannel channel;
+  private int writePosition = HEADER_SIZE;
+  private long liveBytes;
+
+  public OffHeapSessionStore(Config config) {
+    this(config, Clock.systemUTC());
+  }
+
+  OffHeapSessionStore(Config config, Clock clock) {
+    if (config.getMaxBytes() <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+      throw new IllegalArgumentException("Session store is too small: " + config.getMaxBytes());
+    }
+    this.config = config;
+    this.clock = clock;
+  }
+
+  /**
+   * Stores value under new random id.
+   *
+   * @param value value to store, its readable bytes are copied, buffer is not released
+   * @return id of the value, URL safe
+   */
+  public String put(ByteBuf value) {
+    byte[] bytes = new byte[ID_BYTES];
+    random.nextBytes(bytes);
+    String id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    put(id, value);
+    return id;
+  }
+
+  /**
+   * Stores value under the given id, replacing the previous one.
+   *
+   * @param id id of the value
+   * @param value value to store, its readable bytes are copied, buffer is not released
+   * @throws IllegalArgumentException if value does not fit in the store
+   */
+  public synchronized void put(String id, ByteBuf value) {
+    byte[] idBytes = id.getBytes(StandardCharsets.US_ASCII);
+    int recordLength = RECORD_HEADER_SIZE + idBytes.length + value.readableBytes();
+    if (recordLength > config.getMaxBytes() - HEADER_SIZE) {
+      throw new IllegalArgumentException("Session value is too big for the store: " + value.readableBytes());
+    }
+    ByteBuffer arena = arena();
+    remove(id);
+    evictExpired();
+    while (writePosition + recordLength > arena.capacity()) {
+      if (liveBytes + recordLength <= arena.capacity() - HEADER_SIZE) {
+        compact();
+      } else if (!evictReleased()) {
+        Iterator<Map.Entry<String, Entry>> eldest = index.entrySet().iterator();
+        Entry entry = eldest.next().getValue();
+        eldest.remove();
+        kill(entry);
+      }
+    }
+
+    int offset = writePosition;
+    long expiresAt = clock.millis() + config.getTtl().toMillis();
+    arena.put(offset, LIVE);
+    arena.putInt(offset + 1, recordLength);
+    arena.putLong(offset + 5, expiresAt);
+    arena.putShort(offset + 13, (short) idBytes.length);
+    ByteBuffer target = arena.duplicate();
+    target.position(offset + RECORD_HEADER_SIZE);
+    target.put(idBytes);
+    value.getBytes(value.readerIndex(), target);
+    writePosition += recordLength;
+    arena.putInt(8, writePosition);
+    index.put(id, new Entry(offset, recordLength, idBytes.length, expiresAt));
+    liveBytes += recordLength;
+  }
+
+  /**
+   * Gets value and prolongs its expiration.
+   *
+   * @param id id of the value
+   * @param allocator allocator of the returned buffer
+   * @return copy of the value, that has to be released by the caller, or {@code null} if value does not exist or expired
+   */
+  public synchronized ByteBuf get(String id, ByteBufAllocator allocator) {
+    recovered();
+    Entry entry = index.get(id);
+    if (entry == null) {
+      return null;
+    }
+    long now = clock.millis();
+    if (entry.expiresAt <= now) {
+      index.remove(id);
+      kill(entry);
+      return null;
+    }
+    entry.expiresAt = now + config.getTtl().toMillis();
+    arena.putLong(entry.offset + 5, entry.expiresAt);
+
+    int valueOffset = entry.offset + RECORD_HEADER_SIZE + entry.idLength;
+    int valueLength = entry.length - RECORD_HEADER_SIZE - entry.idLength;
+    ByteBuffer source = arena.duplicate();
+    source.position(valueOffset).limit(valueOffset + valueLength);
+    ByteBuf value = allocator.buffer(valueLength);
+    value.writeBytes(source);
+    return value;
+  }
+
+  /**
+   * Shortens expiration of the value to the grace period, i.e. when the session is written again and the new cookie does
+   * not refer to the value. Concurrent requests with the previous cookie still find it, and their reads prolong it
+   * as usual. Released values are evicted first when the store is full.
+   *
+   * @param id id of the value
+   */
+  public synchronized void release(String id) {
+    recovered();
+    Entry entry = index.get(id);
+    if (entry == null) {
+      return;
+    }
+    long expiresAt = clock.millis() + config.getGracePeriod().toMillis();
+    if (expiresAt < entry.expiresAt) {
+      entry.expiresAt = expiresAt;
+      arena.putLong(entry.offset + 5, expiresAt);
+      released.add(new Released(id, entry));
+    }
+  }
+
+  /**
+   * Removes value, i.e. on logout.
+   *
+   * @param id id of the value
+   */
+  public synchronized void remove(String id) {
+    recovered();
+    Entry entry = index.remove(id);
+    if (entry != null) {
+      kill(entry);
+    }
+  }
+
+  /**
+   * @return number of stored values
+   */
+  public synchronized int size() {
+    recovered();
+    return index.size();
+  }
+
+  /**
+   * @return bytes used by stored values, including record headers
+   */
+  public synchronized long getLiveBytes() {
+    recovered();
+    return liveBytes;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (arena instanceof MappedByteBuffer) {
+      ((MappedByteBuffer) arena).force();
+    }
+    if (channel != null) {
+      channel.close();
+    }
+    arena = null;
+    channel = null;
+    index.clear();
+    released.clear();
+  }
+
+  /**
+   * Arena is created with the first value, so the store costs nothing if values are never spilled.
+   */
+  private ByteBuffer arena() {
+    if (arena != null) {
+      return arena;
+    }
+    if (config.getFile() == null) {
+      arena = ByteBuffer.allocateDirect(config.getMaxBytes());
+      arena.putLong(0, MAGIC);
+      arena.putInt(8, writePosition);
+      return arena;
+    }
+    try {
+      channel = FileChannel.open(config.getFile(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      arena = channel.map(FileChannel.MapMode.READ_WRITE, 0, config.getMaxBytes());
+    } catch (IOException ex) {
+      throw new IllegalStateException("Could not map session store file " + config.getFile(), ex);
+    }
+    if (arena.getLong(0) == MAGIC) {
+      recover();
+    } else {
+      arena.putLong(0, MAGIC);
+      arena.putInt(8, writePosition);
+    }
+    return arena;
+  }
+
+  /**
+   * Maps the file of the persistent store, so values stored before restart are found. Store in direct memory
+   * is empty until the first put, so its arena is not allocated by reads.
+   */
+  private void recovered() {
+    if (arena == null && config.getFile() != null) {
+      arena();
+    }
+  }
+
+  /**
+   * Rebuilds index from live, not expired records of the mapped file. Records are indexed in order of their expiration,
+   * not of their offsets, so the least recently used values come first as if they were accessed since the start.
+   */
+  private void recover() {
+    int end = arena.getInt(8);
+    if (end < HEADER_SIZE || end > arena.capacity()) {
+      end = HEADER_SIZE;
+    }
+    long now = clock.millis();
+    Map<String, Entry> recovered = new LinkedHashMap<>();
+    int offset = HEADER_SIZE;
+    while (offset + RECORD_HEADER_SIZE <= end) {
+      int length = arena.getInt(offset + 1);
+      if (length < RECORD_HEADER_SIZE || offset + length > end) {
+        // torn write, ignore the rest of the log
+        break;
+      }
+      long expiresAt = arena.getLong(offset + 5);
+      int idLength = arena.getShort(offset + 13);
+      if (arena.get(offset) == LIVE && expiresAt > now) {
+        byte[] idBytes = new byte[idLength];
+        ByteBuffer source = arena.duplicate();
+        source.position(offset + RECORD_HEADER_SIZE);
+        source.get(idBytes);
+        recovered.put(new String(idBytes, StandardCharsets.US_ASCII), new Entry(offset, length, idLength, expiresAt));
+        liveBytes += length;
+      } else {
+        arena.put(offset, DEAD);
+      }
+      offset += length;
+    }
+    recovered.entrySet().stream()
+      .sorted(Comparator.comparingLong(entry -> entry.getValue().expiresAt))
+      .forEachOrdered(entry -> index.put(entry.getKey(), entry.getValue()));
+    writePosition = offset;
+    arena.putInt(8, writePosition);
+  }
+
+  private void evictExpired() {
+    long now = clock.millis();
+    Iterator<Map.Entry<String, Entry>> iterator = index.entrySet().iterator();
+    // ttl is the same for all values, so the least recently used values expire first
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      if (entry.expiresAt > now) {
+        break;
+      }
+      iterator.remove();
+      kill(entry);
+    }
+    // released values expire out of the order of use
+    while (!released.isEmpty() && released.peek().expiresAt <= now) {
+      evict(released.poll());
+    }
+  }
+
+  /**
+   * Released values are evicted before the least recently used ones when the store is full.
+   *
+   * @return {@code false} if there is no released value left
+   */
+  private boolean evictReleased() {
+    while (!released.isEmpty()) {
+      if (evict(released.poll())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean evict(Released value) {
+    // value may be removed, replaced or read, which prolongs it, since it was released
+    if (value.entry.expiresAt == value.expiresAt && index.remove(value.id, value.entry)) {
+      kill(value.entry);
+      return true;
+    }
+    return false;
+  }
+
+  private void kill(Entry entry) {
+    arena.put(entry.offset, DEAD);
+    liveBytes -= entry.length;
+  }
+
+  /**
+   * Moves live records to the beginning of the arena, in order of their offsets.
+   */
+  private void compact() {
+    List<Entry> entries = new ArrayList<>(index.values());
+    entries.sort(Comparator.comparingInt(entry -> entry.offset));
+    byte[] chunk = new byte[4096];
+    int target = HEADER_SIZE;
+    for (Entry entry : entries) {
+      if (entry.offset != target) {
+        // target is always lower than source, so forward copy never overwrites bytes not copied yet
+        for (int copied = 0; copied < entry.length; copied += chunk.length) {
+          int length = Math.min(chunk.length, entry.length - copied);
+          ByteBuffer source = arena.duplicate();
+          source.position(entry.offset + copied);
+          source.get(chunk, 0, length);
+          ByteBuffer destination = arena.duplicate();
+          destination.position(target + copied);
+          destination.put(chunk, 0, length);
+        }
+        entry.offset = target;
+      }
+      target += entry.length;
+    }
+    writePosition = target;
+    arena.putInt(8, writePosition);
+  }
+
+  /**
+   * Position of the live record in the arena.
+   */
+  private static class Entry {
+    private int offset;
+    private final int length;
+    private final int idLength;
+    private long expiresAt;
+
+    private Entry(int offset, int length, int idLength, long expiresAt) {
+      this.offset = offset;
+      this.length = length;
+      this.idLength = idLength;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * Value released with shortened expiration.
+   */
+  private static class Released {
+    private final String id;
+    private final Entry entry;
+    // expiration set by the release, the value is in use again if its expiration changed since
+    private final long expiresAt;
+
+    private Released(String id, Entry entry) {
+      this.id = id;
+      this.entry = entry;
+      this.expiresAt = entry.expiresAt;
+    }
+  }
+
+  public static class Config {
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+    public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofMinutes(1);
+
+    private int maxBytes = DEFAULT_MAX_BYTES;
+    private Duration ttl = DEFAULT_TTL;
+    private Duration gracePeriod = DEFAULT_GRACE_PERIOD;
+    private Path file;
+
+    /**
+     * @return size of the arena in bytes
+     */
+    public int getMaxBytes() {
+      return maxBytes;
+    }
+
+    public Config setMaxBytes(int maxBytes) {
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * @return time after which not accessed values expire
+     */
+    public Duration getTtl() {
+      return ttl;
+    }
+
+    public Config setTtl(Duration ttl) {
+      this.ttl = ttl;
+      return this;
+    }
+
+    /**
+     * @return time for which released values are kept for concurrent requests with the previous session cookie
+     */
+    public Duration getGracePeriod() {
+      return gracePeriod;
+    }
+
+    public Config setGracePeriod(Duration gracePeriod) {
+      this.gracePeriod = gracePeriod;
+      return this;
+    }
+
+    /**
+     * @return memory mapped file of the arena, {@code null} if arena is in direct memory
+     */
+    public Path getFile() {
+      return file;
+    }
+
+    /**
+     * Sessions survive restarts if arena is mapped to the file. The file size is equal to {@link #getMaxBytes()}.
+     *
+     * @param file path to the file
+     * @return this
+     */
+    public Config setFile(Path file) {
+      this.file = file;
+      return this;
+    }
+  }
+}
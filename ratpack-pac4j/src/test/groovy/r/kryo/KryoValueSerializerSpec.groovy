@@ -0,0 +1,131 @@
+package r.kryo
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.Serializer
+import com.esotericsoftware.kryo.io.Input
+import com.esotericsoftware.kryo.io.Output
+import com.esotericsoftware.kryo.pool.KryoPool
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.ByteBufAllocator
+import io.netty.buffer.UnpooledByteBufAllocator
+import ratpack.registry.Registries
+import ratpack.registry.Registry
+import ratpack.groovy.test.embed.GroovyEmbeddedApp
+import ratpack.session.SessionModule
+import ratpack.session.clientside.ClientSideSessionModule
+import ratpack.session.clientside.ValueSerializer
+import ratpack.session.store.SessionStorage
+import ratpack.test.embed.EmbeddedApp
+import ratpack.test.http.TestHttpClient
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.AtomicInteger
+
+class Greeting {
+  String text
+}
+
+/**
+ * Kryo serializer of {@link Greeting} that counts its calls, so the test knows the session value went through Kryo.
+ */
+class CountingGreetingSerializer extends Serializer<Greeting> {
+  static final AtomicInteger WRITES = new AtomicInteger()
+  static final AtomicInteger READS = new AtomicInteger()
+
+  void write(Kryo kryo, Output output, Greeting greeting) {
+    WRITES.incrementAndGet()
+    output.writeString(greeting.text)
+  }
+
+  Greeting read(Kryo kryo, Input input, Class<Greeting> type) {
+    READS.incrementAndGet()
+    new Greeting(text: input.readString())
+  }
+}
+
+class KryoValueSerializerSpec extends Specification {
+  def "client side session values are serialized with kryo"() {
+    given:
+    CountingGreetingSerializer.WRITES.set(0)
+    CountingGreetingSerializer.READS.set(0)
+
+    when:
+    EmbeddedApp app = GroovyEmbeddedApp.build {
+      bindings {
+        add SessionModule
+        add(ClientSideSessionModule) { ClientSideSessionModule.Config config ->
+          config.secretKey = "aaaaaaaaaaaaaaaa"
+          config.secretToken = "bbbbbb"
+        }
+        add(KryoSerializerModule) { KryoSerializerModule.Config config ->
+          config.register(Greeting, CountingGreetingSerializer)
+        }
+      }
+      handlers {
+        get("serializer") {
+          render get(ValueSerializer).class.name
+        }
+        get("set") {
+          request.get(SessionStorage).put("greeting", new Greeting(text: "hello"))
+          render "stored"
+        }
+        get("get") {
+          Greeting greeting = request.get(SessionStorage).get("greeting") as Greeting
+          render greeting?.text ?: "none"
+        }
+      }
+    }
+
+    then:
+    app.test { TestHttpClient httpClient ->
+      assert httpClient.getText("serializer") == KryoValueSerializer.name
+      assert httpClient.getText("set") == "stored"
+      assert httpClient.response.headers.getAll("Set-Cookie").any { it.startsWith("ratpack_session") }
+      // the client sends the session cookie back, the value is read from it
+      assert httpClient.getText("get") == "hello"
+    }
+    CountingGreetingSerializer.WRITES.get() > 0
+    CountingGreetingSerializer.READS.get() > 0
+  }
+
+  def "dictionary built from serialized samples makes compressed values smaller"() {
+    given:
+    KryoValueSerializer serializer = new KryoValueSerializer()
+    Map<String, String> value = attributes("jerry")
+    KryoSerializerModule.Config sampled = new KryoSerializerModule.Config().register(HashMap).setCompressionThreshold(64)
+      .addCompressionSample(attributes("tom"))
+
+    when:
+    String plain = encode(serializer, new KryoSerializerModule.Config().register(HashMap).setCompressionThreshold(64), value)
+    String compressed = encode(serializer, sampled, value)
+
+    then:
+    compressed.length() < plain.length()
+    serializer.deserialize(registry(sampled), compressed) == value
+  }
+
+  private static Map<String, String> attributes(String user) {
+    HashMap<String, String> attributes = new HashMap<>()
+    ["username", "email", "display_name", "location", "locale", "time_zone", "theme", "last_login"].each {
+      attributes.put(it, "${it} of ${user}".toString())
+    }
+    attributes
+  }
+
+  private static String encode(KryoValueSerializer serializer, KryoSerializerModule.Config config, Object value) {
+    ByteBuf encoded = serializer.serialize(registry(config), UnpooledByteBufAllocator.DEFAULT, value)
+    try {
+      encoded.toString(StandardCharsets.US_ASCII)
+    } finally {
+      encoded.release()
+    }
+  }
+
+  private static Registry registry(KryoSerializerModule.Config config) {
+    Registries.registry()
+      .add(KryoPool, new KryoSerializerModule().provideKryoPool(config))
+      .add(ByteBufAllocator, UnpooledByteBufAllocator.DEFAULT)
+      .build()
+  }
+}
@@ -0,0 +1,223 @@
+package r.session
+
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import io.netty.buffer.UnpooledByteBufAllocator
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+
+class MutableClock extends Clock {
+  long millis = 1_000_000
+
+  ZoneId getZone() { ZoneOffset.UTC }
+
+  Clock withZone(ZoneId zone) { this }
+
+  Instant instant() { Instant.ofEpochMilli(millis) }
+
+  long millis() { millis }
+
+  void advance(Duration duration) {
+    millis += duration.toMillis()
+  }
+}
+
+class OffHeapSessionStoreSpec extends Specification {
+  // record header of 15 bytes, id of 1 byte and value of 100 bytes
+  static final int RECORD = 116
+  static final int HEADER = 16
+
+  MutableClock clock = new MutableClock()
+  List<OffHeapSessionStore> stores = []
+
+  def cleanup() {
+    stores*.close()
+  }
+
+  def "stored value is returned by its id"() {
+    given:
+    OffHeapSessionStore store = store(new OffHeapSessionStore.Config())
+
+    when:
+    String id = store.put(value("x"))
+    store.put("b", value("b"))
+
+    then:
+    read(store, id) == "x" * 100
+    read(store, "b") == "b" * 100
+    read(store, "missing") == null
+    store.size() == 2
+  }
+
+  def "value expires when it is not accessed for ttl"() {
+    given:
+    OffHeapSessionStore store = store(new OffHeapSessionStore.Config().setTtl(Duration.ofMinutes(1)))
+    store.put("a", value("a"))
+    store.put("b", value("b"))
+
+    when: "a is accessed, so its expiration is prolonged"
+    clock.advance(Duration.ofSeconds(40))
+    read(store, "a")
+    clock.advance(Duration.ofSeconds(40))
+
+    then:
+    read(store, "a") == "a" * 100
+    read(store, "b") == null
+    store.size() == 1
+  }
+
+  def "least recently used value is evicted when the store is full"() {
+    given:
+    OffHeapSessionStore store = store(new OffHeapSessionStore.Config().setMaxBytes(HEADER + 3 * RECORD))
+    store.put("a", value("a"))
+    store.put("b", value("b"))
+    store.put("c", value("c"))
+    read(store, "a")
+
+    when:
+    store.put("d", value("d"))
+
+    then:
+    read(store, "b") == null
+    read(store, "a") == "a" * 100
+    read(store, "c") == "c" * 100
+    read(store, "d") == "d" * 100
+    store.size() == 3
+  }
+
+  def "arena is compacted instead of evicting values when removed values leave enough space"() {
+    given:
+    OffHeapSessionStore store = store(new OffHeapSessionStore.Config().setMaxBytes(HEADER + 3 * RECORD))
+    store.put("a", value("a"))
+    store.put("b", value("b"))
+    store.put("c", value("c"))
+    store.remove("b")
+
+    when:
+    store.put("d", value("d"))
+
+    then:
+    store.size() == 3
+    store.liveBytes == 3 * RECORD
+    read(store, "a") == "a" * 100
+    read(store, "c") == "c" * 100
+    read(store, "d") == "d" * 100
+  }
+
+  def "released value is kept for the grace period"() {
+    given:
+    OffHeapSessionStore store = store(new OffHeapSessionStore.Config().setTtl(Duration.ofMinutes(30)).setGracePeriod(Duration.ofMinutes(1)))
+    store.put("a", value("a"))
+    store.put("b", value("b"))
+
+    when: "request with the previous cookie reads the value released by the rewritten session"
+    store.release("a")
+    clock.advance(Duration.ofSeconds(30))
+    String concurrent = read(store, "a")
+    store.release("a")
+    clock.advance(Duration.ofSeconds(61))
+    store.put("c", value("c"))
+
+    then:
+    concurrent == "a" * 100
+    read(store, "a") == null
+    read(store, "b") == "b" * 100
+    store.size() == 2
+  }
+
+  def "released value is evicted before least recently used ones when the store is full"() {
+    given:
+    OffHeapSessionStore store = store(new OffHeapSessionStore.Config().setMaxBytes(HEADER + 3 * RECORD))
+    store.put("a", value("a"))
+    store.put("b", value("b"))
+    store.put("c", value("c"))
+    store.release("c")
+
+    when:
+    store.put("d", value("d"))
+
+    then:
+    read(store, "c") == null
+    read(store, "a") == "a" * 100
+    read(store, "b") == "b" * 100
+    read(store, "d") == "d" * 100
+  }
+
+  def "expired values are evicted after recovery regardless of their position in the file"() {
+    given:
+    Path file = Files.createTempFile("session-store", ".bin")
+    OffHeapSessionStore.Config config = new OffHeapSessionStore.Config().setMaxBytes(64 * 1024).setFile(file)
+      .setTtl(Duration.ofMinutes(1))
+    OffHeapSessionStore store = new OffHeapSessionStore(config, clock)
+    store.put("a", value("a"))
+    store.put("b", value("b"))
+    clock.advance(Duration.ofSeconds(40))
+    read(store, "a")
+    store.close()
+
+    when: "a is written before b, but expires after it"
+    OffHeapSessionStore reopened = store(config)
+    clock.advance(Duration.ofSeconds(30))
+    reopened.put("c", value("c"))
+
+    then:
+    reopened.size() == 2
+    reopened.liveBytes == 2 * RECORD
+    read(reopened, "a") == "a" * 100
+    read(reopened, "b") == null
+
+    cleanup:
+    stores*.close()
+    Files.deleteIfExists(file)
+  }
+
+  def "values of memory mapped store are recovered after reopening"() {
+    given:
+    Path file = Files.createTempFile("session-store", ".bin")
+    OffHeapSessionStore.Config config = new OffHeapSessionStore.Config().setMaxBytes(64 * 1024).setFile(file)
+    OffHeapSessionStore store = new OffHeapSessionStore(config, clock)
+    store.put("a", value("a"))
+    store.put("b", value("b"))
+    store.remove("b")
+    store.close()
+
+    when:
+    OffHeapSessionStore reopened = store(config)
+
+    then: "reads recover the index, no put is needed"
+    reopened.size() == 1
+    read(reopened, "a") == "a" * 100
+    read(reopened, "b") == null
+
+    cleanup:
+    stores*.close()
+    Files.deleteIfExists(file)
+  }
+
+  private OffHeapSessionStore store(OffHeapSessionStore.Config config) {
+    OffHeapSessionStore store = new OffHeapSessionStore(config, clock)
+    stores << store
+    store
+  }
+
+  private static ByteBuf value(String c) {
+    Unpooled.copiedBuffer(c * 100, StandardCharsets.US_ASCII)
+  }
+
+  private static String read(OffHeapSessionStore store, String id) {
+    ByteBuf value = store.get(id, UnpooledByteBufAllocator.DEFAULT)
+    try {
+      value?.toString(StandardCharsets.US_ASCII)
+    } finally {
+      value?.release()
+    }
+  }
+}
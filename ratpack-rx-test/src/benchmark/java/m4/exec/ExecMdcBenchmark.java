@@ -0,0 +1,69 @@
+package m4.exec;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.MDC;
+import ratpack.exec.ExecInterceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of restoring MDC for a single execution segment or Rx hop, in nanoseconds.
+ * <ul>
+ *   <li>{@code execMdc} - {@link ExecMdc} with two values</li>
+ *   <li>{@code execMdcEmpty} - {@link ExecMdc} of the execution without MDC values</li>
+ *   <li>{@code copyMdc} - baseline: MDC copied from the thread at the end of the segment and restored in the next one</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecMdcBenchmark {
+  private ExecMdc execMdc;
+  private ExecMdc execMdcEmpty;
+  private Map<String, String> copied;
+
+  @Setup
+  public void setup() {
+    Map<String, String> context = ImmutableMap.of("clientId", "AsyncRx", "requestId", "c0ffee");
+    execMdc = new ExecMdc(context);
+    execMdcEmpty = new ExecMdc(ImmutableMap.of());
+    copied = new HashMap<>(context);
+  }
+
+  @Benchmark
+  public void execMdc(Blackhole blackhole) {
+    execMdc.intercept(ExecInterceptor.ExecType.COMPUTE, () -> blackhole.consume(MDC.get("clientId")));
+  }
+
+  @Benchmark
+  public void execMdcEmpty(Blackhole blackhole) {
+    execMdcEmpty.intercept(ExecInterceptor.ExecType.COMPUTE, () -> blackhole.consume(MDC.get("clientId")));
+  }
+
+  @Benchmark
+  public void copyMdc(Blackhole blackhole) {
+    MDC.setContextMap(copied);
+    try {
+      blackhole.consume(MDC.get("clientId"));
+    } finally {
+      copied = MDC.getCopyOfContextMap();
+      MDC.clear();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package m4.exec;
+
+import r.bench.Scenario;
+import r.bench.Workload;
+import ratpack.groovy.test.LocalScriptApplicationUnderTest;
+
+import java.net.URI;
+
+/**
+ * Rx example started from {@code Ratpack.groovy}, found with {@code ratpack.properties} on the classpath.
+ * <p>
+ * Every iteration streams 1000 elements with {@link StreamRx}. {@code api/async} is not called, its blocking
+ * operations sleep for seconds and would measure the sleep only.
+ */
+public class StreamScenario implements Scenario {
+  private LocalScriptApplicationUnderTest app;
+
+  @Override
+  public String getName() {
+    return "stream";
+  }
+
+  @Override
+  public URI start() {
+    app = new LocalScriptApplicationUnderTest();
+    return app.getAddress();
+  }
+
+  @Override
+  public Workload getWorkload() {
+    return Workload.of()
+      .get("stream", "api/stream?count=1000");
+  }
+
+  @Override
+  public void close() {
+    if (app != null) {
+      app.stop();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package m4.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rx.Observable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rejecting invalid input in the verify -> enrich -> transform pipeline of {@link AsyncRx}, in nanoseconds.
+ * <ul>
+ *   <li>{@code rejected} - {@link Validated} result with constant {@link Rejection}</li>
+ *   <li>{@code thrown} - baseline: exception with stack trace thrown in {@code map}, as before</li>
+ *   <li>{@code valid} - valid input passing all stages, for reference</li>
+ * </ul>
+ * Run with {@code -prof gc} to get allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+  private static final Rejection TOO_SHORT = Rejection.of("tooShort", "Value must have at least 3 characters");
+
+  private static class ValidationException extends RuntimeException {
+  }
+
+  @Benchmark
+  public void rejected(Blackhole blackhole) {
+    validated("te", blackhole);
+  }
+
+  @Benchmark
+  public void valid(Blackhole blackhole) {
+    validated("test", blackhole);
+  }
+
+  @Benchmark
+  public void thrown(Blackhole blackhole) {
+    Observable.just("te")
+      .map(str -> {
+        if (str.length() < 3) {
+          throw new ValidationException();
+        }
+        return str;
+      })
+      .map(String::trim)
+      .map(String::length)
+      .subscribe(blackhole::consume, blackhole::consume);
+  }
+
+  private void validated(String input, Blackhole blackhole) {
+    Observable.just(input)
+      .map(Validated.check(str -> str.length() < 3 ? TOO_SHORT : null))
+      .map(Validated.lift(String::trim))
+      .map(Validated.lift(String::length))
+      .subscribe(blackhole::consume, blackhole::consume);
+  }
+}
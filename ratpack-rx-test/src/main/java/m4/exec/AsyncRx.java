@@ -2,41 +2,33 @@ package m4.exec;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
-import ratpack.exec.Promise;
 import ratpack.handling.Context;
 import ratpack.handling.Handler;
-import ratpack.rx.RxRatpack;
 import rx.Observable;
 import rx.Subscriber;
-import rx.Subscription;
-import rx.schedulers.Schedulers;
-
-import java.util.List;
 
 class AsyncRx implements Handler {
   private static final Logger log = LoggerFactory.getLogger(AsyncRx.class);
 
-  private static class ValidationException extends Error {
-
-  }
+  private static final Rejection TOO_SHORT = Rejection.of("tooShort", "Value must have at least 3 characters");
 
   @Override
   public void handle(Context context) throws Exception {
-    MDC.put("clientId", "AsyncRx");
+    ExecMdc.put("clientId", "AsyncRx");
     log.debug("Handle");
     context.promise(f -> {
-      // verify -> enrich -> transform -> operate
+      // verify -> enrich -> transform -> operate, rejected value skips remaining stages
       Observable.<String>create(s -> s.onNext("te"))
-              .map(str -> {
-                if (str.length() < 3) {
-                  throw new ValidationException();
+              .map(Validated.check(str -> str.length() < 3 ? TOO_SHORT : null))
+              .map(Validated.lift(String::trim))
+              .subscribe(result -> {
+                if (result.isValid()) {
+                  log.debug("RETURN: " + result.getValue());
+                  f.success("str");
+                } else {
+                  log.debug("REJECTED: {}", result.getRejection());
+                  f.error(result.getRejection().toException());
                 }
-                return str;
-              })
-              .subscribe(str -> {
-                log.debug("RETURN: " + str);
-                f.success("str");
               },
               ex -> {
                 log.error(ex.toString());
@@ -48,29 +40,20 @@ class AsyncRx implements Handler {
       log.debug("VETO SUCCESS: " + str);
     });
 
-    context.promise(f -> {
-      Observable<List<String>> lst = Observable.merge(oper1(context), oper2(context)).toList();
-      lst.subscribe((List<String> list) -> {
-        StringBuilder strb = new StringBuilder();
-        list.forEach(s -> strb.append(s).append(" "));
-        log.debug(" OUTPUT: " + list);
-        f.success(strb.toString());
-      });
-    }).then(s -> {
-      log.debug("RENDER: " + s);
-      context.render(s);
-    });
+    // every result is written as soon as it is ready, results are not collected in memory
+    Observable<String> results = Observable.merge(oper1(context), oper2(context))
+      .doOnNext(s -> log.debug(" OUTPUT: " + s))
+      .map(s -> s + " ");
+    RxResponses.stream(context, results);
   }
 
   private Observable<String> oper1(Context context) {
-    // blocking with return value throws exception
-    // promise with fullfiler.success just works
-    Promise<String> promise = context.promise(f -> {
+    // blocking call runs on the blocking pool, its result is emitted on the execution
+    return RxExec.blocking(context, () -> {
       log.debug("oper1");
       Thread.sleep(7000);
-      f.success("oper11");
+      return "oper11";
     });
-    return RxRatpack.observe(promise).subscribeOn(Schedulers.computation());
 
 //    return Observable.<String>create(s -> {
 //      promise
@@ -100,6 +83,7 @@ class AsyncRx implements Handler {
 //      Thread.sleep(7000);
 //      return "oper2";
 //    })).subscribeOn(Schedulers.computation());
+    // blocking observable is subscribed on the blocking pool instead of RxJava computation pool
     return Observable.<String>create(s -> {
       log.debug("oper2");
       try {
@@ -109,6 +93,6 @@ class AsyncRx implements Handler {
       }
       s.onNext("oper2");
       s.onCompleted();
-    }).subscribeOn(Schedulers.computation());
+    }).compose(RxExec.onBlocking(context));
   }
 }
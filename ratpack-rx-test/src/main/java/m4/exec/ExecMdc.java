@@ -0,0 +1,95 @@
+package m4.exec;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.slf4j.MDC;
+import ratpack.exec.ExecInterceptor;
+import ratpack.func.NoArgAction;
+import ratpack.handling.Context;
+
+import java.util.Map;
+
+/**
+ * MDC of the Ratpack execution, restored on every execution segment, compute and blocking, and Rx scheduler hop.
+ * <p>
+ * Every execution has its own interceptor instance that keeps MDC as an immutable map, so restoring it does not look up
+ * the registry and does not copy MDC of the thread. MDC of the thread is replaced before the segment and cleared after
+ * it, so neither MDC inherited from the previous task of the thread nor values put directly with {@link MDC#put} leak.
+ * Values are put with {@link #put(String, String)}, which copies the small map once per put, instead of {@link MDC#put},
+ * to be kept for the next segments of the execution.
+ * <pre>{@code
+ *   handler { ExecMdc.install(context) { next() } }
+ *
+ *   ExecMdc.put("clientId", "AsyncRx");
+ * }</pre>
+ */
+public class ExecMdc implements ExecInterceptor {
+  private static final FastThreadLocal<ExecMdc> CURRENT = new FastThreadLocal<>();
+
+  private volatile Map<String, String> context;
+
+  ExecMdc(Map<String, String> context) {
+    this.context = context;
+  }
+
+  /**
+   * Installs MDC interceptor for the rest of the request's execution.
+   *
+   * @param ctx request context
+   * @param continuation continuation, i.e. {@code next()}
+   * @throws Exception any
+   */
+  public static void install(Context ctx, NoArgAction continuation) throws Exception {
+    ctx.addInterceptor(new ExecMdc(ImmutableMap.of()), continuation);
+  }
+
+  /**
+   * Puts value in MDC of the current execution and the current thread.
+   *
+   * @param key MDC key
+   * @param value MDC value
+   */
+  public static void put(String key, String value) {
+    ExecMdc current = CURRENT.get();
+    if (current != null) {
+      ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+      current.context.forEach((k, v) -> {
+        if (!k.equals(key)) {
+          builder.put(k, v);
+        }
+      });
+      current.context = builder.put(key, value).build();
+    }
+    MDC.put(key, value);
+  }
+
+  /**
+   * @return MDC of the current execution, or copy of the thread's MDC if thread does not run an execution
+   */
+  public static Map<String, String> capture() {
+    ExecMdc current = CURRENT.get();
+    if (current != null) {
+      return current.context;
+    }
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    return mdc == null ? ImmutableMap.of() : mdc;
+  }
+
+  @Override
+  public void intercept(ExecType execType, Runnable continuation) {
+    ExecMdc previous = CURRENT.get();
+    CURRENT.set(this);
+    Map<String, String> restored = context;
+    if (restored.isEmpty()) {
+      MDC.clear();
+    } else {
+      MDC.setContextMap(restored);
+    }
+    try {
+      continuation.run();
+    } finally {
+      MDC.clear();
+      CURRENT.set(previous);
+    }
+  }
+}
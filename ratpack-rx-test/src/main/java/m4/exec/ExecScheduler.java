@@ -0,0 +1,96 @@
+package m4.exec;
+
+import ratpack.exec.ExecControl;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.BooleanSubscription;
+import rx.subscriptions.CompositeSubscription;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rx scheduler that runs actions as Ratpack executions, on the compute event loop or on the blocking pool.
+ * <p>
+ * Rx work does not need its own thread pools, the number of threads stays fixed. MDC of the scheduling execution
+ * is passed, without copying, to the action's execution by {@link ExecMdc}.
+ */
+class ExecScheduler extends Scheduler {
+  private final ExecControl execControl;
+  private final ScheduledExecutorService timer;
+  private final boolean blocking;
+
+  /**
+   * @param execControl execution control of the current execution
+   * @param blocking {@code true} if actions run on the blocking pool
+   */
+  ExecScheduler(ExecControl execControl, boolean blocking) {
+    this.execControl = execControl;
+    // event loop of the controller, delayed actions could be scheduled from threads that run no execution
+    this.timer = execControl.getExecution().getController().getExecutor();
+    this.blocking = blocking;
+  }
+
+  @Override
+  public Worker createWorker() {
+    return new ExecWorker();
+  }
+
+  private class ExecWorker extends Worker {
+    private final CompositeSubscription subscriptions = new CompositeSubscription();
+
+    @Override
+    public Subscription schedule(Action0 action) {
+      if (subscriptions.isUnsubscribed()) {
+        return subscriptions;
+      }
+      BooleanSubscription subscription = new BooleanSubscription();
+      subscriptions.add(subscription);
+      Map<String, String> mdc = ExecMdc.capture();
+      execControl.exec().start(execution -> execution.getControl().addInterceptor(new ExecMdc(mdc), () -> {
+        if (subscription.isUnsubscribed()) {
+          return;
+        }
+        if (blocking) {
+          execution.getControl().blocking(() -> {
+            action.call();
+            return true;
+          }).then(done -> subscriptions.remove(subscription));
+        } else {
+          action.call();
+          subscriptions.remove(subscription);
+        }
+      }));
+      return subscription;
+    }
+
+    @Override
+    public Subscription schedule(Action0 action, long delayTime, TimeUnit unit) {
+      if (delayTime <= 0) {
+        return schedule(action);
+      }
+      BooleanSubscription subscription = new BooleanSubscription();
+      subscriptions.add(subscription);
+      // the timer only schedules the action, it does not execute it, so no execution is started before the delay
+      timer.schedule(() -> {
+        subscriptions.remove(subscription);
+        if (!subscription.isUnsubscribed()) {
+          schedule(action);
+        }
+      }, delayTime, unit);
+      return subscription;
+    }
+
+    @Override
+    public void unsubscribe() {
+      subscriptions.unsubscribe();
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+      return subscriptions.isUnsubscribed();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package m4.exec;
+
+/**
+ * Reason of the failed validation.
+ * <p>
+ * Rejections are immutable and meant to be allocated once, as constants, so rejecting the input allocates nothing.
+ * <pre>{@code
+ *   private static final Rejection TOO_SHORT = Rejection.of("tooShort", "Value must have at least 3 characters");
+ * }</pre>
+ * When a rejection has to be signalled as an error, i.e. to the promise, {@link #toException()} returns exception
+ * allocated with the rejection, without stack trace.
+ */
+public final class Rejection {
+  private final String code;
+  private final String message;
+  private final RejectedException exception;
+
+  private Rejection(String code, String message) {
+    this.code = code;
+    this.message = message;
+    this.exception = new RejectedException(this);
+  }
+
+  /**
+   * @param code short, machine readable code
+   * @param message description of the failure
+   * @return new rejection, to be kept as a constant
+   */
+  public static Rejection of(String code, String message) {
+    return new Rejection(code, message);
+  }
+
+  public String getCode() {
+    return code;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * @return the same stackless exception on every call
+   */
+  public RejectedException toException() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    return code + ": " + message;
+  }
+
+  /**
+   * Rejection signalled as an error. Shared by all failures of the rejection, so it has no stack trace nor suppressed
+   * exceptions.
+   */
+  public static class RejectedException extends RuntimeException {
+    private final Rejection rejection;
+
+    private RejectedException(Rejection rejection) {
+      super(rejection.toString(), null, false, false);
+      this.rejection = rejection;
+    }
+
+    public Rejection getRejection() {
+      return rejection;
+    }
+  }
+}
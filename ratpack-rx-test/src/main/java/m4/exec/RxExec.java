@@ -0,0 +1,71 @@
+package m4.exec;
+
+import ratpack.exec.ExecControl;
+import ratpack.rx.RxRatpack;
+import rx.Observable;
+import rx.Scheduler;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Bridge between RxJava scheduling and Ratpack execution model.
+ * <p>
+ * Use it instead of {@code Schedulers.computation()} and {@code Schedulers.io()}, which move work out of the execution
+ * to RxJava thread pools. Blocking work runs on Ratpack blocking pool and its results are emitted on the execution,
+ * so observables created with {@link RxRatpack#observe(ratpack.exec.Promise)} are merged without leaving it.
+ * <pre>{@code
+ *   Observable.merge(
+ *     RxExec.blocking(context, () -> repository.load(id)),
+ *     legacyObservable.compose(RxExec.onBlocking(context))
+ *   ).toList()
+ * }</pre>
+ */
+public abstract class RxExec {
+  private RxExec() {
+  }
+
+  /**
+   * @param execControl execution control
+   * @return scheduler running actions as executions on the compute event loop
+   */
+  public static Scheduler compute(ExecControl execControl) {
+    return new ExecScheduler(execControl, false);
+  }
+
+  /**
+   * @param execControl execution control
+   * @return scheduler running actions as executions on the blocking pool
+   */
+  public static Scheduler blocking(ExecControl execControl) {
+    return new ExecScheduler(execControl, true);
+  }
+
+  /**
+   * Calls blocking operation on the blocking pool.
+   *
+   * @param execControl execution control
+   * @param callable blocking operation
+   * @param <T> a type of result
+   * @return observable emitting the result on the current execution
+   */
+  public static <T> Observable<T> blocking(ExecControl execControl, Callable<T> callable) {
+    return RxRatpack.observe(execControl.blocking(callable));
+  }
+
+  /**
+   * Subscribes to the blocking observable on the blocking pool, i.e. observable that sleeps or does blocking IO
+   * in its {@code OnSubscribe}. Elements are emitted on the current execution when the observable completes.
+   * <p>
+   * All elements are buffered until the observable completes, so it is meant for observables with a few elements.
+   * Long or infinite observables are streamed with {@code observable.subscribeOn(RxExec.blocking(execControl))},
+   * which emits every element as soon as it is produced, but on the blocking thread.
+   *
+   * @param execControl execution control
+   * @param <T> a type of elements
+   * @return transformer for {@link Observable#compose(Observable.Transformer)}
+   */
+  public static <T> Observable.Transformer<T, T> onBlocking(ExecControl execControl) {
+    return observable -> RxRatpack.observeEach(execControl.<List<T>>blocking(() -> observable.toList().toBlocking().single()));
+  }
+}
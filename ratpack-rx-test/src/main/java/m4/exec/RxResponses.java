@@ -0,0 +1,40 @@
+package m4.exec;
+
+import org.reactivestreams.Publisher;
+import ratpack.handling.Context;
+import ratpack.http.ResponseChunks;
+import ratpack.rx.RxRatpack;
+import rx.Observable;
+
+/**
+ * Streams reactive results to the response as chunked output.
+ * <p>
+ * Elements are written as soon as they are emitted, the first byte does not wait for the last element.
+ * Next elements are requested when previous ones are written to the channel (backpressure), so long or large
+ * streams use constant memory. Observable should support backpressure, i.e. {@code Observable.range},
+ * {@code Observable.from}, otherwise elements are buffered.
+ */
+public abstract class RxResponses {
+  private RxResponses() {
+  }
+
+  /**
+   * Renders observable as chunked {@code text/plain} response.
+   *
+   * @param ctx request context
+   * @param observable observable of chunks
+   */
+  public static void stream(Context ctx, Observable<? extends CharSequence> observable) {
+    stream(ctx, RxRatpack.publisher(observable));
+  }
+
+  /**
+   * Renders publisher as chunked {@code text/plain} response.
+   *
+   * @param ctx request context
+   * @param publisher publisher of chunks
+   */
+  public static void stream(Context ctx, Publisher<? extends CharSequence> publisher) {
+    ctx.render(ResponseChunks.stringChunks(publisher));
+  }
+}
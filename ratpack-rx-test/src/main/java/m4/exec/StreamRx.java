@@ -0,0 +1,39 @@
+package m4.exec;
+
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import rx.Observable;
+
+/**
+ * Streams {@code count} lines, i.e. {@code api/stream?count=1000000}, in constant memory.
+ * <p>
+ * Count that is not a number or is negative is rejected with HTTP 400.
+ */
+class StreamRx implements Handler {
+  private static final int DEFAULT_COUNT = 1000;
+
+  @Override
+  public void handle(Context context) throws Exception {
+    int lines = parseCount(context.getRequest().getQueryParams().get("count"));
+    if (lines < 0) {
+      context.clientError(400);
+      return;
+    }
+    RxResponses.stream(context, Observable.range(1, lines).map(i -> "line " + i + "\n"));
+  }
+
+  /**
+   * @param count value of the query parameter
+   * @return number of lines, {@code -1} if count is invalid
+   */
+  private static int parseCount(String count) {
+    if (count == null) {
+      return DEFAULT_COUNT;
+    }
+    try {
+      return Math.max(-1, Integer.parseInt(count));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package m4.exec;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Result of the validation stage: valid value or {@link Rejection}, carried through the pipeline as a value.
+ * <p>
+ * Validation failure is not thrown, so rejected input allocates neither exception nor stack trace. Rejected result
+ * short-circuits remaining stages: they pass it downstream without calling their functions, and async stages are not
+ * subscribed at all.
+ * <pre>{@code
+ *   // verify -> enrich -> transform -> operate
+ *   input
+ *     .map(Validated.check(str -> str.length() < 3 ? TOO_SHORT : null))
+ *     .map(Validated.lift(this::enrich))
+ *     .map(Validated.lift(this::transform))
+ *     .compose(Validated.async(this::operate))
+ *     .subscribe(result -> {
+ *       if (result.isValid()) {
+ *         ...
+ *       }
+ *     });
+ * }</pre>
+ *
+ * @param <T> type of the value
+ */
+public final class Validated<T> {
+  private final T value;
+  private final Rejection rejection;
+
+  private Validated(T value, Rejection rejection) {
+    this.value = value;
+    this.rejection = rejection;
+  }
+
+  public static <T> Validated<T> valid(T value) {
+    return new Validated<>(value, null);
+  }
+
+  public static <T> Validated<T> rejected(Rejection rejection) {
+    return new Validated<>(null, rejection);
+  }
+
+  /**
+   * Verify stage.
+   *
+   * @param check returns rejection of the invalid value, {@code null} if value is valid
+   * @param <T> type of the value
+   * @return function for {@code Observable.map}
+   */
+  public static <T> Func1<T, Validated<T>> check(Func1<? super T, Rejection> check) {
+    return value -> {
+      Rejection rejection = check.call(value);
+      return rejection == null ? valid(value) : rejected(rejection);
+    };
+  }
+
+  /**
+   * Synchronous stage, skipped for rejected results.
+   *
+   * @param mapper function of the valid value
+   * @param <T> type of the value
+   * @param <R> type of the result
+   * @return function for {@code Observable.map}
+   */
+  public static <T, R> Func1<Validated<T>, Validated<R>> lift(Func1<? super T, ? extends R> mapper) {
+    return validated -> validated.map(mapper);
+  }
+
+  /**
+   * Asynchronous stage, not subscribed for rejected results.
+   *
+   * @param operation observable of the valid value
+   * @param <T> type of the value
+   * @param <R> type of the results
+   * @return transformer for {@code Observable.compose}
+   */
+  public static <T, R> Observable.Transformer<Validated<T>, Validated<R>> async(
+    Func1<? super T, ? extends Observable<? extends R>> operation) {
+    return source -> source.concatMap(validated -> validated.isValid()
+      ? operation.call(validated.value).map(Validated::<R>valid)
+      : Observable.just(validated.<R>cast()));
+  }
+
+  public boolean isValid() {
+    return rejection == null;
+  }
+
+  /**
+   * @return value, {@code null} if rejected
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * @return rejection, {@code null} if valid
+   */
+  public Rejection getRejection() {
+    return rejection;
+  }
+
+  /**
+   * @param mapper function of the valid value
+   * @param <R> type of the result
+   * @return mapped value, or this rejected result without calling mapper
+   */
+  public <R> Validated<R> map(Func1<? super T, ? extends R> mapper) {
+    return isValid() ? valid(mapper.call(value)) : cast();
+  }
+
+  /**
+   * @param check returns rejection of the invalid value, {@code null} if value is valid
+   * @return this result if valid and accepted by check, otherwise rejected result
+   */
+  public Validated<T> verify(Func1<? super T, Rejection> check) {
+    if (!isValid()) {
+      return this;
+    }
+    Rejection failure = check.call(value);
+    return failure == null ? this : rejected(failure);
+  }
+
+  @Override
+  public String toString() {
+    return isValid() ? "Valid(" + value + ")" : "Rejected(" + rejection + ")";
+  }
+
+  @SuppressWarnings("unchecked")
+  private <R> Validated<R> cast() {
+    // rejected result has no value, so it is the same for every type
+    return (Validated<R>) this;
+  }
+}
@@ -1,5 +1,7 @@
 import m4.exec.AsyncRx
-import ratpack.logging.MDCInterceptor
+import m4.exec.ExecMdc
+import m4.exec.StreamRx
+import r.metrics.MetricsHandler
 import ratpack.rx.RxRatpack
 
 import static ratpack.groovy.Groovy.ratpack
@@ -9,15 +11,20 @@ ratpack {
 
   bindings {
     bind AsyncRx.class
+    bind StreamRx.class
   }
 
   handlers {
+    // latency by route and event loop queues, scraped at /metrics
+    handler(new MetricsHandler())
     handler {
-      addInterceptor(new MDCInterceptor()) {
+      // MDC is kept in the execution and restored on every segment, blocking call and Rx hop
+      ExecMdc.install(context) {
         next()
       }
     }
     get("api/async", AsyncRx.class)
+    get("api/stream", StreamRx.class)
         
     assets "public"
   }